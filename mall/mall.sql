@@ -247,13 +247,47 @@ VALUES (
 
 INSERT INTO mall_db.mall_product (id, category_id, name, subtitle, main_image, sub_images, detail, price, stock, status, create_time, update_time) VALUES (30, 100028, '饮料', '美滋滋冰红茶', null, null, null, 0.00, 1000, 1, '2025-11-08 17:06:12', '2025-11-08 17:06:14');
 
+-- ----------------------------
+-- 购物车归档表：长时间未访问的购物车从redis移到这里，用户再次访问购物车时自动恢复
+-- ----------------------------
+DROP TABLE IF EXISTS `mall_cart_archive`;
+CREATE TABLE `mall_cart_archive` (
+  `user_id` INT(11) NOT NULL COMMENT '用户id',
+  `cart_data` TEXT NOT NULL COMMENT '购物车hash的全部条目,json格式(键为商品id,值为编码后的购物车条目)',
+  `archive_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '归档时间',
+  PRIMARY KEY (`user_id`)
+) ENGINE=INNODB DEFAULT CHARSET=utf8;
 
+-- 商品游标分页：按 status、category_id 过滤后按 id 顺序读取，避免 offset 扫描和 count
+ALTER TABLE mall_product ADD INDEX idx_status_category_id (status, category_id, id);
 
+-- ----------------------------
+-- 商品库存分桶表：热门商品的库存拆成多行，下单时各自扣减不同的行，不再争抢mall_product的同一行锁
+-- 分桶商品的mall_product.stock是各桶库存之和，由定时任务同步，只用于展示和下单前的预校验
+-- ----------------------------
+DROP TABLE IF EXISTS `mall_product_stock_bucket`;
+CREATE TABLE `mall_product_stock_bucket` (
+  `product_id` INT(11) NOT NULL COMMENT '商品id',
+  `bucket_no` INT(11) NOT NULL COMMENT '桶编号,从0开始',
+  `stock` INT(11) NOT NULL COMMENT '该桶的库存',
+  PRIMARY KEY (`product_id`, `bucket_no`)
+) ENGINE=INNODB DEFAULT CHARSET=utf8;
 
+-- 未付款订单超时关闭：按 status、create_time 找出超时的订单；之前插入订单时没有写创建时间，补上默认值
+ALTER TABLE mall_order MODIFY `create_time` DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间';
+ALTER TABLE mall_order ADD INDEX idx_status_create_time (status, create_time);
 
+-- 商品游标分页：(status, category_id, id) 在 category_id in (多个类目) 时每个类目各是一段，合并后要filesort
+-- 改为按 (status, id) 顺序读取，读到的行用索引中的 category_id 过滤(索引条件下推)，不用回表也不用排序，读够 limit 行即停止
+ALTER TABLE mall_product DROP INDEX idx_status_category_id;
+ALTER TABLE mall_product ADD INDEX idx_status_id_category_id (status, id, category_id);
 
-
-
-
-
-
+-- ----------------------------
+-- 秒杀库存同步批次：每批扣减量同步到mysql时在同一个事务中记下批次号，同一批重复同步(删除redis中的批次前进程退出)时跳过
+-- ----------------------------
+DROP TABLE IF EXISTS `mall_flash_flush`;
+CREATE TABLE `mall_flash_flush` (
+  `flush_id` VARCHAR(36) NOT NULL COMMENT '同步批次号',
+  `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '同步时间',
+  PRIMARY KEY (`flush_id`)
+) ENGINE=INNODB DEFAULT CHARSET=utf8;
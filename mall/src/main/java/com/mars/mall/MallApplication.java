@@ -3,9 +3,11 @@ package com.mars.mall;
 import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @MapperScan(basePackages = "com.mars.mall.dao")//扫描dao并创建实例
+@EnableScheduling//开启定时任务
 public class MallApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,212 @@
+package com.mars.mall.cache;
+
+import com.mars.mall.dao.CategoryMapper;
+import com.mars.mall.dao.ProductMapper;
+import com.mars.mall.pojo.Product;
+import com.mars.mall.search.ProductSearchIndex;
+import com.mars.mall.service.ICategoryService;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * @description: mybatis插件，商品、类目的insert/update/delete执行后让本地缓存失效
+ * ProductMapper：
+ * 只改库存的写操作(参数带stockMap/deltaMap)不删除缓存，事务提交后从mysql读回新库存写入redis库存读模型，
+ * 商品缓存中的库存不用于展示和校验(都读库存读模型)，所以商品缓存和搜索索引都不受影响；
+ * 其他写操作参数是带id的Product、主键或者productList时只删除这些商品的缓存，无法确定商品时清空整个商品缓存；
+ * productList中写入前没有id的是新增的商品，不在缓存中，不用删除，写入后回填的id只标记给搜索索引；
+ * 在事务中执行时事务结束后再删除一次，避免事务提交前被其他线程读到旧数据重新放进缓存；
+ * 同时删除redis库存读模型中对应的库存，并把商品标记给搜索索引，由定时任务重新索引
+ * CategoryMapper：重建类目树快照，在事务中执行时等事务提交后再重建
+ * 缓存依赖mapper、mapper又依赖本插件，所以用ObjectProvider在使用时再获取，避免启动时循环依赖
+ * @author: Mars
+ * @create: 2022-03-16 14:40
+ **/
+@Component
+@Intercepts({@Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class})})
+public class CacheEvictInterceptor implements Interceptor {
+
+    private final static String PRODUCT_MAPPER_NAMESPACE = ProductMapper.class.getName() + ".";
+
+    private final static String CATEGORY_MAPPER_NAMESPACE = CategoryMapper.class.getName() + ".";
+
+    @Autowired
+    private ObjectProvider<ProductCache> productCacheProvider;
+
+    @Autowired
+    private ObjectProvider<ProductStockCache> productStockCacheProvider;
+
+    @Autowired
+    private ObjectProvider<ICategoryService> categoryServiceProvider;
+
+    @Autowired
+    private ObjectProvider<ProductSearchIndex> productSearchIndexProvider;
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        //批量新增的商品在写入后才回填id，要在写入前记下哪些是新增的
+        Set<Product> newProductSet = newProductsOf(invocation.getArgs()[1]);
+        Object result = invocation.proceed();
+
+        MappedStatement mappedStatement = (MappedStatement) invocation.getArgs()[0];
+        if (mappedStatement.getId().startsWith(PRODUCT_MAPPER_NAMESPACE) && isStockWrite(invocation.getArgs()[1])) {
+            List<Integer> productIdList = productIdsOf(invocation.getArgs()[1], newProductSet);
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCommit() {
+                        productStockCacheProvider.getObject().refresh(productIdList);
+                    }
+                });
+            } else {
+                productStockCacheProvider.getObject().refresh(productIdList);
+            }
+        } else if (mappedStatement.getId().startsWith(PRODUCT_MAPPER_NAMESPACE)) {
+            List<Integer> productIdList = productIdsOf(invocation.getArgs()[1], newProductSet);
+            List<Integer> newProductIdList = productIdsOf(newProductSet);
+            evictProduct(productIdList);
+            markSearchIndex(productIdList);
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        evictProduct(productIdList);
+                        markSearchIndex(productIdList);
+                        if (status == STATUS_COMMITTED) {
+                            markSearchIndex(newProductIdList);
+                        }
+                    }
+                });
+            } else {
+                markSearchIndex(newProductIdList);
+            }
+        } else if (mappedStatement.getId().startsWith(CATEGORY_MAPPER_NAMESPACE)) {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCommit() {
+                        categoryServiceProvider.getObject().refresh();
+                    }
+                });
+            } else {
+                categoryServiceProvider.getObject().refresh();
+            }
+        }
+        return result;
+    }
+
+    //扣库存、加库存、同步分桶库存：参数中带 商品id -> 数量 的stockMap或deltaMap
+    private boolean isStockWrite(Object parameter) {
+        return parameter instanceof Map && (((Map<?, ?>) parameter).containsKey("stockMap")
+                || ((Map<?, ?>) parameter).containsKey("deltaMap"));
+    }
+
+    //批量写入的productList中还没有id的商品，Product的equals比较字段，按对象本身区分
+    private Set<Product> newProductsOf(Object parameter) {
+        Set<Product> newProductSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (parameter instanceof Map && ((Map<?, ?>) parameter).containsKey("productList")) {
+            for (Object product : (Collection<?>) ((Map<?, ?>) parameter).get("productList")) {
+                if (((Product) product).getId() == null) {
+                    newProductSet.add((Product) product);
+                }
+            }
+        }
+        return newProductSet;
+    }
+
+    //新增的商品写入后回填的id，没有回填的跳过
+    private List<Integer> productIdsOf(Set<Product> newProductSet) {
+        List<Integer> productIdList = new ArrayList<>();
+        for (Product product : newProductSet) {
+            if (product.getId() != null) {
+                productIdList.add(product.getId());
+            }
+        }
+        return productIdList;
+    }
+
+    /**
+     * 从写操作的参数中取出被修改的商品id：单个Product、主键、扣库存的stockMap/deltaMap，或者批量写入的productList
+     * @param newProductSet 批量写入中新增的商品，不算被修改的商品
+     * @return 无法确定修改了哪些商品时返回null
+     */
+    private List<Integer> productIdsOf(Object parameter, Set<Product> newProductSet) {
+        if (parameter instanceof Product) {
+            Integer productId = ((Product) parameter).getId();
+            return productId == null ? null : Collections.singletonList(productId);
+        }
+        if (parameter instanceof Integer) {
+            return Collections.singletonList((Integer) parameter);
+        }
+        if (isStockWrite(parameter)) {
+            Map<?, ?> paramMap = (Map<?, ?>) parameter;
+            Object stockMap = paramMap.containsKey("stockMap") ? paramMap.get("stockMap") : paramMap.get("deltaMap");
+            List<Integer> productIdList = new ArrayList<>();
+            for (Object productId : ((Map<?, ?>) stockMap).keySet()) {
+                productIdList.add((Integer) productId);
+            }
+            return productIdList;
+        }
+        if (parameter instanceof Map && ((Map<?, ?>) parameter).containsKey("productList")) {
+            List<Integer> productIdList = new ArrayList<>();
+            for (Object product : (Collection<?>) ((Map<?, ?>) parameter).get("productList")) {
+                if (!newProductSet.contains(product)) {
+                    productIdList.add(((Product) product).getId());
+                }
+            }
+            return productIdList;
+        }
+        return null;
+    }
+
+    private void evictProduct(List<Integer> productIdList) {
+        ProductCache productCache = productCacheProvider.getObject();
+        ProductStockCache productStockCache = productStockCacheProvider.getObject();
+        if (productIdList == null) {
+            productCache.invalidateAll();
+            productStockCache.evictAll();
+            return;
+        }
+        productCache.invalidate(productIdList);
+        for (Integer productId : productIdList) {
+            productStockCache.evict(productId);
+        }
+    }
+
+    private void markSearchIndex(List<Integer> productIdList) {
+        ProductSearchIndex productSearchIndex = productSearchIndexProvider.getObject();
+        if (productIdList == null) {
+            productSearchIndex.markAllDirty();
+            return;
+        }
+        productSearchIndex.markDirty(productIdList);
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+    }
+}
@@ -0,0 +1,130 @@
+package com.mars.mall.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mars.mall.vo.CacheStatsVo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * @description: 购物车近端缓存，在本机内存中缓存购物车hash(cart_uid)的全部条目，减少HGETALL
+ * 容量和过期时间有上限；任何节点修改购物车后通过redis发布订阅通知所有节点删除本地缓存
+ * 由配置 mall.cart.near-cache.enabled 开启，关闭时所有读取直接访问redis
+ * @author: Mars
+ * @create: 2022-03-09 16:20
+ **/
+@Slf4j
+@Component
+public class CartNearCache implements MessageListener {
+
+    public final static String INVALIDATE_CHANNEL = "cart_invalidate";//失效通知频道，消息内容为uid
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    private final boolean enabled;
+
+    private final Cache<Integer, Map<String, String>> cache;
+
+    /**
+     * 正在从redis读取的购物车 -> 本次读取的标记，只保存读取中的用户
+     * 读取期间该用户的缓存失效时删除标记，读完发现标记不在了就不把结果放进缓存，避免旧数据覆盖失效；
+     * 按用户记录，其他用户的失效不影响这个用户的缓存
+     */
+    private final Map<Integer, Object> loading = new ConcurrentHashMap<>();
+
+    public CartNearCache(@Value("${mall.cart.near-cache.enabled:false}") boolean enabled,
+                         @Value("${mall.cart.near-cache.maximum-size:10000}") long maximumSize,
+                         @Value("${mall.cart.near-cache.expire-seconds:30}") long expireSeconds) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 读取购物车的全部条目，本地没有时用loader从redis读取并放入缓存
+     * @param uid 购物车编号
+     * @param loader 从redis读取购物车hash的方法
+     * @return 购物车hash的全部键值对(只读)
+     */
+    public Map<String, String> get(Integer uid, Supplier<Map<String, String>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        Map<String, String> entries = cache.getIfPresent(uid);
+        if (entries != null) {
+            return entries;
+        }
+        Object token = new Object();
+        loading.put(uid, token);
+        Map<String, String> loaded;
+        try {
+            loaded = Collections.unmodifiableMap(loader.get());
+        } catch (RuntimeException e) {
+            loading.remove(uid, token);
+            throw e;
+        }
+        //和evict对同一个uid互斥：标记还在说明读取期间没有失效
+        loading.computeIfPresent(uid, (key, current) -> {
+            if (current != token) {
+                return current;
+            }
+            cache.put(uid, loaded);
+            return null;
+        });
+        return loaded;
+    }
+
+    /**
+     * 购物车发生修改后调用：删除本机缓存，并通知其他节点删除
+     * @param uid 购物车编号
+     */
+    public void invalidate(Integer uid) {
+        if (!enabled) {
+            return;
+        }
+        evict(uid);
+        redisTemplate.convertAndSend(INVALIDATE_CHANNEL, String.valueOf(uid));
+    }
+
+    /**
+     * 收到其他节点(也包括本节点)发布的失效通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String uid = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            evict(Integer.valueOf(uid));
+        } catch (NumberFormatException e) {
+            log.warn("购物车缓存失效通知格式错误, message={}", uid);
+        }
+    }
+
+    public CacheStatsVo stats() {
+        return CacheStatsVo.of("cart", enabled, cache.estimatedSize(), cache.stats());
+    }
+
+    private void evict(Integer uid) {
+        loading.remove(uid);
+        cache.invalidate(uid);
+    }
+}
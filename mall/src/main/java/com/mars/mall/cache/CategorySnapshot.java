@@ -0,0 +1,236 @@
+package com.mars.mall.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mars.mall.consts.MallConst;
+import com.mars.mall.pojo.Category;
+import com.mars.mall.vo.CategoryVo;
+import com.mars.mall.vo.ResponseVo;
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.DigestUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @description: 类目树快照，构建完成后不再修改，多个线程可以直接共享
+ * 类目变化时整体重新构建一个新快照替换旧的，读取方永远看到一棵完整的树
+ * 同时保存序列化好的json，/categories 接口直接输出，不用每次请求都序列化一遍；
+ * json的摘要作为ETag(内容相同的快照在各节点上ETag相同)，类目最大更新时间作为Last-Modified
+ * 以及子孙类目索引：所有类目按先序遍历排成一个数组，任一类目的子孙类目在数组中是连续的一段，
+ * 记录每个类目在数组中的位置和子孙类目所在区间，查询子孙类目只需要复制这一段，判断祖先关系只需比较位置
+ * @author: Mars
+ * @create: 2022-03-21 10:15
+ **/
+public final class CategorySnapshot {
+
+    //优先级sortOrder从大到小
+    private final static Comparator<CategoryVo> SORT_ORDER_DESC =
+            Comparator.comparing(CategoryVo::getSortOrder, Comparator.nullsLast(Comparator.naturalOrder())).reversed();
+
+    private final long version;//快照版本，每次重建加1
+
+    private final String fingerprint;//构建时的类目表指纹，用来判断类目是否变化
+
+    private final List<CategoryVo> categoryVoList;//根类目列表(只读)，子类目挂在subCategories下
+
+    private final byte[] json;//categoryVoList包装成ResponseVo后的json
+
+    private final String eTag;//json的md5，类目树内容不变时不变
+
+    private final long lastModified;//类目最大更新时间(毫秒)，没有更新时间时为-1
+
+    private final int[] preorder;//所有类目id的先序遍历序列
+
+    private final Map<Integer, Integer> positionMap;//类目id -> 在preorder中的位置
+
+    private final Map<Integer, int[]> descendantRangeMap;//类目id -> 子孙类目在preorder中的区间[start, end)
+
+    private final Map<Integer, Integer> parentMap;//类目id -> 父类目id
+
+    private CategorySnapshot(long version, String fingerprint, List<CategoryVo> categoryVoList, byte[] json,
+                             long lastModified, int[] preorder, Map<Integer, Integer> positionMap,
+                             Map<Integer, int[]> descendantRangeMap, Map<Integer, Integer> parentMap) {
+        this.version = version;
+        this.fingerprint = fingerprint;
+        this.categoryVoList = categoryVoList;
+        this.json = json;
+        this.eTag = "\"" + DigestUtils.md5DigestAsHex(json) + "\"";
+        this.lastModified = lastModified;
+        this.preorder = preorder;
+        this.positionMap = positionMap;
+        this.descendantRangeMap = descendantRangeMap;
+        this.parentMap = parentMap;
+    }
+
+    /**
+     * 一次遍历构建类目树：先按parentId建立 父类目 -> 子类目列表 的索引，再把每个子类目列表排序后挂到父类目上
+     * 每个类目只处理一次，不需要为每个父类目扫描全部类目
+     * @param categories 所有类目
+     * @param version 快照版本
+     * @param fingerprint 类目表指纹
+     * @param objectMapper 用于预先序列化json
+     */
+    public static CategorySnapshot build(List<Category> categories, long version, String fingerprint,
+                                         ObjectMapper objectMapper) {
+        Map<Integer, CategoryVo> categoryVoMap = new HashMap<>(categories.size() * 2);
+        Map<Integer, List<CategoryVo>> childrenMap = new HashMap<>();
+        Map<Integer, Integer> parentMap = new HashMap<>(categories.size() * 2);
+        long lastModified = -1;
+        for (Category category : categories) {
+            if (category.getUpdateTime() != null) {
+                lastModified = Math.max(lastModified, category.getUpdateTime().getTime());
+            }
+            CategoryVo categoryVo = new CategoryVo();
+            BeanUtils.copyProperties(category, categoryVo);
+            categoryVoMap.put(category.getId(), categoryVo);
+            parentMap.put(category.getId(), category.getParentId());
+            childrenMap.computeIfAbsent(category.getParentId(), k -> new ArrayList<>()).add(categoryVo);
+        }
+
+        for (CategoryVo categoryVo : categoryVoMap.values()) {
+            List<CategoryVo> subCategoryVoList = childrenMap.get(categoryVo.getId());
+            if (subCategoryVoList == null) {
+                categoryVo.setSubCategories(Collections.emptyList());
+            } else {
+                subCategoryVoList.sort(SORT_ORDER_DESC);
+                categoryVo.setSubCategories(Collections.unmodifiableList(subCategoryVoList));
+            }
+        }
+
+        List<CategoryVo> rootList = childrenMap.getOrDefault(MallConst.ROOT_PARENT_ID, new ArrayList<>());
+        rootList.sort(SORT_ORDER_DESC);
+        List<CategoryVo> categoryVoList = Collections.unmodifiableList(rootList);
+
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(ResponseVo.success(categoryVoList));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("类目树序列化失败", e);
+        }
+
+        //先序遍历：从根类目开始；父类目不存在(例如父类目已废弃)的类目，以其父类目id作为虚拟根单独遍历，
+        //这样查询已废弃类目的子孙类目时结果和逐层扫描一致
+        int[] preorder = new int[categories.size()];
+        Map<Integer, Integer> positionMap = new HashMap<>(categories.size() * 2);
+        Map<Integer, int[]> descendantRangeMap = new HashMap<>(categories.size() * 2);
+        int position = 0;
+        for (Map.Entry<Integer, List<CategoryVo>> entry : childrenMap.entrySet()) {
+            Integer parentId = entry.getKey();
+            if (categoryVoMap.containsKey(parentId)) {
+                continue;
+            }
+            int start = position;
+            position = traverse(entry.getValue(), preorder, position, positionMap, descendantRangeMap);
+            descendantRangeMap.put(parentId, new int[]{start, position});
+        }
+
+        return new CategorySnapshot(version, fingerprint, categoryVoList, json, lastModified,
+                preorder, positionMap, descendantRangeMap, parentMap);
+    }
+
+    /**
+     * 非递归先序遍历，避免层级很深时栈溢出
+     * @return 遍历结束后的下一个位置
+     */
+    private static int traverse(List<CategoryVo> rootList, int[] preorder, int position,
+                                Map<Integer, Integer> positionMap, Map<Integer, int[]> descendantRangeMap) {
+        Deque<Object[]> stack = new ArrayDeque<>();//{类目, 是否已展开子类目}
+        for (int i = rootList.size() - 1; i >= 0; i--) {
+            stack.push(new Object[]{rootList.get(i), false});
+        }
+        while (!stack.isEmpty()) {
+            Object[] frame = stack.pop();
+            CategoryVo categoryVo = (CategoryVo) frame[0];
+            if ((Boolean) frame[1]) {
+                //子孙类目都已遍历完，区间结束
+                descendantRangeMap.get(categoryVo.getId())[1] = position;
+                continue;
+            }
+            positionMap.put(categoryVo.getId(), position);
+            preorder[position++] = categoryVo.getId();
+            descendantRangeMap.put(categoryVo.getId(), new int[]{position, position});
+            stack.push(new Object[]{categoryVo, true});
+            List<CategoryVo> subCategories = categoryVo.getSubCategories();
+            for (int i = subCategories.size() - 1; i >= 0; i--) {
+                stack.push(new Object[]{subCategories.get(i), false});
+            }
+        }
+        return position;
+    }
+
+    /**
+     * 把指定类目的所有子孙类目id加入集合(不包括自己)，耗时和子孙类目数量成正比
+     * @param id 类目id
+     * @param resultSet 结果集合
+     */
+    public void collectDescendants(Integer id, Set<Integer> resultSet) {
+        int[] range = descendantRangeMap.get(id);
+        if (range == null) {
+            return;
+        }
+        for (int i = range[0]; i < range[1]; i++) {
+            resultSet.add(preorder[i]);
+        }
+    }
+
+    /**
+     * 类目是否存在(只包含有效类目)
+     */
+    public boolean contains(Integer id) {
+        return id != null && positionMap.containsKey(id);
+    }
+
+    /**
+     * 判断类目id是否为ancestorId本身或其子孙类目，O(1)
+     */
+    public boolean isDescendantOrSelf(Integer ancestorId, Integer id) {
+        if (ancestorId == null || id == null) {
+            return false;
+        }
+        if (ancestorId.equals(id)) {
+            return true;
+        }
+        int[] range = descendantRangeMap.get(ancestorId);
+        Integer position = positionMap.get(id);
+        return range != null && position != null && position >= range[0] && position < range[1];
+    }
+
+    /**
+     * 类目的直接父类目id，类目不存在时返回null
+     */
+    public Integer parentIdOf(Integer id) {
+        return parentMap.get(id);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public List<CategoryVo> getCategoryVoList() {
+        return categoryVoList;
+    }
+
+    public byte[] getJson() {
+        return json;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+}
@@ -0,0 +1,189 @@
+package com.mars.mall.cache;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.mars.mall.dao.ProductMapper;
+import com.mars.mall.pojo.Product;
+import com.mars.mall.vo.CacheStatsVo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @description: 商品本地缓存，缓存按商品id查询到的商品，热门商品不用每次都查数据库
+ * 容量和过期时间有上限；通过ProductMapper修改商品时由CacheEvictInterceptor自动删除对应缓存，
+ * 删除本机缓存后通过redis发布订阅通知所有节点删除
+ * 对库存敏感的调用方(下单校验、扣库存)不要用这里的数据，直接用ProductMapper查数据库
+ * 缓存的是列表用的精简商品(ProductMapper的ListResultMap)，不含detail、subImages，商品详情直接查数据库
+ * 返回的商品都是拷贝，调用方修改不会影响缓存
+ * @author: Mars
+ * @create: 2022-03-16 14:10
+ **/
+@Slf4j
+@Component
+public class ProductCache implements MessageListener {
+
+    public final static String INVALIDATE_CHANNEL = "product_invalidate";//失效通知频道，消息内容为逗号分隔的商品id，*表示全部
+
+    private final static String INVALIDATE_ALL = "*";
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    private final boolean enabled;
+
+    private final LoadingCache<Integer, Product> cache;
+
+    public ProductCache(@Value("${mall.product.cache.enabled:true}") boolean enabled,
+                        @Value("${mall.product.cache.maximum-size:10000}") long maximumSize,
+                        @Value("${mall.product.cache.expire-seconds:60}") long expireSeconds) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build(new CacheLoader<Integer, Product>() {
+                    @Override
+                    public Product load(Integer id) {
+                        return loadOne(id);
+                    }
+
+                    //批量未命中时用一次 in 查询加载，查不到的商品不放入缓存
+                    @Override
+                    public Map<Integer, Product> loadAll(Iterable<? extends Integer> ids) {
+                        Set<Integer> productIdSet = new HashSet<>();
+                        ids.forEach(productIdSet::add);
+                        Map<Integer, Product> productMap = new HashMap<>();
+                        for (Product product : productMapper.selectByProductIdSet(productIdSet)) {
+                            productMap.put(product.getId(), product);
+                        }
+                        return productMap;
+                    }
+                });
+    }
+
+    /**
+     * 按id查询商品(不含detail、subImages)
+     * @return 商品不存在时返回null
+     */
+    public Product get(Integer id) {
+        if (!enabled) {
+            return loadOne(id);
+        }
+        return copyOf(cache.get(id));
+    }
+
+    /**
+     * 按id集合查询商品(不含detail、subImages)，等同于 ProductMapper.selectByProductIdSet，只有未命中的商品会查数据库
+     * @return 存在的商品，不存在的id不返回
+     */
+    public List<Product> getAll(Collection<Integer> productIdSet) {
+        if (!enabled) {
+            return productMapper.selectByProductIdSet(new HashSet<>(productIdSet));
+        }
+        List<Product> productList = new ArrayList<>();
+        for (Product product : cache.getAll(productIdSet).values()) {
+            productList.add(copyOf(product));
+        }
+        return productList;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 商品修改后调用：删除本机缓存，并通知其他节点删除
+     */
+    public void invalidate(Integer id) {
+        invalidate(Collections.singletonList(id));
+    }
+
+    /**
+     * 批量修改商品后调用，所有商品只发布一条失效通知
+     */
+    public void invalidate(Collection<Integer> ids) {
+        if (!enabled || ids.isEmpty()) {
+            return;
+        }
+        cache.invalidateAll(ids);
+        StringBuilder message = new StringBuilder();
+        for (Integer id : ids) {
+            if (message.length() > 0) {
+                message.append(',');
+            }
+            message.append(id);
+        }
+        redisTemplate.convertAndSend(INVALIDATE_CHANNEL, message.toString());
+    }
+
+    /**
+     * 清空本机缓存，并通知其他节点清空
+     */
+    public void invalidateAll() {
+        if (!enabled) {
+            return;
+        }
+        cache.invalidateAll();
+        redisTemplate.convertAndSend(INVALIDATE_CHANNEL, INVALIDATE_ALL);
+    }
+
+    /**
+     * 收到其他节点(也包括本节点)发布的失效通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (INVALIDATE_ALL.equals(body)) {
+            cache.invalidateAll();
+            return;
+        }
+        try {
+            List<Integer> ids = new ArrayList<>();
+            for (String id : body.split(",")) {
+                ids.add(Integer.valueOf(id));
+            }
+            cache.invalidateAll(ids);
+        } catch (NumberFormatException e) {
+            log.warn("商品缓存失效通知格式错误, message={}", body);
+        }
+    }
+
+    public CacheStatsVo stats() {
+        return CacheStatsVo.of("product", enabled, cache.estimatedSize(), cache.stats());
+    }
+
+    private Product loadOne(Integer id) {
+        List<Product> productList = productMapper.selectByProductIdSet(Collections.singleton(id));
+        return productList.isEmpty() ? null : productList.get(0);
+    }
+
+    private Product copyOf(Product product) {
+        if (product == null) {
+            return null;
+        }
+        Product copy = new Product();
+        BeanUtils.copyProperties(product, copy);
+        return copy;
+    }
+}
@@ -0,0 +1,190 @@
+package com.mars.mall.cache;
+
+import com.mars.mall.consts.MallConst;
+import com.mars.mall.dao.ProductMapper;
+import com.mars.mall.pojo.Product;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @description: redis中的商品库存读模型，hash product_stock：商品id -> 库存
+ * 商品详情展示库存、加购时校验库存读这里，不用每次都查mysql；下单扣库存仍然查mysql，mysql是唯一的真实数据
+ * 未命中时从mysql加载后写入；扣库存/加库存提交后由CacheEvictInterceptor从mysql读回新库存写入(refresh)，
+ * 下单最多的商品始终命中；管理员修改商品时删除对应的库存，下次读取时重新加载
+ * 并发的加载、读回之间可能留下旧值，由StockReconcileJob定时和mysql比对修正
+ * @author: Mars
+ * @create: 2022-03-27 10:10
+ **/
+@Slf4j
+@Component
+public class ProductStockCache {
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Value("${mall.product.stock-cache.reconcile-batch-size:500}")
+    private int reconcileBatchSize;
+
+    /**
+     * 查询一个商品的库存
+     * @return 商品不存在时返回null
+     */
+    public Integer get(Integer productId) {
+        return getAll(Collections.singleton(productId)).get(productId);
+    }
+
+    /**
+     * 批量查询库存，一次HMGET，未命中的商品用一次 in 查询从mysql加载
+     * @return 商品id -> 库存，不存在的商品不返回
+     */
+    public Map<Integer, Integer> getAll(Collection<Integer> productIds) {
+        List<Integer> productIdList = new ArrayList<>(new HashSet<>(productIds));
+        Map<Integer, Integer> stockMap = new HashMap<>();
+        if (productIdList.isEmpty()) {
+            return stockMap;
+        }
+        HashOperations<String, String, String> opsForHash = redisTemplate.opsForHash();
+        List<String> fields = new ArrayList<>(productIdList.size());
+        for (Integer productId : productIdList) {
+            fields.add(String.valueOf(productId));
+        }
+        List<String> values = opsForHash.multiGet(MallConst.PRODUCT_STOCK_REDIS_KEY, fields);
+
+        Set<Integer> missIdSet = new HashSet<>();
+        for (int i = 0; i < productIdList.size(); i++) {
+            if (values.get(i) == null) {
+                missIdSet.add(productIdList.get(i));
+            } else {
+                stockMap.put(productIdList.get(i), Integer.valueOf(values.get(i)));
+            }
+        }
+        if (!missIdSet.isEmpty()) {
+            Map<String, String> loaded = new HashMap<>();
+            for (Product product : productMapper.selectStockByProductIdSet(missIdSet)) {
+                stockMap.put(product.getId(), product.getStock());
+                loaded.put(String.valueOf(product.getId()), String.valueOf(product.getStock()));
+            }
+            if (!loaded.isEmpty()) {
+                opsForHash.putAll(MallConst.PRODUCT_STOCK_REDIS_KEY, loaded);
+            }
+        }
+        return stockMap;
+    }
+
+    /**
+     * 用读模型中的库存覆盖商品的stock(商品来自本地缓存，库存可能是旧的)
+     */
+    public void fill(Collection<Product> productList) {
+        List<Integer> productIdList = new ArrayList<>(productList.size());
+        for (Product product : productList) {
+            productIdList.add(product.getId());
+        }
+        Map<Integer, Integer> stockMap = getAll(productIdList);
+        for (Product product : productList) {
+            Integer stock = stockMap.get(product.getId());
+            if (stock != null) {
+                product.setStock(stock);
+            }
+        }
+    }
+
+    /**
+     * 从mysql读回这些商品当前的库存写入读模型，已不存在的商品删除
+     */
+    public void refresh(Collection<Integer> productIds) {
+        Set<Integer> productIdSet = new HashSet<>(productIds);
+        if (productIdSet.isEmpty()) {
+            return;
+        }
+        Map<String, String> stockMap = new HashMap<>();
+        for (Product product : productMapper.selectStockByProductIdSet(productIdSet)) {
+            stockMap.put(String.valueOf(product.getId()), String.valueOf(product.getStock()));
+            productIdSet.remove(product.getId());
+        }
+        if (!stockMap.isEmpty()) {
+            redisTemplate.opsForHash().putAll(MallConst.PRODUCT_STOCK_REDIS_KEY, stockMap);
+        }
+        for (Integer productId : productIdSet) {
+            evict(productId);
+        }
+    }
+
+    public void evict(Integer productId) {
+        redisTemplate.opsForHash().delete(MallConst.PRODUCT_STOCK_REDIS_KEY, String.valueOf(productId));
+    }
+
+    public void evictAll() {
+        redisTemplate.delete(MallConst.PRODUCT_STOCK_REDIS_KEY);
+    }
+
+    /**
+     * 把读模型中已有的库存分批和mysql比对，修正不一致的值，删除已不存在的商品
+     * 没有进入读模型的商品下次读取时直接从mysql加载，不需要比对
+     * @return 修正的商品数
+     */
+    public int reconcile() {
+        int corrected = 0;
+        Map<Integer, String> batch = new HashMap<>();
+        try (Cursor<Map.Entry<Object, Object>> cursor = redisTemplate.opsForHash().scan(MallConst.PRODUCT_STOCK_REDIS_KEY,
+                ScanOptions.scanOptions().count(reconcileBatchSize).build())) {
+            while (cursor.hasNext()) {
+                Map.Entry<Object, Object> entry = cursor.next();
+                batch.put(Integer.valueOf((String) entry.getKey()), (String) entry.getValue());
+                if (batch.size() >= reconcileBatchSize) {
+                    corrected += reconcile(batch);
+                    batch.clear();
+                }
+            }
+        } catch (IOException e) {
+            log.warn("库存读模型比对时关闭scan游标失败", e);
+        }
+        if (!batch.isEmpty()) {
+            corrected += reconcile(batch);
+        }
+        return corrected;
+    }
+
+    private int reconcile(Map<Integer, String> cached) {
+        Map<Integer, Integer> stockMap = new HashMap<>();
+        for (Product product : productMapper.selectStockByProductIdSet(cached.keySet())) {
+            stockMap.put(product.getId(), product.getStock());
+        }
+        Map<String, String> correctMap = new HashMap<>();
+        List<Object> removeFields = new ArrayList<>();
+        for (Map.Entry<Integer, String> entry : cached.entrySet()) {
+            Integer stock = stockMap.get(entry.getKey());
+            if (stock == null) {
+                removeFields.add(String.valueOf(entry.getKey()));
+            } else if (!String.valueOf(stock).equals(entry.getValue())) {
+                correctMap.put(String.valueOf(entry.getKey()), String.valueOf(stock));
+            }
+        }
+        if (!correctMap.isEmpty()) {
+            log.info("库存读模型与mysql不一致, 已修正: {}", correctMap);
+            redisTemplate.opsForHash().putAll(MallConst.PRODUCT_STOCK_REDIS_KEY, correctMap);
+        }
+        if (!removeFields.isEmpty()) {
+            redisTemplate.opsForHash().delete(MallConst.PRODUCT_STOCK_REDIS_KEY, removeFields.toArray());
+        }
+        return correctMap.size() + removeFields.size();
+    }
+}
@@ -0,0 +1,32 @@
+package com.mars.mall.codec;
+
+import com.google.gson.Gson;
+import com.mars.mall.pojo.Cart;
+
+/**
+ * @description: codec公共部分：按值的第一个字符区分json和packed两种格式来解码
+ * @author: Mars
+ * @create: 2022-03-05 14:26
+ **/
+public abstract class AbstractCartCodec implements CartCodec {
+
+    protected final Gson gson = new Gson();
+
+    @Override
+    public Cart decode(Integer productId, String value) {
+        Cart cart;
+        if (isJson(value)) {
+            cart = gson.fromJson(value, Cart.class);
+        } else {
+            //packed: quantity << 1 | selected
+            long packed = Long.parseLong(value);
+            cart = new Cart(productId, (int) (packed >> 1), (packed & 1) == 1);
+        }
+        cart.setProductId(productId);
+        return cart;
+    }
+
+    protected boolean isJson(String value) {
+        return value.charAt(0) == '{';
+    }
+}
@@ -0,0 +1,35 @@
+package com.mars.mall.codec;
+
+import com.mars.mall.pojo.Cart;
+
+/**
+ * @description: 购物车条目在redis hash中的编码方式
+ * hash的键是商品id，值由codec决定怎么存，换codec只需要改配置 mall.cart.codec
+ * 所有codec都要能解码所有已知格式，老数据在读取时再按当前codec迁移(懒迁移)
+ * @author: Mars
+ * @create: 2022-03-05 14:20
+ **/
+public interface CartCodec {
+
+    /**
+     * codec名称，lua脚本按它决定写入格式(json/packed)
+     */
+    String name();
+
+    /**
+     * 把购物车条目编码成存进hash的值
+     */
+    String encode(Cart cart);
+
+    /**
+     * 解码hash中的值，兼容所有格式
+     * @param productId hash的键(商品id)
+     * @param value hash的值
+     */
+    Cart decode(Integer productId, String value);
+
+    /**
+     * hash中的值是否不是当前codec的格式，需要迁移
+     */
+    boolean needMigrate(String value);
+}
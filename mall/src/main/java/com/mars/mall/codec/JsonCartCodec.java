@@ -0,0 +1,31 @@
+package com.mars.mall.codec;
+
+import com.mars.mall.pojo.Cart;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * @description: 旧的编码方式，整个Cart对象存成Gson json字符串，所有版本的节点都能解码，是默认的编码
+ * 例如 {"productId":26,"quantity":2,"productSelected":true}
+ * @author: Mars
+ * @create: 2022-03-05 14:31
+ **/
+@Component
+@ConditionalOnProperty(name = "mall.cart.codec", havingValue = "json", matchIfMissing = true)
+public class JsonCartCodec extends AbstractCartCodec {
+
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    @Override
+    public String encode(Cart cart) {
+        return gson.toJson(cart);
+    }
+
+    @Override
+    public boolean needMigrate(String value) {
+        return !isJson(value);
+    }
+}
@@ -0,0 +1,34 @@
+package com.mars.mall.codec;
+
+import com.mars.mall.pojo.Cart;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * @description: 紧凑编码，数量和选中状态打包成一个整数: quantity << 1 | selected
+ * 例如数量2、选中 存成 "5"；商品id本来就是hash的键，不需要重复存
+ * 小整数在redis的hash(ziplist)中按整数存储，比json省很多内存，解码也只是一次parseLong
+ * 旧版本的节点不能解码这种格式，所有节点都升级后才能开启
+ * @author: Mars
+ * @create: 2022-03-05 14:35
+ **/
+@Component
+@ConditionalOnProperty(name = "mall.cart.codec", havingValue = "packed")
+public class PackedCartCodec extends AbstractCartCodec {
+
+    @Override
+    public String name() {
+        return "packed";
+    }
+
+    @Override
+    public String encode(Cart cart) {
+        long packed = ((long) cart.getQuantity() << 1) | (Boolean.TRUE.equals(cart.getProductSelected()) ? 1 : 0);
+        return String.valueOf(packed);
+    }
+
+    @Override
+    public boolean needMigrate(String value) {
+        return isJson(value);
+    }
+}
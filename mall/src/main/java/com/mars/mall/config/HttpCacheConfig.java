@@ -0,0 +1,56 @@
+package com.mars.mall.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.CacheControl;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @description: 商品、类目等匿名接口的HTTP缓存配置
+ * 每个接口的Cache-Control可单独配置，max-age为0时只允许缓存但每次都要带ETag/Last-Modified回源校验，
+ * 校验通过返回304不带响应体；类目和商品详情的ETag由接口根据版本生成，
+ * 商品列表没有单一的版本，用ShallowEtagHeaderFilter按响应体的摘要生成ETag
+ * @author: Mars
+ * @create: 2022-03-25 10:00
+ **/
+@Configuration
+public class HttpCacheConfig {
+
+    @Value("${mall.http-cache.categories-max-age:60}")
+    private long categoriesMaxAge;
+
+    @Value("${mall.http-cache.products-max-age:10}")
+    private long productsMaxAge;
+
+    @Value("${mall.http-cache.product-detail-max-age:30}")
+    private long productDetailMaxAge;
+
+    public CacheControl categories() {
+        return cacheControlOf(categoriesMaxAge);
+    }
+
+    public CacheControl products() {
+        return cacheControlOf(productsMaxAge);
+    }
+
+    public CacheControl productDetail() {
+        return cacheControlOf(productDetailMaxAge);
+    }
+
+    //只对商品列表生效，/categories和/products/{id}自己处理条件请求
+    @Bean
+    public FilterRegistrationBean<ShallowEtagHeaderFilter> productsEtagFilter() {
+        FilterRegistrationBean<ShallowEtagHeaderFilter> registration = new FilterRegistrationBean<>(new ShallowEtagHeaderFilter());
+        registration.addUrlPatterns("/products");
+        return registration;
+    }
+
+    private CacheControl cacheControlOf(long maxAgeSeconds) {
+        return maxAgeSeconds > 0 ? CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePublic()
+                : CacheControl.noCache().cachePublic();
+    }
+}
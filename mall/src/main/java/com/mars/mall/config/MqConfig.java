@@ -1,8 +1,14 @@
 package com.mars.mall.config;
 
+import com.mars.mall.consts.MallConst;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.HashMap;
+import java.util.Map;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -20,6 +26,53 @@ public class MqConfig {
         return new Queue("payNotify", true, false, false);
     }
 
+    /**
+     * 声明 orderSubmit 异步下单队列（持久化、非自动删除）。
+     */
+    @Bean
+    public Queue orderSubmitQueue() {
+        return new Queue(MallConst.ORDER_SUBMIT_QUEUE, true, false, false);
+    }
+
+    /**
+     * 声明 orderDelay 延迟队列：没有消费者，消息按下单时设置的过期时间到期后转发到 orderExpire 队列。
+     * 所有消息的过期时间相同，先到期的一定在队头，不会被后面的消息挡住。
+     */
+    @Bean
+    public Queue orderDelayQueue() {
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("x-dead-letter-exchange", "");
+        arguments.put("x-dead-letter-routing-key", MallConst.ORDER_EXPIRE_QUEUE);
+        return new Queue(MallConst.ORDER_DELAY_QUEUE, true, false, false, arguments);
+    }
+
+    /**
+     * 声明 orderExpire 到期订单队列（持久化、非自动删除）。
+     */
+    @Bean
+    public Queue orderExpireQueue() {
+        return new Queue(MallConst.ORDER_EXPIRE_QUEUE, true, false, false);
+    }
+
+    /**
+     * 异步下单的消费者：消费者数量限制同时进行的下单事务数，预取数量限制每个消费者一次取走的消息数，
+     * 其余请求留在队列中排队，队列深度用于判断是否拒绝新的下单请求。
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory orderSubmitContainerFactory(
+            ConnectionFactory connectionFactory,
+            @Value("${mall.order.async.consumers:4}") int consumers,
+            @Value("${mall.order.async.max-consumers:8}") int maxConsumers,
+            @Value("${mall.order.async.prefetch:10}") int prefetch) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setConcurrentConsumers(consumers);
+        factory.setMaxConcurrentConsumers(maxConsumers);
+        factory.setPrefetchCount(prefetch);
+        factory.setDefaultRequeueRejected(false);//处理异常的消息不重新入队，避免反复失败
+        return factory;
+    }
+
     /**
      * 显式注册 RabbitAdmin，应用启动时自动声明队列/交换机/绑定。
      */
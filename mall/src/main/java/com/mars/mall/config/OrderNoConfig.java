@@ -0,0 +1,27 @@
+package com.mars.mall.config;
+
+import com.mars.mall.idgen.LeasedOrderNoGenerator;
+import com.mars.mall.idgen.OrderNoGenerator;
+import com.mars.mall.idgen.SnowflakeOrderNoGenerator;
+import com.mars.mall.idgen.WorkerIdLease;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 订单号生成器配置，默认使用雪花算法，需要别的实现时声明一个 OrderNoGenerator bean 即可替换
+ * 节点号租约失效时拒绝生成订单号，改租到新的节点号时按新节点号生成
+ */
+@Configuration
+public class OrderNoConfig {
+
+    @Bean
+    @ConditionalOnMissingBean(OrderNoGenerator.class)
+    public OrderNoGenerator orderNoGenerator(WorkerIdLease workerIdLease,
+                                             @Value("${mall.order-no.max-backward-ms:5000}") long maxBackwardMs) {
+        workerIdLease.workerId();//启动时租用，没有空闲的节点号时启动失败
+        return new LeasedOrderNoGenerator(workerIdLease::validWorkerId,
+                workerId -> new SnowflakeOrderNoGenerator(workerId, maxBackwardMs));
+    }
+}
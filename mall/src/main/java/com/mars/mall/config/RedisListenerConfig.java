@@ -0,0 +1,35 @@
+package com.mars.mall.config;
+
+import com.mars.mall.cache.CartNearCache;
+import com.mars.mall.cache.ProductCache;
+import com.mars.mall.search.ProductSearchIndex;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * Redis 发布订阅配置，用于各节点之间同步本地缓存失效
+ */
+@Configuration
+public class RedisListenerConfig {
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       CartNearCache cartNearCache,
+                                                                       ProductCache productCache,
+                                                                       ProductSearchIndex productSearchIndex) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        //购物车近端缓存开启时才订阅失效通知
+        if (cartNearCache.isEnabled()) {
+            container.addMessageListener(cartNearCache, new ChannelTopic(CartNearCache.INVALIDATE_CHANNEL));
+        }
+        if (productCache.isEnabled()) {
+            container.addMessageListener(productCache, new ChannelTopic(ProductCache.INVALIDATE_CHANNEL));
+        }
+        container.addMessageListener(productSearchIndex, new ChannelTopic(ProductSearchIndex.DIRTY_CHANNEL));
+        return container;
+    }
+}
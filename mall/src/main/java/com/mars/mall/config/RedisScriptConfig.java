@@ -0,0 +1,171 @@
+package com.mars.mall.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Redis lua 脚本配置，脚本放在 resources/scripts 下
+ * DefaultRedisScript 会优先用 EVALSHA 执行，脚本不在redis缓存中时再退回 EVAL
+ * 读写购物车条目的脚本共用 scripts/cart_codec.lua 中的编解码函数，加载时拼接在脚本前面
+ */
+@Configuration
+public class RedisScriptConfig {
+
+    private final static String CART_CODEC_PATH = "scripts/cart_codec.lua";
+
+    /**
+     * 购物车条目原子新增/累加数量，支持一次多件商品
+     */
+    @Bean
+    @SuppressWarnings("rawtypes")
+    public RedisScript<List> cartUpsertScript() {
+        return cartScript("scripts/cart_upsert.lua", List.class);
+    }
+
+    /**
+     * 购物车条目原子修改数量/选中状态
+     */
+    @Bean
+    public RedisScript<String> cartUpdateScript() {
+        return cartScript("scripts/cart_update.lua", String.class);
+    }
+
+    /**
+     * 购物车条目原子删除
+     */
+    @Bean
+    public RedisScript<String> cartDeleteScript() {
+        return cartScript("scripts/cart_delete.lua", String.class);
+    }
+
+    /**
+     * 购物车多个条目一次删除
+     */
+    @Bean
+    public RedisScript<Long> cartDeleteBatchScript() {
+        return cartScript("scripts/cart_delete_batch.lua", Long.class);
+    }
+
+    /**
+     * 按购物车hash重算合计值，可顺便全选/全不选
+     */
+    @Bean
+    @SuppressWarnings("rawtypes")
+    public RedisScript<List> cartRebuildScript() {
+        return cartScript("scripts/cart_rebuild.lua", List.class);
+    }
+
+    /**
+     * 购物车条目懒迁移到当前编码
+     */
+    @Bean
+    public RedisScript<Long> cartMigrateScript() {
+        return script("scripts/cart_migrate.lua", Long.class);
+    }
+
+    /**
+     * 记录购物车访问时间并返回是否已归档
+     */
+    @Bean
+    public RedisScript<Long> cartTouchScript() {
+        return script("scripts/cart_touch.lua", Long.class);
+    }
+
+    /**
+     * 给没有访问时间的购物车补上访问时间
+     */
+    @Bean
+    public RedisScript<Long> cartAccessSeedScript() {
+        return script("scripts/cart_access_seed.lua", Long.class);
+    }
+
+    /**
+     * 删除已归档到mysql的一批购物车
+     */
+    @Bean
+    @SuppressWarnings("rawtypes")
+    public RedisScript<List> cartArchiveScript() {
+        return script("scripts/cart_archive.lua", List.class);
+    }
+
+    /**
+     * 归档的购物车写回redis
+     */
+    @Bean
+    public RedisScript<Long> cartRestoreScript() {
+        return script("scripts/cart_restore.lua", Long.class);
+    }
+
+    /**
+     * 秒杀商品预扣库存
+     */
+    @Bean
+    @SuppressWarnings("rawtypes")
+    public RedisScript<List> flashReserveScript() {
+        return script("scripts/flash_reserve.lua", List.class);
+    }
+
+    /**
+     * 释放预扣的秒杀库存
+     */
+    @Bean
+    public RedisScript<Long> flashReleaseScript() {
+        return script("scripts/flash_release.lua", Long.class);
+    }
+
+    /**
+     * 取出待同步到mysql的秒杀库存扣减量
+     */
+    @Bean
+    @SuppressWarnings("rawtypes")
+    public RedisScript<List> flashDrainScript() {
+        return script("scripts/flash_drain.lua", List.class);
+    }
+
+    /**
+     * 一批秒杀库存扣减量同步完成后删除
+     */
+    @Bean
+    public RedisScript<Long> flashFlushedScript() {
+        return script("scripts/flash_flushed.lua", Long.class);
+    }
+
+    /**
+     * 获取或续期订单号节点号租约
+     */
+    @Bean
+    public RedisScript<Long> workerLeaseScript() {
+        return script("scripts/worker_lease.lua", Long.class);
+    }
+
+    private <T> RedisScript<T> cartScript(String path, Class<T> resultType) {
+        DefaultRedisScript<T> redisScript = new DefaultRedisScript<>();
+        redisScript.setScriptText(read(CART_CODEC_PATH) + "\n" + read(path));
+        redisScript.setResultType(resultType);
+        return redisScript;
+    }
+
+    private String read(String path) {
+        try {
+            return StreamUtils.copyToString(new ClassPathResource(path).getInputStream(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("读取lua脚本失败: " + path, e);
+        }
+    }
+
+    private <T> RedisScript<T> script(String path, Class<T> resultType) {
+        DefaultRedisScript<T> redisScript = new DefaultRedisScript<>();
+        redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        redisScript.setResultType(resultType);
+        return redisScript;
+    }
+}
@@ -9,4 +9,42 @@ public class MallConst {
     public static final String CURRENT_USER = "currentUser"; //当前登录用户，用于登录用户时作为session中的键
 
     public static final Integer ROOT_PARENT_ID = 0; //根类目的父类目id —— 0
+
+    public static final String CART_REDIS_KEY_TEMPLATE = "cart_%d"; //购物车hash的键
+
+    //购物车中一件商品的最大数量，同时受库存限制；也保证紧凑编码(数量*2+选中)不会超出整数范围
+    public static final int CART_MAX_QUANTITY = 999;
+
+    //购物车合计值的键，和购物车hash一起维护，增量模式直接读取合计值，不用把整个购物车重新算一遍
+    public static final String CART_AGG_REDIS_KEY_TEMPLATE = "cart_agg_%d";
+
+    //商品库存读模型(hash：商品id -> 库存)，商品详情展示和加购校验读这里，下单扣库存仍以mysql为准
+    public static final String PRODUCT_STOCK_REDIS_KEY = "product_stock";
+
+    //秒杀商品库存(hash：商品id -> 可预扣库存)，在其中的商品下单时在redis预扣库存，不再争抢mysql行锁
+    public static final String FLASH_STOCK_REDIS_KEY = "flash_stock";
+
+    //秒杀商品已预扣、还没同步到mysql的扣减量(hash：商品id -> 扣减量)
+    public static final String FLASH_PENDING_REDIS_KEY = "flash_pending";
+
+    //正在同步到mysql的扣减量
+    public static final String FLASH_FLUSHING_REDIS_KEY = "flash_flushing";
+
+    //正在同步的这批扣减量的批次号，和扣减量在同一个事务中记入mall_flash_flush，重复同步同一批时跳过
+    public static final String FLASH_FLUSHING_ID_REDIS_KEY = "flash_flushing_id";
+
+    //订单号生成器的节点号租约(string：节点token，带过期时间)，每个节点占用一个节点号
+    public static final String ORDER_NO_WORKER_REDIS_KEY_TEMPLATE = "order_no_worker_%d";
+
+    //异步下单的消息队列
+    public static final String ORDER_SUBMIT_QUEUE = "orderSubmit";
+
+    //未付款订单的延迟队列：消息在其中过期后转入ORDER_EXPIRE_QUEUE
+    public static final String ORDER_DELAY_QUEUE = "orderDelay";
+
+    //到期的未付款订单
+    public static final String ORDER_EXPIRE_QUEUE = "orderExpire";
+
+    //异步下单的凭证(hash：uid、status、msg)，键中的id就是预先生成的订单号
+    public static final String ORDER_TICKET_REDIS_KEY_TEMPLATE = "order_ticket_%d";
 }
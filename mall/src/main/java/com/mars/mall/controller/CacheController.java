@@ -0,0 +1,56 @@
+package com.mars.mall.controller;
+
+import com.mars.mall.cache.CartNearCache;
+import com.mars.mall.cache.ProductCache;
+import com.mars.mall.enums.RequireRole;
+import com.mars.mall.enums.RoleEnum;
+import com.mars.mall.vo.CacheStatsVo;
+import com.mars.mall.vo.ResponseVo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 本地缓存监控 Controller（管理员）
+ * 查看各本地缓存的命中/未命中次数和加载耗时
+ */
+@RestController
+public class CacheController {
+
+    @Autowired
+    private CartNearCache cartNearCache;
+
+    @Autowired
+    private ProductCache productCache;
+
+    /**
+     * 本地缓存统计（管理员）
+     */
+    @GetMapping("/admin/caches")
+    @RequireRole(RoleEnum.ADMIN)
+    public ResponseVo<List<CacheStatsVo>> stats() {
+        List<CacheStatsVo> statsList = new ArrayList<>();
+        statsList.add(cartNearCache.stats());
+        statsList.add(productCache.stats());
+        return ResponseVo.success(statsList);
+    }
+
+    /**
+     * 清空所有节点的商品缓存（管理员），直接改库等绕过ProductMapper的修改后使用
+     */
+    @DeleteMapping("/admin/caches/product")
+    @RequireRole(RoleEnum.ADMIN)
+    public ResponseVo<Boolean> evictProduct(@RequestParam(required = false) Integer productId) {
+        if (productId != null) {
+            productCache.invalidate(productId);
+        } else {
+            productCache.invalidateAll();
+        }
+        return ResponseVo.success(true);
+    }
+}
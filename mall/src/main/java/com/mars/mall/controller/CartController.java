@@ -2,9 +2,12 @@ package com.mars.mall.controller;
 
 import com.mars.mall.consts.MallConst;
 import com.mars.mall.form.CartAddForm;
+import com.mars.mall.form.CartBatchAddForm;
 import com.mars.mall.form.CartUpdateForm;
 import com.mars.mall.pojo.User;
 import com.mars.mall.service.ICartService;
+import com.mars.mall.vo.CartBatchAddVo;
+import com.mars.mall.vo.CartDeltaVo;
 import com.mars.mall.vo.CartVo;
 import com.mars.mall.vo.ResponseVo;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,6 +20,9 @@ import javax.validation.Valid;
  * @description: 购物车模块controller层
  * @author: Mars
  * @create: 2021-10-02 15:45
+ *
+ * 修改购物车的接口带上 mode=delta 参数时走增量模式，只返回变化的商品和合计值，
+ * 不带参数时仍然返回整个购物车
  **/
 @RestController
 public class CartController {
@@ -37,6 +43,13 @@ public class CartController {
         return cartService.add(user.getId(),cartAddForm);
     }
 
+    @PostMapping("/carts/batch")//一次添加多件商品，返回每件商品的添加结果
+    public ResponseVo<CartBatchAddVo> addBatch(@Valid @RequestBody CartBatchAddForm cartBatchAddForm,
+                                               HttpSession session){
+        User user = (User) session.getAttribute(MallConst.CURRENT_USER);//获取当前正在登录的用户
+        return cartService.addBatch(user.getId(),cartBatchAddForm);
+    }
+
     @PutMapping("/carts/{productId}")//@PutMapping主要用于更新请求
     public ResponseVo<CartVo> update(@PathVariable Integer productId,
                                      @Valid @RequestBody CartUpdateForm cartUpdateForm,
@@ -68,4 +81,37 @@ public class CartController {
         User user = (User) session.getAttribute(MallConst.CURRENT_USER);//获取当前正在登录的用户
         return cartService.sum(user.getId());
     }
+
+    @PostMapping(value = "/carts", params = "mode=delta")
+    public ResponseVo<CartDeltaVo> addForDelta(@Valid @RequestBody CartAddForm cartAddForm,
+                                               HttpSession session){
+        User user = (User) session.getAttribute(MallConst.CURRENT_USER);
+        return cartService.addForDelta(user.getId(),cartAddForm);
+    }
+
+    @PutMapping(value = "/carts/{productId}", params = "mode=delta")
+    public ResponseVo<CartDeltaVo> updateForDelta(@PathVariable Integer productId,
+                                                  @Valid @RequestBody CartUpdateForm cartUpdateForm,
+                                                  HttpSession session){
+        User user = (User) session.getAttribute(MallConst.CURRENT_USER);
+        return cartService.updateForDelta(user.getId(),productId,cartUpdateForm);
+    }
+
+    @DeleteMapping(value = "/carts/{productId}", params = "mode=delta")
+    public ResponseVo<CartDeltaVo> deleteForDelta(@PathVariable Integer productId, HttpSession session){
+        User user = (User) session.getAttribute(MallConst.CURRENT_USER);
+        return cartService.deleteForDelta(user.getId(),productId);
+    }
+
+    @PutMapping(value = "/carts/selectAll", params = "mode=delta")
+    public ResponseVo<CartDeltaVo> selectAllForDelta(HttpSession session){
+        User user = (User) session.getAttribute(MallConst.CURRENT_USER);
+        return cartService.selectAllForDelta(user.getId());
+    }
+
+    @PutMapping(value = "/carts/unSelectAll", params = "mode=delta")
+    public ResponseVo<CartDeltaVo> unSelectAllForDelta(HttpSession session){
+        User user = (User) session.getAttribute(MallConst.CURRENT_USER);
+        return cartService.unSelectAllForDelta(user.getId());
+    }
 }
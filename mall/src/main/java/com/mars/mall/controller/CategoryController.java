@@ -1,14 +1,18 @@
 package com.mars.mall.controller;
 
+import com.mars.mall.cache.CategorySnapshot;
+import com.mars.mall.config.HttpCacheConfig;
+import com.mars.mall.enums.RequireRole;
+import com.mars.mall.enums.RoleEnum;
 import com.mars.mall.service.ICategoryService;
-import com.mars.mall.vo.CategoryVo;
 import com.mars.mall.vo.ResponseVo;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.List;
-
 /**
  * @description: 商品模块controller层
  * @author: Mars
@@ -20,8 +24,29 @@ public class CategoryController {
     @Autowired
     private ICategoryService categoryService;
 
+    @Autowired
+    private HttpCacheConfig httpCacheConfig;
+
+    //直接输出类目树快照中预先序列化好的json，内容和 ResponseVo<List<CategoryVo>> 一致
+    //带上快照的ETag/Last-Modified，请求头If-None-Match/If-Modified-Since匹配时由spring返回304
     @GetMapping("/categories")
-    public ResponseVo<List<CategoryVo>> selectAll(){
-        return categoryService.selectAll();
+    public ResponseEntity<byte[]> selectAll(){
+        CategorySnapshot snapshot = categoryService.snapshot();
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .cacheControl(httpCacheConfig.categories())
+                .eTag(snapshot.getETag());
+        if (snapshot.getLastModified() >= 0) {
+            builder.lastModified(snapshot.getLastModified());
+        }
+        return builder.body(snapshot.getJson());
+    }
+
+    //手动重建类目树快照（管理员），直接改库后使用
+    @PostMapping("/admin/categories/refresh")
+    @RequireRole(RoleEnum.ADMIN)
+    public ResponseVo<Long> refresh(){
+        categoryService.refresh();
+        return ResponseVo.success(categoryService.snapshot().getVersion());
     }
 }
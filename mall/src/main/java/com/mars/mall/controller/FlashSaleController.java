@@ -0,0 +1,53 @@
+package com.mars.mall.controller;
+
+import com.mars.mall.enums.RequireRole;
+import com.mars.mall.enums.RoleEnum;
+import com.mars.mall.service.IFlashSaleService;
+import com.mars.mall.vo.FlashSaleStockVo;
+import com.mars.mall.vo.ResponseVo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * 秒杀商品管理 Controller（管理员）
+ * 设为秒杀商品后下单在redis中预扣库存，取消后恢复为直接扣mysql库存
+ */
+@RestController
+public class FlashSaleController {
+
+    @Autowired
+    private IFlashSaleService flashSaleService;
+
+    /**
+     * 秒杀商品列表（管理员）
+     */
+    @GetMapping("/admin/flash-sale")
+    @RequireRole(RoleEnum.ADMIN)
+    public ResponseVo<List<FlashSaleStockVo>> list() {
+        return flashSaleService.list();
+    }
+
+    /**
+     * 设为秒杀商品（管理员），返回加载到redis的库存
+     */
+    @PostMapping("/admin/flash-sale/{productId}")
+    @RequireRole(RoleEnum.ADMIN)
+    public ResponseVo<Integer> enable(@PathVariable Integer productId) {
+        return flashSaleService.enable(productId);
+    }
+
+    /**
+     * 取消秒杀（管理员）
+     */
+    @DeleteMapping("/admin/flash-sale/{productId}")
+    @RequireRole(RoleEnum.ADMIN)
+    public ResponseVo<Boolean> disable(@PathVariable Integer productId) {
+        return flashSaleService.disable(productId);
+    }
+}
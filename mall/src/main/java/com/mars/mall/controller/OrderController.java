@@ -5,6 +5,8 @@ import com.mars.mall.consts.MallConst;
 import com.mars.mall.form.OrderCreateForm;
 import com.mars.mall.pojo.User;
 import com.mars.mall.service.IOrderService;
+import com.mars.mall.service.IOrderSubmitService;
+import com.mars.mall.vo.OrderTicketVo;
 import com.mars.mall.vo.OrderVo;
 import com.mars.mall.vo.ResponseVo;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,6 +26,9 @@ public class OrderController {
     @Autowired
     private IOrderService orderService;
 
+    @Autowired
+    private IOrderSubmitService orderSubmitService;
+
     /**
      * 创建订单
      * @param form 包含了shippingId的请求表单
@@ -37,6 +42,32 @@ public class OrderController {
         return orderService.create(user.getId(),form.getShippingId());
     }
 
+    /**
+     * 异步创建订单：只入队并返回订单号，下单结果用订单号轮询
+     * @param form 包含了shippingId的请求表单
+     * @param session 保存了当前登录的用户信息，可以拿到uid
+     * @return
+     */
+    @PostMapping("/orders/async")
+    public ResponseVo<OrderTicketVo> submit(@Valid @RequestBody OrderCreateForm form,
+                                            HttpSession session){
+        User user = (User) session.getAttribute(MallConst.CURRENT_USER);
+        return orderSubmitService.submit(user.getId(),form.getShippingId());
+    }
+
+    /**
+     * 查询异步下单的结果
+     * @param orderNo 异步下单返回的订单号
+     * @param session 保存了当前登录的用户信息，可以拿到uid
+     * @return
+     */
+    @GetMapping("/orders/async/{orderNo}")
+    public ResponseVo<OrderTicketVo> ticket(@PathVariable Long orderNo,
+                                            HttpSession session){
+        User user = (User) session.getAttribute(MallConst.CURRENT_USER);
+        return orderSubmitService.ticket(user.getId(),orderNo);
+    }
+
     /**
      * 将指定用户的所有订单罗列成订单列表
      * @param pageNum 页码
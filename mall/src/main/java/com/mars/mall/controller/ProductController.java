@@ -1,14 +1,28 @@
 package com.mars.mall.controller;
 
 import com.github.pagehelper.PageInfo;
+import com.mars.mall.config.HttpCacheConfig;
+import com.mars.mall.enums.RequireRole;
+import com.mars.mall.enums.ResponseEnum;
+import com.mars.mall.enums.RoleEnum;
+import com.mars.mall.service.IProductImportService;
 import com.mars.mall.service.IProductService;
+import com.mars.mall.vo.ProductCursorPageVo;
 import com.mars.mall.vo.ProductDetailVo;
+import com.mars.mall.vo.ProductImportVo;
+import com.mars.mall.vo.ProductSearchPageVo;
 import com.mars.mall.vo.ResponseVo;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * @description: 商品列表模块controller层
@@ -21,17 +35,73 @@ public class ProductController {
     @Autowired
     private IProductService productService;
 
+    @Autowired
+    private IProductImportService productImportService;
+
+    @Autowired
+    private HttpCacheConfig httpCacheConfig;
+
     //默认展示第1页的10条数据
     @GetMapping("/products")
-    public ResponseVo<PageInfo> list(@RequestParam(required = false) Integer categoryId,
-                                     @RequestParam(required = false,defaultValue = "1") Integer pageNum,
-                                     @RequestParam(required = false,defaultValue = "10") Integer pageSize){
-        return productService.list(categoryId,pageNum,pageSize);
+    public ResponseEntity<ResponseVo<PageInfo>> list(@RequestParam(required = false) Integer categoryId,
+                                                     @RequestParam(required = false,defaultValue = "1") Integer pageNum,
+                                                     @RequestParam(required = false,defaultValue = "10") Integer pageSize){
+        return ResponseEntity.ok()
+                .cacheControl(httpCacheConfig.products())
+                .body(productService.list(categoryId,pageNum,pageSize));
+    }
+
+    //带上cursor参数时走游标分页(第一页传 cursor= 空值)，不查总数，深度翻页也不变慢
+    @GetMapping(value = "/products", params = "cursor")
+    public ResponseEntity<ResponseVo<ProductCursorPageVo>> listByCursor(@RequestParam(required = false) Integer categoryId,
+                                                                        @RequestParam(required = false) String cursor,
+                                                                        @RequestParam(required = false,defaultValue = "10") Integer pageSize){
+        return ResponseEntity.ok()
+                .cacheControl(httpCacheConfig.products())
+                .body(productService.listByCursor(categoryId,cursor,pageSize));
+    }
+
+    //按名称和副标题搜索商品，结果按相关度排序
+    @GetMapping("/products/search")
+    public ResponseVo<ProductSearchPageVo> search(@RequestParam String keyword,
+                                                  @RequestParam(required = false) Integer categoryId,
+                                                  @RequestParam(required = false,defaultValue = "1") Integer pageNum,
+                                                  @RequestParam(required = false,defaultValue = "10") Integer pageSize){
+        return productService.search(keyword,categoryId,pageNum,pageSize);
     }
 
     //通过 @PathVariable 可以将URL中占位符参数{xxx}绑定到处理器类的方法形参中@PathVariable(“xxx“)
+    //ETag由商品id、更新时间和展示的库存生成(扣库存不改更新时间)，Last-Modified为商品更新时间，未变化时返回304
     @GetMapping("/products/{productId}")
-    public ResponseVo<ProductDetailVo> detail(@PathVariable Integer productId){
-        return productService.detail(productId);
+    public ResponseEntity<ResponseVo<ProductDetailVo>> detail(@PathVariable Integer productId){
+        ResponseVo<ProductDetailVo> responseVo = productService.detail(productId);
+        ProductDetailVo productDetailVo = responseVo.getData();
+        if (productDetailVo == null || productDetailVo.getUpdateTime() == null) {
+            return ResponseEntity.ok(responseVo);
+        }
+        long updateTime = productDetailVo.getUpdateTime().getTime();
+        return ResponseEntity.ok()
+                .cacheControl(httpCacheConfig.productDetail())
+                .eTag("W/\"" + productId + "-" + updateTime + "-" + productDetailVo.getStock() + "\"")
+                .lastModified(updateTime)
+                .body(responseVo);
+    }
+
+    /**
+     * 批量导入商品（管理员），上传csv或json文件，format不传时按文件扩展名判断
+     */
+    @PostMapping("/admin/products/import")
+    @RequireRole(RoleEnum.ADMIN)
+    public ResponseVo<ProductImportVo> importProducts(@RequestParam("file") MultipartFile file,
+                                                      @RequestParam(required = false) String format){
+        if (format == null) {
+            String filename = file.getOriginalFilename();
+            format = filename == null || filename.lastIndexOf('.') < 0 ? "" : filename.substring(filename.lastIndexOf('.') + 1);
+        }
+        try (InputStream inputStream = file.getInputStream()) {
+            return productImportService.importProducts(inputStream, format);
+        } catch (IOException e) {
+            return ResponseVo.error(ResponseEnum.PARAM_ERROR, "文件读取失败");
+        }
     }
 }
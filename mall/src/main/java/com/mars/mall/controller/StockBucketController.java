@@ -0,0 +1,45 @@
+package com.mars.mall.controller;
+
+import com.mars.mall.enums.RequireRole;
+import com.mars.mall.enums.RoleEnum;
+import com.mars.mall.pojo.ProductStockBucket;
+import com.mars.mall.service.IStockBucketService;
+import com.mars.mall.vo.ResponseVo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * 商品库存分桶管理 Controller（管理员）
+ * 热门商品的库存拆成多个桶后，并发订单扣减不同的行，不再排队等同一行锁
+ */
+@RestController
+public class StockBucketController {
+
+    @Autowired
+    private IStockBucketService stockBucketService;
+
+    /**
+     * 拆分库存（管理员），已分桶的商品按新的桶数重新拆分
+     */
+    @PostMapping("/admin/products/{productId}/stock-buckets")
+    @RequireRole(RoleEnum.ADMIN)
+    public ResponseVo<List<ProductStockBucket>> split(@PathVariable Integer productId,
+                                                      @RequestParam Integer count) {
+        return stockBucketService.split(productId, count);
+    }
+
+    /**
+     * 合并库存（管理员），返回合并后的库存
+     */
+    @DeleteMapping("/admin/products/{productId}/stock-buckets")
+    @RequireRole(RoleEnum.ADMIN)
+    public ResponseVo<Integer> merge(@PathVariable Integer productId) {
+        return stockBucketService.merge(productId);
+    }
+}
@@ -0,0 +1,22 @@
+package com.mars.mall.dao;
+
+import com.mars.mall.pojo.CartArchive;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 购物车归档 dao 层
+ */
+public interface CartArchiveMapper {
+
+    //批量写入归档，同一用户已有归档时覆盖
+    int batchUpsert(@Param("cartArchiveList") List<CartArchive> cartArchiveList);
+
+    CartArchive selectByUserId(Integer userId);
+
+    int deleteByUserId(Integer userId);
+
+    int deleteByUserIdSet(@Param("userIdSet") Collection<Integer> userIdSet);
+}
@@ -21,4 +21,6 @@ public interface CategoryMapper {
     int updateByPrimaryKey(Category record);
 
     List<Category> selectAll(); //一次性查询所有类目记录
+
+    String selectFingerprint(); //类目表指纹(记录数+状态和+最后更新时间)，类目有变化时指纹随之变化
 }
\ No newline at end of file
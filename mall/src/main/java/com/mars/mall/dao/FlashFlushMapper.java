@@ -0,0 +1,12 @@
+package com.mars.mall.dao;
+
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * 秒杀库存同步批次 dao 层
+ */
+public interface FlashFlushMapper {
+
+    //记下已同步的批次号，批次号已存在时不写入并返回0
+    int insertIgnore(@Param("flushId") String flushId);
+}
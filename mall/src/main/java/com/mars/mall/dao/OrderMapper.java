@@ -1,8 +1,10 @@
 package com.mars.mall.dao;
 
 import com.mars.mall.pojo.Order;
+import org.apache.ibatis.annotations.Param;
 
-
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -24,4 +26,22 @@ public interface OrderMapper {
     List<Order> selectByUid(Integer uid);
 
     Order selectByOrderNo(Long orderNo);//通过订单号查询某个订单
+
+    //只在订单状态仍为fromStatus时修改状态，返回实际修改的订单数，避免并发的支付、取消、超时关闭互相覆盖
+    //setPaymentTime、setCloseTime为true时同时把付款时间、关闭时间设为当前时间
+    int updateStatusByOrderNoList(@Param("orderNoList") Collection<Long> orderNoList,
+                                  @Param("fromStatus") Integer fromStatus,
+                                  @Param("toStatus") Integer toStatus,
+                                  @Param("setPaymentTime") boolean setPaymentTime,
+                                  @Param("setCloseTime") boolean setCloseTime);
+
+    //在给定订单中找出deadline之前创建、状态仍为status(未付款)的订单并加行锁
+    List<Long> selectExpiredForUpdate(@Param("orderNoList") Collection<Long> orderNoList,
+                                      @Param("status") Integer status,
+                                      @Param("deadline") Date deadline);
+
+    //deadline之前创建、状态仍为status(未付款)的订单号，按创建时间顺序，最多limit个
+    List<Long> selectExpiredOrderNos(@Param("status") Integer status,
+                                     @Param("deadline") Date deadline,
+                                     @Param("limit") Integer limit);
 }
\ No newline at end of file
@@ -2,8 +2,10 @@ package com.mars.mall.dao;
 
 import com.mars.mall.pojo.Product;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -26,4 +28,47 @@ public interface ProductMapper {
     List<Product> selectByCategoryIdSet(@Param("categoryIdSet") Set<Integer> categoryIdSet);//通过类目id集合查找商品
 
     List<Product> selectByProductIdSet(@Param("productIdSet") Set<Integer> productIdSet);//通过商品id集合查找商品
-}
\ No newline at end of file
+
+    /**
+     * 一条语句扣减多个商品的库存：只有在售且扣减后库存不小于0的商品才会被扣减，按商品id顺序加锁避免死锁
+     * @param stockMap 商品id -> 扣减数量，使用TreeMap保证顺序
+     * @return 扣减成功的商品数，小于stockMap.size()说明有商品库存不足或已下架
+     */
+    int decreaseStock(@Param("stockMap") Map<Integer, Integer> stockMap);
+
+    /**
+     * 一条语句调整多个商品的库存，不做任何条件判断，用于把redis中已预扣的秒杀库存同步到mysql
+     * @param deltaMap 商品id -> 扣减量(负数表示加回)
+     */
+    int applyStockDelta(@Param("deltaMap") Map<Integer, Integer> deltaMap);
+
+    /**
+     * 一条语句把多个商品的库存设为给定值，用于把分桶库存之和同步到mall_product.stock
+     * @param stockMap 商品id -> 库存
+     */
+    int updateStock(@Param("stockMap") Map<Integer, Integer> stockMap);
+
+    //加行锁读取商品库存，拆分/合并库存分桶时阻止同时直接扣减该商品库存
+    Integer selectStockForUpdate(Integer id);
+
+    //加共享锁读取商品状态，扣减分桶库存的订单之间不互斥，但会阻止拆分/合并/同步和下架
+    Integer selectStatusForShare(Integer id);
+
+    //只查询商品id和库存，用于刷新redis中的库存读模型
+    List<Product> selectStockByProductIdSet(@Param("productIdSet") Set<Integer> productIdSet);
+
+    //游标分页：按id顺序查找id大于lastId的limit个商品，lastId为null时从头开始，不需要count和offset
+    List<Product> selectByCategoryIdSetAfter(@Param("categoryIdSet") Set<Integer> categoryIdSet,
+                                             @Param("lastId") Integer lastId,
+                                             @Param("limit") Integer limit);
+
+    //批量写入带id的商品：多行insert，id已存在的行更新(保留create_time)，不存在的行按指定的id新增
+    //keepStock为true时已存在的行不更新库存(分桶、秒杀商品的mall_product.stock由同步任务维护)
+    int batchUpsert(@Param("productList") List<Product> productList, @Param("keepStock") boolean keepStock);
+
+    //批量新增不带id的商品，生成的id回填到每个Product
+    int batchInsert(@Param("productList") List<Product> productList);
+
+    //流式读取所有在售商品，每读到一行回调一次handler，用于重建搜索索引，不会把整张表加载到内存
+    void selectOnSaleForIndex(ResultHandler<Product> handler);
+}
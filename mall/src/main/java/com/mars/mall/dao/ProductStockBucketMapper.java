@@ -0,0 +1,42 @@
+package com.mars.mall.dao;
+
+import com.mars.mall.pojo.ProductStockBucket;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 商品库存分桶 dao 层
+ */
+public interface ProductStockBucketMapper {
+
+    int batchInsert(@Param("bucketList") List<ProductStockBucket> bucketList);
+
+    //按桶编号顺序加锁后返回该商品的所有桶，用于拆分、合并库存
+    List<ProductStockBucket> selectByProductIdForUpdate(Integer productId);
+
+    //不加锁读取该商品的所有桶，下单时用来挑选库存足够的桶
+    List<ProductStockBucket> selectByProductId(Integer productId);
+
+    int deleteByProductId(Integer productId);
+
+    //在给定商品中找出已分桶的商品
+    List<Integer> selectBucketedProductIds(@Param("productIdSet") Collection<Integer> productIdSet);
+
+    //加行锁读取一个桶的库存，桶不存在时返回null
+    Integer selectStockForUpdate(@Param("productId") Integer productId, @Param("bucketNo") Integer bucketNo);
+
+    //扣减一个桶的库存，库存不足或商品不在售时不扣减，返回0
+    int decrease(@Param("productId") Integer productId,
+                 @Param("bucketNo") Integer bucketNo,
+                 @Param("quantity") Integer quantity);
+
+    //加回一个桶的库存(订单关闭/取消时)，桶已被合并删除时返回0
+    int increase(@Param("productId") Integer productId,
+                 @Param("bucketNo") Integer bucketNo,
+                 @Param("quantity") Integer quantity);
+
+    //各桶库存之和与mall_product.stock不一致的分桶商品：productId和各桶库存之和(stock)
+    List<ProductStockBucket> selectStockDrift();
+}
@@ -0,0 +1,28 @@
+package com.mars.mall.enums;
+
+import lombok.Getter;
+
+/**
+ * @description: 异步下单凭证状态枚举类
+ * @author: Mars
+ * @create: 2022-03-31 10:00
+ **/
+@Getter
+public enum OrderTicketStatusEnum {
+
+    QUEUED(0, "排队中"),
+
+    SUCCESS(1, "下单成功"),
+
+    FAILED(2, "下单失败"),
+    ;
+
+    Integer code;
+
+    String desc;
+
+    OrderTicketStatusEnum(Integer code, String desc) {
+        this.code = code;
+        this.desc = desc;
+    }
+}
@@ -42,6 +42,8 @@ public enum ResponseEnum {
 
     ORDER_STATUS_ERROR(20,"订单状态有误"),
 
+    ORDER_BUSY(21,"下单人数过多，请稍后再试"),
+
     ;
 
     Integer code;//状态码
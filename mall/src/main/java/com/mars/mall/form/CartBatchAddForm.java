@@ -0,0 +1,20 @@
+package com.mars.mall.form;
+
+import lombok.Data;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import java.util.List;
+
+/**
+ * @description: 购物车批量添加商品的参数表单(再来一单、整套购买)
+ * @author: Mars
+ * @create: 2022-03-14 09:40
+ **/
+@Data
+public class CartBatchAddForm {
+
+    @Valid
+    @NotEmpty
+    private List<CartBatchAddItemForm> items;
+}
@@ -0,0 +1,24 @@
+package com.mars.mall.form;
+
+import lombok.Data;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * @description: 批量添加时的一件商品
+ * @author: Mars
+ * @create: 2022-03-14 09:42
+ **/
+@Data
+public class CartBatchAddItemForm {
+
+    @NotNull
+    private Integer productId;
+
+    @NotNull
+    @Min(1)
+    private Integer quantity = 1;
+
+    private Boolean selected = true;
+}
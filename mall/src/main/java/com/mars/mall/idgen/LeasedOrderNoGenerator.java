@@ -0,0 +1,59 @@
+package com.mars.mall.idgen;
+
+import java.util.function.IntFunction;
+import java.util.function.IntSupplier;
+
+/**
+ * @description: 节点号是租来的时使用：租约失效后(长时间续期失败)拒绝生成订单号，
+ * 避免两个节点用同一个节点号生成重复的订单号；租约恢复后继续生成，改租到新的节点号时换一个按新节点号生成的生成器
+ * @author: Mars
+ * @create: 2022-03-30 10:50
+ **/
+public class LeasedOrderNoGenerator implements OrderNoGenerator {
+
+    private final IntSupplier validWorkerId;
+
+    private final IntFunction<OrderNoGenerator> generatorFactory;
+
+    private volatile Worker current;//当前节点号和按它创建的生成器
+
+    /**
+     * @param validWorkerId    当前可用的节点号，租约失效时返回-1
+     * @param generatorFactory 按节点号创建生成器
+     */
+    public LeasedOrderNoGenerator(IntSupplier validWorkerId, IntFunction<OrderNoGenerator> generatorFactory) {
+        this.validWorkerId = validWorkerId;
+        this.generatorFactory = generatorFactory;
+    }
+
+    @Override
+    public long nextId() {
+        int workerId = validWorkerId.getAsInt();
+        if (workerId < 0) {
+            throw new IllegalStateException("订单号节点号租约已失效，暂停生成订单号");
+        }
+        Worker worker = current;
+        if (worker == null || worker.workerId != workerId) {
+            synchronized (this) {
+                worker = current;
+                if (worker == null || worker.workerId != workerId) {
+                    worker = new Worker(workerId, generatorFactory.apply(workerId));
+                    current = worker;
+                }
+            }
+        }
+        return worker.generator.nextId();
+    }
+
+    private static class Worker {
+
+        private final int workerId;
+
+        private final OrderNoGenerator generator;
+
+        private Worker(int workerId, OrderNoGenerator generator) {
+            this.workerId = workerId;
+            this.generator = generator;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.mars.mall.idgen;
+
+/**
+ * @description: 订单号生成器，生成的订单号存进order_no(BIGINT)列，必须全局唯一
+ * @author: Mars
+ * @create: 2022-03-30 10:00
+ **/
+public interface OrderNoGenerator {
+
+    /**
+     * 生成下一个订单号
+     */
+    long nextId();
+}
@@ -0,0 +1,80 @@
+package com.mars.mall.idgen;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * @description: 雪花算法订单号：41位毫秒时间戳(从2022-01-01起) | 10位节点号 | 12位序号，共63位，始终为正数
+ * 同一节点生成的订单号严格递增，不同节点之间大致按时间递增，写入order_no的唯一索引时基本都是追加到B+树最右侧
+ * 时间戳和序号合在一个AtomicLong里，用CAS更新，不加锁：同一毫秒内序号加1，序号用完时自然进位到下一毫秒
+ * 时钟回拨时继续沿用上次的时间戳，回拨超过maxBackwardMs才报错，避免在回拨期间生成重复的订单号
+ * @author: Mars
+ * @create: 2022-03-30 10:10
+ **/
+public class SnowflakeOrderNoGenerator implements OrderNoGenerator {
+
+    //2022-01-01 00:00:00 +08:00
+    final static long EPOCH = 1640966400000L;
+
+    final static int WORKER_BITS = 10;
+
+    final static int SEQUENCE_BITS = 12;
+
+    public final static int MAX_WORKER_ID = (1 << WORKER_BITS) - 1;
+
+    private final static long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long workerBits;
+
+    private final long maxBackwardMs;
+
+    private final LongSupplier clock;
+
+    //上一次生成的 相对时间戳 << SEQUENCE_BITS | 序号
+    private final AtomicLong state = new AtomicLong();
+
+    public SnowflakeOrderNoGenerator(int workerId, long maxBackwardMs) {
+        this(workerId, maxBackwardMs, System::currentTimeMillis);
+    }
+
+    SnowflakeOrderNoGenerator(int workerId, long maxBackwardMs, LongSupplier clock) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("节点号应在0到" + MAX_WORKER_ID + "之间: " + workerId);
+        }
+        this.workerBits = (long) workerId << SEQUENCE_BITS;
+        this.maxBackwardMs = maxBackwardMs;
+        this.clock = clock;
+    }
+
+    @Override
+    public long nextId() {
+        while (true) {
+            long current = state.get();
+            long lastTimestamp = current >>> SEQUENCE_BITS;
+            long now = clock.getAsLong() - EPOCH;
+            //时间前进了就从新时间戳的0号开始，否则(同一毫秒或时钟回拨)序号加1，用完时进位到下一毫秒
+            long next = now > lastTimestamp ? now << SEQUENCE_BITS : current + 1;
+            long ahead = (next >>> SEQUENCE_BITS) - now;
+            if (ahead > maxBackwardMs) {
+                throw new IllegalStateException("时钟回拨" + ahead + "ms，超过允许的" + maxBackwardMs + "ms，暂停生成订单号");
+            }
+            if (state.compareAndSet(current, next)) {
+                return (next >>> SEQUENCE_BITS) << (WORKER_BITS + SEQUENCE_BITS) | workerBits | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * 订单号中的节点号，排查问题时用
+     */
+    public static int workerIdOf(long id) {
+        return (int) (id >>> SEQUENCE_BITS) & MAX_WORKER_ID;
+    }
+
+    /**
+     * 订单号中的生成时间(毫秒)
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (WORKER_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+}
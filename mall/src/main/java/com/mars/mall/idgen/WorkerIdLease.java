@@ -0,0 +1,151 @@
+package com.mars.mall.idgen;
+
+import com.mars.mall.consts.MallConst;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @description: 订单号生成器的节点号分配
+ * 配置了 mall.order-no.worker-id 时直接使用(固定部署的节点)；没有配置时从redis租一个空闲的节点号，
+ * 定时续期，进程退出时归还。租约过期时间是续期间隔的几倍，节点短暂卡顿不会丢掉节点号
+ * 一直续期失败直到租约过期时，租约失效，订单号生成器暂停生成，之后的续期重新租到同一个节点号时恢复；
+ * 续期发现被其他节点占用时放弃这个节点号，改租一个新的，订单号生成器换用新的节点号
+ * @author: Mars
+ * @create: 2022-03-30 10:30
+ **/
+@Slf4j
+@Component
+public class WorkerIdLease {
+
+    @Value("${mall.order-no.worker-id:-1}")
+    private int configuredWorkerId;
+
+    @Value("${mall.order-no.lease-seconds:60}")
+    private long leaseSeconds;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisScript<Long> workerLeaseScript;
+
+    private final String token = UUID.randomUUID().toString();
+
+    private volatile Lease lease;//当前租到的节点号，没有时为null
+
+    /**
+     * 返回本节点的节点号，需要时从redis租一个：从随机位置开始找，减少多个节点同时启动时的冲突
+     */
+    public synchronized int workerId() {
+        if (configuredWorkerId >= 0) {
+            return configuredWorkerId;
+        }
+        Lease current = lease;
+        if (current != null) {
+            return current.workerId;
+        }
+        int count = SnowflakeOrderNoGenerator.MAX_WORKER_ID + 1;
+        int start = ThreadLocalRandom.current().nextInt(count);
+        for (int i = 0; i < count; i++) {
+            int workerId = (start + i) % count;
+            long now = System.currentTimeMillis();
+            if (lease(workerId)) {
+                lease = new Lease(workerId, now + leaseSeconds * 1000);
+                log.info("租用订单号节点号, workerId={}", workerId);
+                return workerId;
+            }
+        }
+        throw new IllegalStateException("没有空闲的订单号节点号");
+    }
+
+    /**
+     * 当前可以使用的节点号：配置的节点号始终可用，租来的节点号在租约过期前可用；不可用时返回-1
+     */
+    public int validWorkerId() {
+        if (configuredWorkerId >= 0) {
+            return configuredWorkerId;
+        }
+        Lease current = lease;
+        return current != null && System.currentTimeMillis() < current.expireMillis ? current.workerId : -1;
+    }
+
+    /**
+     * 节点号是否仍可使用
+     */
+    public boolean isValid() {
+        return validWorkerId() >= 0;
+    }
+
+    /**
+     * 续期。被其他节点占用时立即放弃(继续使用会生成重复的订单号)并改租一个新的节点号，
+     * 新的也没租到时由下次续期重试
+     */
+    @Scheduled(fixedDelayString = "${mall.order-no.lease-renew-interval-ms:20000}")
+    public synchronized void renew() {
+        if (configuredWorkerId >= 0) {
+            return;
+        }
+        Lease current = lease;
+        long now = System.currentTimeMillis();
+        try {
+            if (current == null) {
+                workerId();
+            } else if (lease(current.workerId)) {
+                lease = new Lease(current.workerId, now + leaseSeconds * 1000);
+            } else {
+                lease = null;
+                log.error("订单号节点号租约被其他节点占用, workerId={}，改租新的节点号", current.workerId);
+                workerId();
+            }
+        } catch (RuntimeException e) {
+            log.warn("订单号节点号租约续期失败, workerId={}", current == null ? -1 : current.workerId, e);
+        }
+    }
+
+    @PreDestroy
+    public void release() {
+        Lease current = lease;
+        if (current == null) {
+            return;
+        }
+        String key = keyOf(current.workerId);
+        if (token.equals(redisTemplate.opsForValue().get(key))) {
+            redisTemplate.delete(key);
+        }
+    }
+
+    private boolean lease(int workerId) {
+        Long leased = redisTemplate.execute(workerLeaseScript, Collections.singletonList(keyOf(workerId)),
+                token, String.valueOf(leaseSeconds * 1000));
+        return leased != null && leased == 1;
+    }
+
+    private String keyOf(int workerId) {
+        return String.format(MallConst.ORDER_NO_WORKER_REDIS_KEY_TEMPLATE, workerId);
+    }
+
+    /**
+     * 节点号和租约过期时间一起替换，读取时不会拿到新节点号配旧的过期时间
+     */
+    private static class Lease {
+
+        private final int workerId;
+
+        private final long expireMillis;//租用成功时计算的过期时间，以发起请求的时间为起点
+
+        private Lease(int workerId, long expireMillis) {
+            this.workerId = workerId;
+            this.expireMillis = expireMillis;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.mars.mall.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @description: CSV格式的商品导入文件读取器(UTF-8，可带BOM)
+ * 第一行是表头(字段名)，字段用逗号分隔，包含逗号、引号或换行的字段用双引号括起来，字段中的双引号写成两个双引号
+ * @author: Mars
+ * @create: 2022-03-26 09:40
+ **/
+public class CsvProductRowReader implements ProductRowReader {
+
+    private final static int NONE = -2;
+
+    private final Reader reader;
+
+    private List<String> header;
+
+    private int pushback = NONE;//回退的一个字符
+
+    public CsvProductRowReader(InputStream inputStream) {
+        this.reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public Map<String, String> next() throws IOException {
+        if (header == null) {
+            List<String> record = readRecord();
+            if (record == null) {
+                return null;
+            }
+            if (!record.get(0).isEmpty() && record.get(0).charAt(0) == '\uFEFF') {
+                record.set(0, record.get(0).substring(1));
+            }
+            header = new ArrayList<>(record.size());
+            for (String key : record) {
+                header.add(ProductRowReader.normalizeKey(key));
+            }
+        }
+
+        List<String> record;
+        do {
+            record = readRecord();
+            if (record == null) {
+                return null;
+            }
+        } while (record.size() == 1 && record.get(0).isEmpty());//跳过空行
+
+        Map<String, String> row = new HashMap<>(header.size() * 2);
+        for (int i = 0; i < header.size(); i++) {
+            String value = i < record.size() ? record.get(i).trim() : null;
+            row.put(header.get(i), value == null || value.isEmpty() ? null : value);
+        }
+        return row;
+    }
+
+    /**
+     * 读取一条记录(带引号的字段中可以有换行，所以一条记录可能跨多行)
+     * @return 字段列表，文件结束时返回null
+     */
+    private List<String> readRecord() throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean empty = true;
+        int c;
+        while ((c = read()) != -1) {
+            empty = false;
+            if (quoted) {
+                if (c == '"') {
+                    int next = read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        pushback = next;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r') {
+                int next = read();
+                if (next != '\n') {
+                    pushback = next;
+                }
+                break;
+            } else if (c == '\n') {
+                break;
+            } else {
+                field.append((char) c);
+            }
+        }
+        if (quoted) {
+            throw new IOException("CSV格式错误：引号没有闭合");
+        }
+        if (empty) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private int read() throws IOException {
+        if (pushback != NONE) {
+            int c = pushback;
+            pushback = NONE;
+            return c;
+        }
+        return reader.read();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
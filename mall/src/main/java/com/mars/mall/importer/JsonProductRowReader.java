@@ -0,0 +1,80 @@
+package com.mars.mall.importer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * @description: JSON格式的商品导入文件读取器
+ * 文件内容是一个对象数组，用jackson的流式解析器逐个读取数组元素，每次只在内存中保留一个商品对象
+ * subImages可以写成字符串数组，会用逗号拼接成数据库中的格式
+ * @author: Mars
+ * @create: 2022-03-26 09:50
+ **/
+public class JsonProductRowReader implements ProductRowReader {
+
+    private final JsonParser parser;
+
+    private boolean started;
+
+    public JsonProductRowReader(ObjectMapper objectMapper, InputStream inputStream) throws IOException {
+        JsonFactory jsonFactory = objectMapper.getFactory();
+        this.parser = jsonFactory.createParser(inputStream);
+        this.parser.setCodec(objectMapper);
+    }
+
+    @Override
+    public Map<String, String> next() throws IOException {
+        if (!started) {
+            started = true;
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("JSON格式错误：内容应该是商品对象数组");
+            }
+        }
+        JsonToken token = parser.nextToken();
+        if (token == null || token == JsonToken.END_ARRAY) {
+            return null;
+        }
+        JsonNode node = parser.readValueAsTree();
+
+        Map<String, String> row = new HashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            row.put(ProductRowReader.normalizeKey(field.getKey()), textOf(field.getValue()));
+        }
+        return row;
+    }
+
+    private String textOf(JsonNode value) {
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        if (value.isArray()) {
+            StringJoiner joiner = new StringJoiner(",");
+            for (JsonNode element : value) {
+                joiner.add(element.asText());
+            }
+            return joiner.toString();
+        }
+        if (value.isObject()) {
+            return value.toString();
+        }
+        String text = value.asText().trim();
+        return text.isEmpty() ? null : text;
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
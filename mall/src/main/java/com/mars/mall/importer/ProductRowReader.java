@@ -0,0 +1,27 @@
+package com.mars.mall.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @description: 商品导入文件的逐行读取器，每次只解析一行，不把整个文件读进内存
+ * 每行转成 字段名 -> 文本值 的map，字段名统一用normalizeKey处理，
+ * 例如 categoryId、category_id、CategoryId 都对应 categoryid
+ * @author: Mars
+ * @create: 2022-03-26 09:30
+ **/
+public interface ProductRowReader extends Closeable {
+
+    /**
+     * 读取下一行
+     * @return 字段名 -> 文本值，值为空时为null；没有更多数据时返回null
+     * @throws IOException 文件读取失败或格式错误，之后不能再继续读取
+     */
+    Map<String, String> next() throws IOException;
+
+    static String normalizeKey(String key) {
+        return key.trim().replace("_", "").toLowerCase(Locale.ROOT);
+    }
+}
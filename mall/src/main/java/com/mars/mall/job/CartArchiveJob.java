@@ -0,0 +1,29 @@
+package com.mars.mall.job;
+
+import com.mars.mall.service.ICartArchiveService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * @description: 定时归档闲置购物车，由配置 mall.cart.archive.enabled 开启
+ * @author: Mars
+ * @create: 2022-03-12 11:10
+ **/
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "mall.cart.archive.enabled", havingValue = "true", matchIfMissing = true)
+public class CartArchiveJob {
+
+    @Autowired
+    private ICartArchiveService cartArchiveService;
+
+    @Scheduled(cron = "${mall.cart.archive.cron:0 30 3 * * ?}")
+    public void archive() {
+        long start = System.currentTimeMillis();
+        int count = cartArchiveService.archiveIdle();
+        log.info("闲置购物车归档完成, count={}, 耗时={}ms", count, System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,23 @@
+package com.mars.mall.job;
+
+import com.mars.mall.service.ICategoryService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * @description: 定时检查类目表指纹，发现变化(包括其他节点或直接改库的修改)时重建类目树快照
+ * @author: Mars
+ * @create: 2022-03-21 11:30
+ **/
+@Component
+public class CategoryRefreshJob {
+
+    @Autowired
+    private ICategoryService categoryService;
+
+    @Scheduled(fixedDelayString = "${mall.category.refresh-interval-ms:60000}")
+    public void refresh() {
+        categoryService.refreshIfChanged();
+    }
+}
@@ -0,0 +1,23 @@
+package com.mars.mall.job;
+
+import com.mars.mall.service.IFlashSaleService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * @description: 定时把redis中预扣的秒杀库存批量同步到mysql
+ * @author: Mars
+ * @create: 2022-03-28 11:20
+ **/
+@Component
+public class FlashSaleFlushJob {
+
+    @Autowired
+    private IFlashSaleService flashSaleService;
+
+    @Scheduled(fixedDelayString = "${mall.flash-sale.flush-interval-ms:1000}")
+    public void flush() {
+        flashSaleService.flush();
+    }
+}
@@ -0,0 +1,37 @@
+package com.mars.mall.job;
+
+import com.mars.mall.service.IOrderExpireService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * @description: 关闭超时未付款的订单：频繁关闭延迟消息到期的订单，间隔较长地扫描数据库兜底
+ * @author: Mars
+ * @create: 2022-04-01 10:30
+ **/
+@Slf4j
+@Component
+public class OrderExpireJob {
+
+    @Autowired
+    private IOrderExpireService orderExpireService;
+
+    @Scheduled(fixedDelayString = "${mall.order.expire.flush-interval-ms:1000}")
+    public void flush() {
+        int closed = orderExpireService.flush();
+        if (closed > 0) {
+            log.info("关闭超时未付款订单, closed={}", closed);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${mall.order.expire.sweep-interval-ms:60000}")
+    public void sweep() {
+        long start = System.currentTimeMillis();
+        int closed = orderExpireService.sweep();
+        if (closed > 0) {
+            log.info("扫描关闭超时未付款订单, closed={}, 耗时={}ms", closed, System.currentTimeMillis() - start);
+        }
+    }
+}
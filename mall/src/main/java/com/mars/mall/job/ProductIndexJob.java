@@ -0,0 +1,30 @@
+package com.mars.mall.job;
+
+import com.mars.mall.search.ProductSearchIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * @description: 定时把被修改的商品重新写入搜索索引，索引还没构建过时全量构建；
+ * 另外定时全量重建，修正因redis断线错过脏数据通知而落后的索引
+ * @author: Mars
+ * @create: 2022-03-24 11:20
+ **/
+@Component
+public class ProductIndexJob {
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Scheduled(fixedDelayString = "${mall.search.reindex-interval-ms:2000}")
+    public void refresh() {
+        productSearchIndex.refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${mall.search.rebuild-interval-ms:3600000}",
+            initialDelayString = "${mall.search.rebuild-interval-ms:3600000}")
+    public void rebuild() {
+        productSearchIndex.rebuild();
+    }
+}
@@ -0,0 +1,28 @@
+package com.mars.mall.job;
+
+import com.mars.mall.service.IStockBucketService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * @description: 定时把分桶商品各桶库存之和写回mall_product.stock，供商品展示和下单前的库存判断使用
+ * @author: Mars
+ * @create: 2022-03-29 11:10
+ **/
+@Slf4j
+@Component
+public class StockBucketSyncJob {
+
+    @Autowired
+    private IStockBucketService stockBucketService;
+
+    @Scheduled(fixedDelayString = "${mall.product.stock-bucket.sync-interval-ms:5000}")
+    public void sync() {
+        int synced = stockBucketService.sync();
+        if (synced > 0) {
+            log.info("分桶库存同步到mall_product, 商品数={}", synced);
+        }
+    }
+}
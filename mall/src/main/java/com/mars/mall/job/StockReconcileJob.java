@@ -0,0 +1,27 @@
+package com.mars.mall.job;
+
+import com.mars.mall.cache.ProductStockCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * @description: 定时把redis中的库存读模型和mysql比对，修正并发加载、直接改库等原因产生的偏差
+ * @author: Mars
+ * @create: 2022-03-27 10:40
+ **/
+@Slf4j
+@Component
+public class StockReconcileJob {
+
+    @Autowired
+    private ProductStockCache productStockCache;
+
+    @Scheduled(fixedDelayString = "${mall.product.stock-cache.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        long start = System.currentTimeMillis();
+        int corrected = productStockCache.reconcile();
+        log.info("库存读模型比对完成, corrected={}, 耗时={}ms", corrected, System.currentTimeMillis() - start);
+    }
+}
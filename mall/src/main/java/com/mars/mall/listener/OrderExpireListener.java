@@ -0,0 +1,26 @@
+package com.mars.mall.listener;
+
+import com.mars.mall.consts.MallConst;
+import com.mars.mall.service.IOrderExpireService;
+import org.springframework.amqp.rabbit.annotation.RabbitHandler;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * @description: 到期的未付款订单消息监听，消息内容是订单号，订单攒成一批后由 OrderExpireJob 关闭
+ * @author: Mars
+ * @create: 2022-04-01 10:20
+ **/
+@Component
+@RabbitListener(queues = MallConst.ORDER_EXPIRE_QUEUE)
+public class OrderExpireListener {
+
+    @Autowired
+    private IOrderExpireService orderExpireService;
+
+    @RabbitHandler
+    public void process(String msg) {
+        orderExpireService.enqueue(Long.valueOf(msg));
+    }
+}
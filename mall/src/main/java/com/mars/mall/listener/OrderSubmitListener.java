@@ -0,0 +1,30 @@
+package com.mars.mall.listener;
+
+import com.google.gson.Gson;
+import com.mars.mall.consts.MallConst;
+import com.mars.mall.pojo.OrderSubmitMessage;
+import com.mars.mall.service.IOrderSubmitService;
+import org.springframework.amqp.rabbit.annotation.RabbitHandler;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * @description: 异步下单消息监听，消费者数量和预取数量见 MqConfig.orderSubmitContainerFactory
+ * @author: Mars
+ * @create: 2022-03-31 10:40
+ **/
+@Component
+@RabbitListener(queues = MallConst.ORDER_SUBMIT_QUEUE, containerFactory = "orderSubmitContainerFactory")
+public class OrderSubmitListener {
+
+    @Autowired
+    private IOrderSubmitService orderSubmitService;
+
+    private final Gson gson = new Gson();
+
+    @RabbitHandler
+    public void process(String msg) {
+        orderSubmitService.process(gson.fromJson(msg, OrderSubmitMessage.class));
+    }
+}
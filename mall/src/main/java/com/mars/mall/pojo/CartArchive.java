@@ -0,0 +1,20 @@
+package com.mars.mall.pojo;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * @description: 归档的购物车，对应mall_cart_archive表
+ * @author: Mars
+ * @create: 2022-03-12 10:05
+ **/
+@Data
+public class CartArchive {
+
+    private Integer userId;
+
+    private String cartData;//购物车hash的全部条目，json格式
+
+    private Date archiveTime;
+}
@@ -0,0 +1,23 @@
+package com.mars.mall.pojo;
+
+import lombok.Data;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @description: 一次下单在redis中预扣秒杀库存的结果
+ * @author: Mars
+ * @create: 2022-03-28 10:20
+ **/
+@Data
+public class FlashReservation {
+
+    private Integer shortProductId;//库存不足的秒杀商品id，预扣成功时为null，此时没有任何商品被预扣
+
+    private Map<Integer, Integer> reservedMap = new TreeMap<>();//预扣成功的秒杀商品：商品id -> 数量
+
+    public boolean isSuccess() {
+        return shortProductId == null;
+    }
+}
@@ -0,0 +1,22 @@
+package com.mars.mall.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @description: 异步下单消息，订单号在入队前生成，重复投递时用它判断订单是否已经创建
+ * @author: Mars
+ * @create: 2022-03-31 10:05
+ **/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSubmitMessage {
+
+    private Long orderNo;
+
+    private Integer uid;
+
+    private Integer shippingId;
+}
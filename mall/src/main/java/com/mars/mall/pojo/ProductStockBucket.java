@@ -0,0 +1,18 @@
+package com.mars.mall.pojo;
+
+import lombok.Data;
+
+/**
+ * @description: 商品库存分桶，对应mall_product_stock_bucket表
+ * @author: Mars
+ * @create: 2022-03-29 10:05
+ **/
+@Data
+public class ProductStockBucket {
+
+    private Integer productId;
+
+    private Integer bucketNo;//桶编号，从0开始
+
+    private Integer stock;
+}
@@ -0,0 +1,318 @@
+package com.mars.mall.search;
+
+import com.mars.mall.dao.ProductMapper;
+import com.mars.mall.enums.ProductStatusEnum;
+import com.mars.mall.pojo.Product;
+import com.mars.mall.vo.ProductVo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * @description: 商品搜索的进程内倒排索引，索引在售商品的名称和副标题
+ * 词 -> (商品id -> 加权词频)，名称中的词权重为2、副标题为1，按BM25打分排序
+ * 商品修改后由CacheEvictInterceptor标记为脏数据，并通过redis发布订阅通知所有节点标记，
+ * 各节点的定时任务批量从数据库重新读取这些商品更新各自的索引；错过通知的节点由定时全量重建兜底；
+ * 全量重建时用流式查询逐行读取商品构建新索引，构建完成后整体替换，重建期间搜索照常使用旧索引
+ * @author: Mars
+ * @create: 2022-03-24 10:40
+ **/
+@Slf4j
+@Component
+public class ProductSearchIndex implements MessageListener {
+
+    public final static String DIRTY_CHANNEL = "product_index_dirty";//脏数据通知频道，消息内容为逗号分隔的商品id，*表示全量重建
+
+    private final static String ALL_DIRTY = "*";
+
+    private final static float NAME_WEIGHT = 2f;
+
+    private final static float SUBTITLE_WEIGHT = 1f;
+
+    //BM25参数
+    private final static double K1 = 1.2;
+
+    private final static double B = 0.75;
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile IndexData data;//null表示还没有构建过
+
+    private final Set<Integer> dirtyIdSet = ConcurrentHashMap.newKeySet();//待重新索引的商品id
+
+    private volatile boolean rebuildRequested;//需要全量重建(无法确定修改了哪些商品时)
+
+    /**
+     * 商品被修改后调用，所有节点下次定时任务时重新索引这些商品
+     */
+    public void markDirty(Collection<Integer> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        dirtyIdSet.addAll(productIds);
+        StringBuilder message = new StringBuilder();
+        for (Integer productId : productIds) {
+            if (message.length() > 0) {
+                message.append(',');
+            }
+            message.append(productId);
+        }
+        redisTemplate.convertAndSend(DIRTY_CHANNEL, message.toString());
+    }
+
+    /**
+     * 无法确定修改了哪些商品时调用，所有节点下次定时任务时全量重建
+     */
+    public void markAllDirty() {
+        rebuildRequested = true;
+        redisTemplate.convertAndSend(DIRTY_CHANNEL, ALL_DIRTY);
+    }
+
+    /**
+     * 收到其他节点(也包括本节点)发布的脏数据通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (ALL_DIRTY.equals(body)) {
+            rebuildRequested = true;
+            return;
+        }
+        try {
+            for (String productId : body.split(",")) {
+                dirtyIdSet.add(Integer.valueOf(productId));
+            }
+        } catch (NumberFormatException e) {
+            log.warn("搜索索引脏数据通知格式错误, message={}", body);
+        }
+    }
+
+    /**
+     * 定时任务调用：没有构建过或者需要全量重建时重建，否则只重新索引被修改的商品
+     */
+    public synchronized void refresh() {
+        if (data == null || rebuildRequested) {
+            rebuild();
+            return;
+        }
+        if (dirtyIdSet.isEmpty()) {
+            return;
+        }
+        Set<Integer> productIdSet = drainDirty();
+        if (productIdSet.isEmpty()) {
+            return;
+        }
+        List<Product> productList = productMapper.selectByProductIdSet(productIdSet);
+        lock.writeLock().lock();
+        try {
+            for (Integer productId : productIdSet) {
+                data.remove(productId);
+            }
+            for (Product product : productList) {
+                data.add(product);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 从mysql流式读取所有在售商品重建索引
+     */
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        rebuildRequested = false;
+        //重建开始前的修改都会被这次读取覆盖，重建期间的修改留在脏数据集合里，下次再处理
+        drainDirty();
+        IndexData newData = new IndexData();
+        productMapper.selectOnSaleForIndex(context -> newData.add(context.getResultObject()));
+        lock.writeLock().lock();
+        try {
+            data = newData;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("商品搜索索引重建完成, 商品数={}, 词数={}, 耗时={}ms",
+                newData.docs.size(), newData.postings.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 搜索
+     * @param keyword 关键词
+     * @param categoryFilter 商品类目过滤条件，为null时不过滤
+     * @param offset 跳过的结果数
+     * @param limit 返回的结果数
+     * @return 按相关度排序的一页结果和命中总数
+     */
+    public SearchResult search(String keyword, Predicate<Integer> categoryFilter, int offset, int limit) {
+        if (data == null) {
+            rebuild();
+        }
+        Set<String> terms = new LinkedHashSet<>(Tokenizer.tokenizeForQuery(keyword));
+
+        lock.readLock().lock();
+        try {
+            IndexData current = data;
+            int docCount = current.docs.size();
+            double avgLength = docCount == 0 ? 1 : (double) current.totalLength / docCount;
+
+            Map<Integer, Double> scoreMap = new HashMap<>();
+            for (String term : terms) {
+                Map<Integer, Float> posting = current.postings.get(term);
+                if (posting == null) {
+                    continue;
+                }
+                double idf = Math.log(1 + (docCount - posting.size() + 0.5) / (posting.size() + 0.5));
+                for (Map.Entry<Integer, Float> entry : posting.entrySet()) {
+                    Doc doc = current.docs.get(entry.getKey());
+                    if (categoryFilter != null && !categoryFilter.test(doc.productVo.getCategoryId())) {
+                        continue;
+                    }
+                    double tf = entry.getValue();
+                    double score = idf * tf * (K1 + 1) / (tf + K1 * (1 - B + B * doc.length / avgLength));
+                    scoreMap.merge(entry.getKey(), score, Double::sum);
+                }
+            }
+
+            List<Map.Entry<Integer, Double>> ranked = new ArrayList<>(scoreMap.entrySet());
+            ranked.sort((a, b) -> {
+                int compare = Double.compare(b.getValue(), a.getValue());
+                return compare != 0 ? compare : Integer.compare(a.getKey(), b.getKey());
+            });
+
+            List<ProductVo> productVoList = new ArrayList<>();
+            for (int i = offset; i < ranked.size() && i < offset + limit; i++) {
+                ProductVo productVo = new ProductVo();
+                BeanUtils.copyProperties(current.docs.get(ranked.get(i).getKey()).productVo, productVo);
+                productVoList.add(productVo);
+            }
+            return new SearchResult(ranked.size(), productVoList);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Set<Integer> drainDirty() {
+        Set<Integer> productIdSet = new HashSet<>();
+        Iterator<Integer> iterator = dirtyIdSet.iterator();
+        while (iterator.hasNext()) {
+            productIdSet.add(iterator.next());
+            iterator.remove();
+        }
+        return productIdSet;
+    }
+
+    /**
+     * 搜索结果：一页商品和命中总数
+     */
+    public static class SearchResult {
+
+        private final int total;
+
+        private final List<ProductVo> productVoList;
+
+        public SearchResult(int total, List<ProductVo> productVoList) {
+            this.total = total;
+            this.productVoList = productVoList;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public List<ProductVo> getProductVoList() {
+            return productVoList;
+        }
+    }
+
+    //一个被索引的商品
+    private static class Doc {
+
+        private final ProductVo productVo;
+
+        private final Set<String> terms;
+
+        private final float length;//加权后的词数
+
+        private Doc(ProductVo productVo, Set<String> terms, float length) {
+            this.productVo = productVo;
+            this.terms = terms;
+            this.length = length;
+        }
+    }
+
+    //索引数据，读写由外层的读写锁保护
+    private static class IndexData {
+
+        private final Map<String, Map<Integer, Float>> postings = new HashMap<>();
+
+        private final Map<Integer, Doc> docs = new HashMap<>();
+
+        private long totalLength;
+
+        private void add(Product product) {
+            remove(product.getId());
+            if (!ProductStatusEnum.ON_SALE.getCode().equals(product.getStatus())) {
+                return;//只索引在售商品
+            }
+            Map<String, Float> weights = new HashMap<>();
+            for (String token : Tokenizer.tokenizeForIndex(product.getName())) {
+                weights.merge(token, NAME_WEIGHT, Float::sum);
+            }
+            for (String token : Tokenizer.tokenizeForIndex(product.getSubtitle())) {
+                weights.merge(token, SUBTITLE_WEIGHT, Float::sum);
+            }
+            float length = 0;
+            for (Map.Entry<String, Float> entry : weights.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), k -> new HashMap<>()).put(product.getId(), entry.getValue());
+                length += entry.getValue();
+            }
+            ProductVo productVo = new ProductVo();
+            BeanUtils.copyProperties(product, productVo);
+            docs.put(product.getId(), new Doc(productVo, weights.keySet(), length));
+            totalLength += (long) length;
+        }
+
+        private void remove(Integer productId) {
+            Doc doc = docs.remove(productId);
+            if (doc == null) {
+                return;
+            }
+            for (String term : doc.terms) {
+                Map<Integer, Float> posting = postings.get(term);
+                if (posting != null) {
+                    posting.remove(productId);
+                    if (posting.isEmpty()) {
+                        postings.remove(term);
+                    }
+                }
+            }
+            totalLength -= (long) doc.length;
+        }
+    }
+}
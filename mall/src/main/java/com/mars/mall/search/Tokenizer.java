@@ -0,0 +1,79 @@
+package com.mars.mall.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * @description: 商品搜索分词
+ * 英文、数字按连续的字母数字切成单词并转小写；中文没有空格分隔，按相邻两个字切成二元词(bigram)，
+ * 建索引时额外加入单字，这样单字查询也能命中，多字查询用二元词匹配更准确
+ * @author: Mars
+ * @create: 2022-03-24 10:10
+ **/
+public final class Tokenizer {
+
+    private Tokenizer() {
+    }
+
+    /**
+     * 建索引时使用：单词 + 中文二元词 + 中文单字
+     */
+    public static List<String> tokenizeForIndex(String text) {
+        return tokenize(text, true);
+    }
+
+    /**
+     * 查询时使用：单词 + 中文二元词，只有一个字的中文片段使用单字
+     */
+    public static List<String> tokenizeForQuery(String text) {
+        return tokenize(text, false);
+    }
+
+    private static List<String> tokenize(String text, boolean withUnigram) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (isHan(c)) {
+                int start = i;
+                while (i < length && isHan(text.charAt(i))) {
+                    i++;
+                }
+                addHanTokens(text.substring(start, i), withUnigram, tokens);
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(text.charAt(i)) && !isHan(text.charAt(i))) {
+                    i++;
+                }
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+            } else {
+                i++;//标点、空格等作为分隔符
+            }
+        }
+        return tokens;
+    }
+
+    private static void addHanTokens(String run, boolean withUnigram, List<String> tokens) {
+        if (run.length() == 1) {
+            tokens.add(run);
+            return;
+        }
+        for (int i = 0; i + 1 < run.length(); i++) {
+            tokens.add(run.substring(i, i + 2));
+        }
+        if (withUnigram) {
+            for (int i = 0; i < run.length(); i++) {
+                tokens.add(run.substring(i, i + 1));
+            }
+        }
+    }
+
+    private static boolean isHan(char c) {
+        return Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN;
+    }
+}
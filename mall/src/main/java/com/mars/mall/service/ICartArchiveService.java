@@ -0,0 +1,20 @@
+package com.mars.mall.service;
+
+/**
+ * @description: 购物车生命周期：记录访问时间，归档长时间未访问的购物车，再次访问时恢复
+ * @author: Mars
+ * @create: 2022-03-12 10:20
+ **/
+public interface ICartArchiveService {
+
+    /**
+     * 访问购物车前调用：记录访问时间，购物车已归档时先恢复到redis
+     */
+    void touch(Integer uid);
+
+    /**
+     * 把超过闲置时间的购物车分批归档到mysql并从redis删除
+     * @return 归档的购物车数
+     */
+    int archiveIdle();
+}
@@ -1,11 +1,16 @@
 package com.mars.mall.service;
 
 import com.mars.mall.form.CartAddForm;
+import com.mars.mall.form.CartBatchAddForm;
 import com.mars.mall.form.CartUpdateForm;
 import com.mars.mall.pojo.Cart;
+import com.mars.mall.pojo.Product;
+import com.mars.mall.vo.CartBatchAddVo;
+import com.mars.mall.vo.CartDeltaVo;
 import com.mars.mall.vo.CartVo;
 import com.mars.mall.vo.ResponseVo;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -17,6 +22,11 @@ public interface ICartService {
 
     ResponseVo<CartVo> add(Integer uid,CartAddForm cartAddForm);
 
+    /**
+     * 批量添加商品，部分商品校验不通过时其余商品照常添加
+     */
+    ResponseVo<CartBatchAddVo> addBatch(Integer uid, CartBatchAddForm form);
+
     ResponseVo<CartVo> list(Integer uid);
 
     ResponseVo<CartVo> update(Integer uid, Integer productId, CartUpdateForm form);
@@ -29,5 +39,28 @@ public interface ICartService {
 
     ResponseVo<Integer> sum(Integer uid);
 
+    /**
+     * 一次删除购物车中的多件商品，不渲染购物车，供下单后清理购物车使用
+     * @param productList 要删除的商品，单价用于扣减选中商品总价
+     * @return 实际删除的条目数
+     */
+    long deleteBatch(Integer uid, Collection<Product> productList);
+
+    /**
+     * 按购物车条目重新计算并写回合计值
+     */
+    void repairAggregate(Integer uid);
+
     List<Cart> listForCart(Integer uid);
+
+    //增量模式：修改购物车后只返回变化的商品和合计值
+    ResponseVo<CartDeltaVo> addForDelta(Integer uid, CartAddForm cartAddForm);
+
+    ResponseVo<CartDeltaVo> updateForDelta(Integer uid, Integer productId, CartUpdateForm form);
+
+    ResponseVo<CartDeltaVo> deleteForDelta(Integer uid, Integer productId);
+
+    ResponseVo<CartDeltaVo> selectAllForDelta(Integer uid);
+
+    ResponseVo<CartDeltaVo> unSelectAllForDelta(Integer uid);
 }
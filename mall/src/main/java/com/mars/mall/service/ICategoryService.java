@@ -1,5 +1,6 @@
 package com.mars.mall.service;
 
+import com.mars.mall.cache.CategorySnapshot;
 import com.mars.mall.vo.CategoryVo;
 import com.mars.mall.vo.ResponseVo;
 
@@ -15,5 +16,11 @@ public interface ICategoryService {
 
     ResponseVo<List<CategoryVo>> selectAll();//查询所有的类目
 
+    CategorySnapshot snapshot();//当前类目树快照
+
+    void refresh();//重新构建类目树快照
+
+    boolean refreshIfChanged();//类目表有变化时重新构建类目树快照
+
     void findSubCategoryId(Integer id, Set<Integer> resultSet);
 }
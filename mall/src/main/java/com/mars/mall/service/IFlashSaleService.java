@@ -0,0 +1,57 @@
+package com.mars.mall.service;
+
+import com.mars.mall.pojo.FlashReservation;
+import com.mars.mall.vo.FlashSaleStockVo;
+import com.mars.mall.vo.ResponseVo;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @description: 秒杀商品库存：库存放在redis中，下单时原子预扣，扣减量异步批量同步到mysql
+ * @author: Mars
+ * @create: 2022-03-28 10:30
+ **/
+public interface IFlashSaleService {
+
+    /**
+     * 把商品设为秒杀商品，从mysql加载当前库存到redis，应在活动开始前设置
+     * @return 加载的库存
+     */
+    ResponseVo<Integer> enable(Integer productId);
+
+    /**
+     * 取消秒杀：先把已预扣的数量同步到mysql，之后该商品下单直接扣mysql库存
+     * 其他节点正在同步时等待它完成，超时返回错误，商品仍是秒杀商品
+     */
+    ResponseVo<Boolean> disable(Integer productId);
+
+    /**
+     * 是否秒杀商品
+     */
+    boolean isFlash(Integer productId);
+
+    /**
+     * 所有秒杀商品的redis库存和待同步数量
+     */
+    ResponseVo<List<FlashSaleStockVo>> list();
+
+    /**
+     * 下单时预扣秒杀商品的库存，不是秒杀商品的忽略
+     * @param stockMap 订单中所有商品：商品id -> 数量
+     */
+    FlashReservation reserve(Map<Integer, Integer> stockMap);
+
+    /**
+     * 释放预扣的库存
+     * @param stockMap 商品id -> 数量
+     * @param onlyFlash true-只释放当前仍是秒杀商品的商品，false-全部释放(下单失败、订单取消，商品已经确定按秒杀扣减)
+     */
+    void release(Map<Integer, Integer> stockMap, boolean onlyFlash);
+
+    /**
+     * 把已预扣的扣减量批量同步到mysql
+     * @return 同步的商品数
+     */
+    int flush();
+}
@@ -0,0 +1,27 @@
+package com.mars.mall.service;
+
+/**
+ * @description: 未付款订单超时关闭：下单后发送延迟消息，到期的订单攒成一批关闭并加回库存；
+ * 定时扫描数据库兜底，覆盖消息发送失败、进程重启时丢失的缓冲和上线前的老订单
+ * @author: Mars
+ * @create: 2022-04-01 10:00
+ **/
+public interface IOrderExpireService {
+
+    /**
+     * 延迟消息到期，订单放进待关闭的缓冲
+     */
+    void enqueue(Long orderNo);
+
+    /**
+     * 分批关闭缓冲中的订单
+     * @return 关闭的订单数
+     */
+    int flush();
+
+    /**
+     * 扫描数据库中已超时、仍未付款的订单，分批关闭
+     * @return 关闭的订单数
+     */
+    int sweep();
+}
@@ -4,6 +4,9 @@ import com.github.pagehelper.PageInfo;
 import com.mars.mall.vo.OrderVo;
 import com.mars.mall.vo.ResponseVo;
 
+import java.util.Collection;
+import java.util.Date;
+
 /**
  * @description:
  * @author: Mars
@@ -13,6 +16,8 @@ public interface IOrderService {
 
     ResponseVo<OrderVo> create(Integer uid,Integer shippingId);
 
+    ResponseVo<OrderVo> create(Integer uid,Integer shippingId,Long orderNo);//使用预先生成的订单号下单(异步下单)
+
     ResponseVo<PageInfo> list(Integer uid,Integer pageNum,Integer pageSize);
 
     ResponseVo<OrderVo> detail(Integer uid,Long orderNo);
@@ -21,4 +26,6 @@ public interface IOrderService {
 
     void paid(Long orderNo);//修改订单状态为已付款
 
+    int closeExpired(Collection<Long> orderNoList, Date deadline);//关闭其中deadline之前创建且仍未付款的订单，加回库存
+
 }
@@ -0,0 +1,28 @@
+package com.mars.mall.service;
+
+import com.mars.mall.pojo.OrderSubmitMessage;
+import com.mars.mall.vo.OrderTicketVo;
+import com.mars.mall.vo.ResponseVo;
+
+/**
+ * @description: 异步下单：请求只入队并返回凭证，由消费者创建订单，客户端轮询凭证获取结果
+ * @author: Mars
+ * @create: 2022-03-31 10:15
+ **/
+public interface IOrderSubmitService {
+
+    /**
+     * 提交下单请求，队列积压过多时直接拒绝
+     */
+    ResponseVo<OrderTicketVo> submit(Integer uid, Integer shippingId);
+
+    /**
+     * 查询下单结果
+     */
+    ResponseVo<OrderTicketVo> ticket(Integer uid, Long orderNo);
+
+    /**
+     * 消费者创建订单并记录结果
+     */
+    void process(OrderSubmitMessage message);
+}
@@ -0,0 +1,22 @@
+package com.mars.mall.service;
+
+import com.mars.mall.vo.ProductImportVo;
+import com.mars.mall.vo.ResponseVo;
+
+import java.io.InputStream;
+
+/**
+ * @description: 商品批量导入
+ * @author: Mars
+ * @create: 2022-03-26 10:20
+ **/
+public interface IProductImportService {
+
+    /**
+     * 流式读取导入文件，校验后分批写入商品表，带id且已存在的商品会被更新
+     * @param inputStream 文件内容，由调用方关闭
+     * @param format 文件格式：csv/json
+     * @return 导入报告
+     */
+    ResponseVo<ProductImportVo> importProducts(InputStream inputStream, String format);
+}
@@ -1,7 +1,9 @@
 package com.mars.mall.service;
 
 import com.github.pagehelper.PageInfo;
+import com.mars.mall.vo.ProductCursorPageVo;
 import com.mars.mall.vo.ProductDetailVo;
+import com.mars.mall.vo.ProductSearchPageVo;
 import com.mars.mall.vo.ResponseVo;
 
 /**
@@ -13,5 +15,17 @@ public interface IProductService {
 
     ResponseVo<PageInfo> list(Integer categoryId, Integer pageNum, Integer pageSize);
 
+    /**
+     * 游标分页的商品列表
+     * @param cursor 上一页返回的nextCursor，第一页传null或空串
+     */
+    ResponseVo<ProductCursorPageVo> listByCursor(Integer categoryId, String cursor, Integer pageSize);
+
+    /**
+     * 按名称和副标题搜索在售商品，结果按相关度排序
+     * @param categoryId 只搜索该类目及其子类目下的商品，为null时不限类目
+     */
+    ResponseVo<ProductSearchPageVo> search(String keyword, Integer categoryId, Integer pageNum, Integer pageSize);
+
     ResponseVo<ProductDetailVo> detail(Integer productId);
 }
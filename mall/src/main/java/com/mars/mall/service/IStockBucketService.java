@@ -0,0 +1,50 @@
+package com.mars.mall.service;
+
+import com.mars.mall.pojo.ProductStockBucket;
+import com.mars.mall.vo.ResponseVo;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @description: 商品库存分桶：热门商品的库存拆成多行，下单时扣减其中一行，减少行锁争抢
+ * @author: Mars
+ * @create: 2022-03-29 10:20
+ **/
+public interface IStockBucketService {
+
+    /**
+     * 把商品库存平均拆成bucketCount个桶，已分桶的商品按当前各桶之和重新拆分
+     */
+    ResponseVo<List<ProductStockBucket>> split(Integer productId, Integer bucketCount);
+
+    /**
+     * 取消分桶，各桶库存之和写回mall_product.stock
+     * @return 合并后的库存
+     */
+    ResponseVo<Integer> merge(Integer productId);
+
+    /**
+     * 在给定商品中找出已分桶的商品
+     */
+    Set<Integer> bucketedProductIds(Collection<Integer> productIds);
+
+    /**
+     * 扣减分桶商品的库存，需要在下单事务中调用，返回false时调用方应回滚
+     * @return 库存不足时返回false
+     */
+    boolean decrease(Integer productId, Integer quantity);
+
+    /**
+     * 加回分桶商品的库存，加到当前库存最少的桶
+     * @return 商品已经不分桶时返回false，调用方改为加回mall_product.stock
+     */
+    boolean increase(Integer productId, Integer quantity);
+
+    /**
+     * 把各桶库存之和同步到mall_product.stock
+     * @return 同步的商品数
+     */
+    int sync();
+}
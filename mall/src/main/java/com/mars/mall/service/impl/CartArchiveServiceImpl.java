@@ -0,0 +1,261 @@
+package com.mars.mall.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.mars.mall.cache.CartNearCache;
+import com.mars.mall.consts.MallConst;
+import com.mars.mall.dao.CartArchiveMapper;
+import com.mars.mall.pojo.CartArchive;
+import com.mars.mall.service.ICartArchiveService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @description: 购物车生命周期service层
+ * redis中 cart_access(zset) 记录每个购物车最近访问时间，cart_archived(bitmap) 标记已归档的用户
+ * 定时任务把闲置超过 mall.cart.archive.idle-days 天的购物车写入mall_cart_archive表后从redis删除，
+ * 用户再次访问购物车时从mysql恢复，redis只需要容纳活跃用户的购物车
+ * 上线归档之前就存在、之后再没访问过的购物车不在cart_access中，归档前先SCAN出这些购物车，以当前时间作为访问时间补上
+ * @author: Mars
+ * @create: 2022-03-12 10:30
+ **/
+@Slf4j
+@Service
+public class CartArchiveServiceImpl implements ICartArchiveService {
+
+    private final static String CART_ACCESS_KEY = "cart_access";
+
+    private final static String CART_ARCHIVED_KEY = "cart_archived";
+
+    //cart_前缀下还有cart_agg_、cart_access等键，只有cart_{uid}是购物车
+    private final static Pattern CART_KEY_PATTERN = Pattern.compile("cart_(\\d+)");
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private CartArchiveMapper cartArchiveMapper;
+
+    @Autowired
+    private CartNearCache cartNearCache;
+
+    @Autowired
+    private RedisScript<Long> cartTouchScript;
+
+    @Autowired
+    private RedisScript<Long> cartAccessSeedScript;
+
+    @Autowired
+    @SuppressWarnings("rawtypes")
+    private RedisScript<List> cartArchiveScript;
+
+    @Autowired
+    private RedisScript<Long> cartRestoreScript;
+
+    @Value("${mall.cart.archive.idle-days:30}")
+    private long idleDays;
+
+    @Value("${mall.cart.archive.batch-size:500}")
+    private int batchSize;
+
+    private final Gson gson = new Gson();
+
+    /**
+     * 本机最近记录过访问时间的用户，间隔内重复访问不再访问redis
+     * 间隔远小于闲置时间，这期间购物车不可能被归档
+     */
+    private final Cache<Integer, Boolean> recentlyTouched;
+
+    public CartArchiveServiceImpl(@Value("${mall.cart.archive.touch-interval-seconds:60}") long touchIntervalSeconds) {
+        this.recentlyTouched = Caffeine.newBuilder()
+                .maximumSize(100000)
+                .expireAfterWrite(touchIntervalSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @Override
+    public void touch(Integer uid) {
+        if (recentlyTouched.getIfPresent(uid) != null) {
+            return;
+        }
+        Long archived = redisTemplate.execute(cartTouchScript,
+                Arrays.asList(CART_ACCESS_KEY, CART_ARCHIVED_KEY),
+                String.valueOf(uid),
+                String.valueOf(System.currentTimeMillis()));
+        if (archived != null && archived == 1) {
+            restore(uid);
+        }
+        recentlyTouched.put(uid, Boolean.TRUE);
+    }
+
+    /**
+     * 从归档表恢复购物车，恢复成功后删除归档
+     */
+    private void restore(Integer uid) {
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(uid));
+        CartArchive cartArchive = cartArchiveMapper.selectByUserId(uid);
+        if (cartArchive != null) {
+            Map<String, String> entries = gson.fromJson(cartArchive.getCartData(),
+                    new TypeToken<Map<String, String>>(){}.getType());
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                args.add(entry.getKey());
+                args.add(entry.getValue());
+            }
+        }
+        redisTemplate.execute(cartRestoreScript,
+                Arrays.asList(String.format(MallConst.CART_REDIS_KEY_TEMPLATE, uid),
+                        String.format(MallConst.CART_AGG_REDIS_KEY_TEMPLATE, uid),
+                        CART_ARCHIVED_KEY),
+                args.toArray());
+        if (cartArchive != null) {
+            cartArchiveMapper.deleteByUserId(uid);
+        }
+        cartNearCache.invalidate(uid);
+        log.info("购物车已从归档恢复, uid={}", uid);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int archiveIdle() {
+        long seeded = seedAccess();
+        if (seeded > 0) {
+            log.info("没有访问时间的购物车已补上访问时间, count={}", seeded);
+        }
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(idleDays);
+        int archivedCount = 0;
+        while (true) {
+            Set<String> uidSet = redisTemplate.opsForZSet().rangeByScore(CART_ACCESS_KEY, 0, cutoff, 0, batchSize);
+            if (uidSet == null || uidSet.isEmpty()) {
+                break;
+            }
+            List<String> uidList = new ArrayList<>(uidSet);
+
+            //一次管道读出这一批购物车
+            List<Object> entriesList = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    for (String uid : uidList) {
+                        ops.opsForHash().entries(String.format(MallConst.CART_REDIS_KEY_TEMPLATE, Integer.valueOf(uid)));
+                    }
+                    return null;
+                }
+            });
+
+            //先写mysql，再删redis，删除前中断也不会丢购物车
+            List<CartArchive> cartArchiveList = new ArrayList<>();
+            for (int i = 0; i < uidList.size(); i++) {
+                Map<String, String> entries = (Map<String, String>) entriesList.get(i);
+                if (entries != null && !entries.isEmpty()) {
+                    CartArchive cartArchive = new CartArchive();
+                    cartArchive.setUserId(Integer.valueOf(uidList.get(i)));
+                    cartArchive.setCartData(gson.toJson(entries));
+                    cartArchiveList.add(cartArchive);
+                }
+            }
+            if (!cartArchiveList.isEmpty()) {
+                cartArchiveMapper.batchUpsert(cartArchiveList);
+            }
+
+            List<String> keys = new ArrayList<>();
+            keys.add(CART_ACCESS_KEY);
+            keys.add(CART_ARCHIVED_KEY);
+            List<String> args = new ArrayList<>();
+            args.add(String.valueOf(cutoff));
+            for (String uid : uidList) {
+                keys.add(String.format(MallConst.CART_REDIS_KEY_TEMPLATE, Integer.valueOf(uid)));
+                keys.add(String.format(MallConst.CART_AGG_REDIS_KEY_TEMPLATE, Integer.valueOf(uid)));
+                args.add(uid);
+            }
+            List<String> skipped = redisTemplate.execute(cartArchiveScript, keys, args.toArray());
+
+            //期间又被访问的购物车没有从redis删除，对应的归档作废
+            Set<Integer> skippedSet = new HashSet<>();
+            if (skipped != null) {
+                for (String uid : skipped) {
+                    skippedSet.add(Integer.valueOf(uid));
+                }
+            }
+            if (!skippedSet.isEmpty()) {
+                cartArchiveMapper.deleteByUserIdSet(skippedSet);
+            }
+            for (String uid : uidList) {
+                if (!skippedSet.contains(Integer.valueOf(uid))) {
+                    cartNearCache.invalidate(Integer.valueOf(uid));
+                }
+            }
+            archivedCount += uidList.size() - skippedSet.size();
+
+            if (uidList.size() < batchSize) {
+                break;
+            }
+        }
+        return archivedCount;
+    }
+
+    /**
+     * SCAN出redis中所有的购物车，没有访问时间的以当前时间补上，闲置idle-days天后被归档
+     * @return 补上访问时间的购物车数
+     */
+    private long seedAccess() {
+        String now = String.valueOf(System.currentTimeMillis());
+        return redisTemplate.execute((RedisCallback<Long>) connection -> {
+            long seeded = 0;
+            List<String> args = new ArrayList<>();
+            args.add(now);
+            try (Cursor<byte[]> cursor = connection.scan(ScanOptions.scanOptions()
+                    .match("cart_*").count(batchSize).build())) {
+                while (cursor.hasNext()) {
+                    String key = new String(cursor.next(), StandardCharsets.UTF_8);
+                    Matcher matcher = CART_KEY_PATTERN.matcher(key);
+                    if (!matcher.matches()) {
+                        continue;
+                    }
+                    args.add(matcher.group(1));
+                    if (args.size() > batchSize) {
+                        seeded += seedAccess(args);
+                        args.subList(1, args.size()).clear();
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("补充购物车访问时间时关闭scan游标失败", e);
+            }
+            if (args.size() > 1) {
+                seeded += seedAccess(args);
+            }
+            return seeded;
+        });
+    }
+
+    private long seedAccess(List<String> args) {
+        Long added = redisTemplate.execute(cartAccessSeedScript,
+                Collections.singletonList(CART_ACCESS_KEY), args.toArray());
+        return added == null ? 0 : added;
+    }
+}
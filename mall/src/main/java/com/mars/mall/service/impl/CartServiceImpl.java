@@ -1,27 +1,49 @@
 package com.mars.mall.service.impl;
 
-import com.google.gson.Gson;
-import com.mars.mall.dao.ProductMapper;
+import com.mars.mall.cache.CartNearCache;
+import com.mars.mall.cache.ProductCache;
+import com.mars.mall.cache.ProductStockCache;
+import com.mars.mall.codec.CartCodec;
+import com.mars.mall.consts.MallConst;
 import com.mars.mall.enums.ProductStatusEnum;
 import com.mars.mall.enums.ResponseEnum;
 import com.mars.mall.form.CartAddForm;
+import com.mars.mall.form.CartBatchAddForm;
+import com.mars.mall.form.CartBatchAddItemForm;
 import com.mars.mall.form.CartUpdateForm;
 import com.mars.mall.pojo.Cart;
 import com.mars.mall.pojo.Product;
+import com.mars.mall.service.ICartArchiveService;
 import com.mars.mall.service.ICartService;
+import com.mars.mall.vo.CartAddFailVo;
+import com.mars.mall.vo.CartBatchAddVo;
+import com.mars.mall.vo.CartDeltaVo;
 import com.mars.mall.vo.CartProductVo;
 import com.mars.mall.vo.CartVo;
 import com.mars.mall.vo.ResponseVo;
-import com.mysql.cj.util.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
 import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * @description: 购物车模块service层
@@ -31,15 +53,53 @@ import java.util.Map;
 @Service
 public class CartServiceImpl implements ICartService {
 
-    private final static String CART_REDIS_KEY_TEMPLATE = "cart_%d";
+    private final static String AGG_QUANTITY = "quantity";//购物车商品总数量
+
+    private final static String AGG_SELECTED = "selected";//选中的条目数
+
+    private final static String AGG_LINES = "lines";//条目数
+
+    private final static String AGG_SELECTED_PRICE = "selectedPrice";//选中商品总价，单位:分
+
+    private final static String AGG_PRICE_PREFIX = "price_";//price_{商品id}：选中条目计入总价时的单价(分)，单价变化后按它扣减
 
     @Autowired
-    private ProductMapper productMapper;
+    private ProductCache productCache;//购物车展示和加购校验读商品缓存，下单时再从数据库校验库存
+
+    @Autowired
+    private ProductStockCache productStockCache;//商品缓存中的库存可能是旧的，展示和加购校验的库存读redis库存读模型
 
     @Autowired
     private StringRedisTemplate redisTemplate; //提供了一系列操作Redis的方法
 
-    private Gson gson = new Gson();//提供java对象序列化和反序列化功能
+    @Autowired
+    @SuppressWarnings("rawtypes")
+    private RedisScript<List> cartUpsertScript;//购物车条目原子新增/累加数量的lua脚本
+
+    @Autowired
+    private ICartArchiveService cartArchiveService;//记录购物车访问时间，已归档的购物车在访问时恢复
+
+    @Autowired
+    private CartNearCache cartNearCache;//购物车近端缓存，由配置 mall.cart.near-cache.enabled 开启
+
+    @Autowired
+    private CartCodec cartCodec;//购物车条目的编解码方式，由配置 mall.cart.codec 决定
+
+    @Autowired
+    private RedisScript<Long> cartMigrateScript;//老格式条目懒迁移的lua脚本
+
+    @Autowired
+    private RedisScript<String> cartUpdateScript;//购物车条目原子修改的lua脚本
+
+    @Autowired
+    private RedisScript<String> cartDeleteScript;//购物车条目原子删除的lua脚本
+
+    @Autowired
+    private RedisScript<Long> cartDeleteBatchScript;//购物车多个条目一次删除的lua脚本
+
+    @Autowired
+    @SuppressWarnings("rawtypes")
+    private RedisScript<List> cartRebuildScript;//重算合计值(可顺便全选/全不选)的lua脚本
 
     /**
      * 向购物车里添加一件商品编号为 form中的属性id的商品
@@ -49,51 +109,169 @@ public class CartServiceImpl implements ICartService {
      */
     @Override
     public ResponseVo<CartVo> add(Integer uid, CartAddForm form) {
+        ResponseVo<CartDeltaVo> responseVo = addForDelta(uid, form);
+        return isSuccess(responseVo) ? list(uid) : errorOf(responseVo);
+    }
+
+    /**
+     * 添加商品，只返回变化的商品和合计值
+     */
+    @Override
+    public ResponseVo<CartDeltaVo> addForDelta(Integer uid, CartAddForm form) {
+        cartArchiveService.touch(uid);
         Integer quantity = 1;//默认每次添加进购物车一件商品
 
-        Product product = productMapper.selectByPrimaryKey(form.getProductId());
+        Product product = productCache.get(form.getProductId());
+        if (product != null) {
+            productStockCache.fill(Collections.singletonList(product));
+        }
+
+        //商品是否存在、是否正常在售、库存是否充足
+        ResponseEnum error = checkProduct(product, quantity);
+        if (error != null){
+            return ResponseVo.error(error);
+        }
+
+        //写入到redis
+        //key:不同账户的购物车cart_1、cart_2... value:购物车中的map结构(key:商品id value:编码后的商品数据，见CartCodec)
+        /**
+         * 使用redis中的哈希表来存储购物车中的商品，使得查询存取购物车中某件商品更为迅速
+         * 第一个String是redis中的键，其对应的值是hash结构
+         * 所以第二个String是hash结构中的键(商品id)，最后一个String是hash结构中的值(CartCodec编码后的字符串)
+         */
+        List<String> values = upsert(uid, Collections.singletonList(upsertArgs(product, quantity, form.getSelected())));
+        if (values.get(0).isEmpty()) {
+            //累加后超过库存或单件商品的数量上限
+            return ResponseVo.error(ResponseEnum.PRODUCT_STOCK_ERROR);
+        }
+        Cart cart = cartCodec.decode(product.getId(), values.get(0));//脚本返回修改后的购物车条目
+
+        return delta(uid, product.getId(), cart, product);
+    }
+
+    /**
+     * 批量添加商品：一次 in 查询校验所有商品，一次lua脚本写入所有条目，校验不通过的商品单独返回失败原因
+     * @param uid 购物车编号
+     * @param form 要添加的商品及数量，同一商品出现多次时数量合并
+     * @return 添加成功的商品、失败的商品和合计值
+     */
+    @Override
+    public ResponseVo<CartBatchAddVo> addBatch(Integer uid, CartBatchAddForm form) {
+        cartArchiveService.touch(uid);
+
+        //合并重复的商品，保持请求中的顺序
+        Map<Integer, CartBatchAddItemForm> itemMap = new LinkedHashMap<>();
+        for (CartBatchAddItemForm item : form.getItems()) {
+            CartBatchAddItemForm merged = itemMap.get(item.getProductId());
+            if (merged == null) {
+                CartBatchAddItemForm copy = new CartBatchAddItemForm();
+                copy.setProductId(item.getProductId());
+                copy.setQuantity(item.getQuantity());
+                copy.setSelected(item.getSelected());
+                itemMap.put(item.getProductId(), copy);
+            } else {
+                //超过上限的数量在校验时会失败，这里只需要防止相加溢出
+                merged.setQuantity((int) Math.min((long) merged.getQuantity() + item.getQuantity(), Integer.MAX_VALUE));
+            }
+        }
+
+        List<Product> productList = productCache.getAll(itemMap.keySet());
+        productStockCache.fill(productList);
+        Map<Integer, Product> productMap = new HashMap<>();
+        for (Product product : productList) {
+            productMap.put(product.getId(), product);
+        }
+
+        List<CartAddFailVo> failList = new ArrayList<>();
+        List<Product> addProductList = new ArrayList<>();
+        List<String[]> argsList = new ArrayList<>();
+        for (CartBatchAddItemForm item : itemMap.values()) {
+            Product product = productMap.get(item.getProductId());
+            ResponseEnum error = checkProduct(product, item.getQuantity());
+            if (error != null) {
+                failList.add(new CartAddFailVo(item.getProductId(), error));
+                continue;
+            }
+            addProductList.add(product);
+            argsList.add(upsertArgs(product, item.getQuantity(), item.getSelected()));
+        }
+
+        List<CartProductVo> cartProductVoList = new ArrayList<>();
+        if (!argsList.isEmpty()) {
+            List<String> values = upsert(uid, argsList);
+            for (int i = 0; i < addProductList.size(); i++) {
+                Product product = addProductList.get(i);
+                if (values.get(i).isEmpty()) {
+                    failList.add(new CartAddFailVo(product.getId(), ResponseEnum.PRODUCT_STOCK_ERROR));
+                    continue;
+                }
+                cartProductVoList.add(buildCartProductVo(cartCodec.decode(product.getId(), values.get(i)), product));
+            }
+        }
+
+        CartDeltaVo totals = totalsOf(readAggregate(uid));
+        CartBatchAddVo cartBatchAddVo = new CartBatchAddVo();
+        cartBatchAddVo.setCartProductVoList(cartProductVoList);
+        cartBatchAddVo.setFailList(failList);
+        cartBatchAddVo.setSelectedAll(totals.getSelectedAll());
+        cartBatchAddVo.setCartTotalPrice(totals.getCartTotalPrice());
+        cartBatchAddVo.setCartTotalQuantity(totals.getCartTotalQuantity());
+        return ResponseVo.success(cartBatchAddVo);
+    }
 
+    /**
+     * 校验商品能否加入购物车
+     * @return 不能加入的原因，可以加入时返回null
+     */
+    private ResponseEnum checkProduct(Product product, Integer quantity) {
         //商品是否存在
         if (product == null){
-            return ResponseVo.error(ResponseEnum.PRODUCT_NOT_EXIST);
+            return ResponseEnum.PRODUCT_NOT_EXIST;
         }
         //商品是否正常在售
         if (!product.getStatus().equals(ProductStatusEnum.ON_SALE.getCode())){
-            return ResponseVo.error(ResponseEnum.PRODUCT_OFF_SALE_OR_DELETE);
+            return ResponseEnum.PRODUCT_OFF_SALE_OR_DELETE;
         }
         //商品库存是否充足
-        if (product.getStock() <= 0){
-            return ResponseVo.error(ResponseEnum.PRODUCT_STOCK_ERROR);
+        if (quantity > maxQuantityOf(product)){
+            return ResponseEnum.PRODUCT_STOCK_ERROR;
         }
+        return null;
+    }
 
-        //写入到redis
-        //key:不同账户的购物车cart_1、cart_2... value:购物车中的map结构(key:商品id value:商品数据json)
-        /**
-         * 使用redis中的哈希表来存储购物车中的商品，使得查询存取购物车中某件商品更为迅速
-         * HashOperations<String, String, String>:第一个String是redis中的键()，其对应的值是hash结构
-         * 所以第二个String是hash结构中的键(SDS)，最后一个String是hash结构中的值(Json字符串)
-         *
-         * format(string,Object...args),这里可以实现uid代替CART_REDIS_KEY_TEMPLATE中的"%d"
-         *    toJson  将一个Java对象转化为Json字符串
-         */
-        HashOperations<String, String, String> opsForHash = redisTemplate.opsForHash();
-        //设定购物车键的名字，redis中存储了很多个账户的购物车，所以会有多个购物车键(以uid结尾,形如cart_1)
-        String redisKey = String.format(CART_REDIS_KEY_TEMPLATE, uid);
-
-        Cart cart;//作为辅助的购物车内商品对象
-        String value = opsForHash.get(redisKey, String.valueOf(product.getId()));
-        if (StringUtils.isNullOrEmpty(value)){
-            //没有该商品，新增
-            cart = new Cart(product.getId(),quantity,form.getSelected());
-        } else {
-            //购物车中已经有该商品，数量+1
-            cart = gson.fromJson(value,Cart.class);//将json字符串反序列化为cart对象
-            cart.setQuantity(cart.getQuantity() + quantity);//将购物车中已有商品数量+1
-        }
-        //将指定商品(带商品id作为map键索引)存入指定的购物车(键)中
-        opsForHash.put(redisKey, String.valueOf(product.getId()), gson.toJson(cart));
+    //购物车中这件商品最多能放的数量：不超过库存，也不超过单件商品的数量上限
+    private int maxQuantityOf(Product product) {
+        return Math.min(product.getStock(), MallConst.CART_MAX_QUANTITY);
+    }
 
-        return list(uid);
+    //一件商品在新增脚本中的参数：商品id、增加的数量、新增条目时的选中状态、商品单价(分)、条目允许的最大数量
+    private String[] upsertArgs(Product product, Integer quantity, Boolean selected) {
+        return new String[]{
+                String.valueOf(product.getId()),
+                String.valueOf(quantity),
+                String.valueOf(selected),
+                String.valueOf(toCent(product.getPrice())),
+                String.valueOf(maxQuantityOf(product))
+        };
+    }
+
+    /**
+     * 读取、累加数量、写回以及合计值的更新都在lua脚本里由redis一次执行完，
+     * 多件商品也只有一次网络往返，多个页面同时加购也不会丢失数量；累加后的数量超过上限的商品不修改
+     * @return 每件商品修改后的条目(编码后)，顺序和参数一致，超过上限的商品为空串
+     */
+    @SuppressWarnings("unchecked")
+    private List<String> upsert(Integer uid, List<String[]> argsList) {
+        String redisKey = String.format(MallConst.CART_REDIS_KEY_TEMPLATE, uid);
+        String aggKey = String.format(MallConst.CART_AGG_REDIS_KEY_TEMPLATE, uid);
+        List<String> args = new ArrayList<>();
+        args.add(cartCodec.name());
+        for (String[] itemArgs : argsList) {
+            args.addAll(Arrays.asList(itemArgs));
+        }
+        List<String> values = redisTemplate.execute(cartUpsertScript, Arrays.asList(redisKey, aggKey), args.toArray());
+        cartNearCache.invalidate(uid);
+        return values;
     }
 
     /**
@@ -103,9 +281,18 @@ public class CartServiceImpl implements ICartService {
      */
     @Override
     public ResponseVo<CartVo> list(Integer uid) {
-        HashOperations<String, String, String> opsForHash = redisTemplate.opsForHash();
-        String redisKey = String.format(CART_REDIS_KEY_TEMPLATE, uid);
-        Map<String, String> entries = opsForHash.entries(redisKey);//购物车编号为"cart_uid"的购物车存放的商品map集合(键为商品id，值为购物车商品对象cart)
+        //记录访问时间，购物车已被归档时先从mysql恢复
+        cartArchiveService.touch(uid);
+        return ResponseVo.success(buildCartVo(uid));
+    }
+
+    /**
+     * 完整计算一遍购物车
+     * @param uid 不同账户的购物车编号
+     * @return
+     */
+    private CartVo buildCartVo(Integer uid) {
+        Map<String, String> entries = entriesOf(uid);//购物车编号为"cart_uid"的购物车存放的商品map集合(键为商品id，值为购物车商品对象cart)
 
         CartVo cartVo = new CartVo();//购物车vo对象,包含下面四个属性
         boolean selectAll = true;//默认全选
@@ -113,25 +300,26 @@ public class CartServiceImpl implements ICartService {
         BigDecimal cartTotalPrice = BigDecimal.ZERO;//购物车所有商品总价
         List<CartProductVo> cartProductVoList = new ArrayList<>();//购物车vo对象中存放多个商品信息的列表属性
 
-        for (Map.Entry<String,String> entry : entries.entrySet()){
-            Integer productId = Integer.valueOf(entry.getKey());
-            Cart cart = gson.fromJson(entry.getValue(), Cart.class);
+        //先把购物车中所有商品反序列化出来，收集商品id，再用一次 in 查询批量查出商品，避免每个条目查一次数据库
+        List<Cart> cartList = new ArrayList<>();
+        Set<Integer> productIdSet = new HashSet<>();
+        for (Cart cart : decodeEntries(uid, entries)){
+            cartList.add(cart);
+            productIdSet.add(cart.getProductId());
+        }
+        Map<Integer, Product> productMap = new HashMap<>();
+        if (!productIdSet.isEmpty()) {
+            List<Product> productList = productCache.getAll(productIdSet);
+            productStockCache.fill(productList);
+            for (Product product : productList) {
+                productMap.put(product.getId(), product);
+            }
+        }
 
-            //TODO 需要优化，使用mysql里的in
-            Product product = productMapper.selectByPrimaryKey(productId);
+        for (Cart cart : cartList){
+            Product product = productMap.get(cart.getProductId());
             if (product != null) {
-                CartProductVo cartProductVo = new CartProductVo(
-                        productId,
-                        cart.getQuantity(),
-                        product.getName(),
-                        product.getSubtitle(),
-                        product.getMainImage(),
-                        product.getPrice(),
-                        product.getStatus(),
-                        product.getPrice().multiply(BigDecimal.valueOf(cart.getQuantity())),
-                        product.getStock(),
-                        cart.getProductSelected()
-                );
+                CartProductVo cartProductVo = buildCartProductVo(cart, product);
                 cartProductVoList.add(cartProductVo);
 
                 if (!cart.getProductSelected()) {
@@ -151,7 +339,7 @@ public class CartServiceImpl implements ICartService {
         cartVo.setCartTotalQuantity(cartTotalQuantity);
         cartVo.setCartTotalPrice(cartTotalPrice);
 
-        return ResponseVo.success(cartVo);
+        return cartVo;
     }
 
     /**
@@ -163,26 +351,46 @@ public class CartServiceImpl implements ICartService {
      */
     @Override
     public ResponseVo<CartVo> update(Integer uid, Integer productId, CartUpdateForm form) {
-        HashOperations<String, String, String> opsForHash = redisTemplate.opsForHash();
-        String redisKey = String.format(CART_REDIS_KEY_TEMPLATE, uid);
+        ResponseVo<CartDeltaVo> responseVo = updateForDelta(uid, productId, form);
+        return isSuccess(responseVo) ? list(uid) : errorOf(responseVo);
+    }
 
-        String value = opsForHash.get(redisKey, String.valueOf(productId));
-        if (StringUtils.isNullOrEmpty(value)){
-            //没有该商品，报错
-            return ResponseVo.error(ResponseEnum.CART_PRODUCT_NOT_EXIST);
-        }
-        //购物车中已经有该商品，修改内容
-        Cart cart = gson.fromJson(value,Cart.class);//将json字符串反序列化为cart对象
-        if (form.getQuantity() != null && form.getQuantity() >= 0) {
-            cart.setQuantity(form.getQuantity());
+    /**
+     * 更新购物车商品，只返回变化的商品和合计值
+     */
+    @Override
+    public ResponseVo<CartDeltaVo> updateForDelta(Integer uid, Integer productId, CartUpdateForm form) {
+        cartArchiveService.touch(uid);
+        String redisKey = String.format(MallConst.CART_REDIS_KEY_TEMPLATE, uid);
+        String aggKey = String.format(MallConst.CART_AGG_REDIS_KEY_TEMPLATE, uid);
+        Product product = productCache.get(productId);
+        if (product != null) {
+            productStockCache.fill(Collections.singletonList(product));
         }
-        if (form.getSelected() != null) {
-            cart.setProductSelected(form.getSelected());
+
+        //修改后的数量不能超过库存和单件商品的数量上限
+        if (product != null && form.getQuantity() != null && form.getQuantity() > maxQuantityOf(product)) {
+            return ResponseVo.error(ResponseEnum.PRODUCT_STOCK_ERROR);
         }
 
-        opsForHash.put(redisKey,String.valueOf(productId),gson.toJson(cart));
+        //修改条目和更新合计值在lua脚本中原子完成，空串表示该属性不修改
+        String quantity = form.getQuantity() != null && form.getQuantity() >= 0 ? String.valueOf(form.getQuantity()) : "";
+        String selected = form.getSelected() != null ? String.valueOf(form.getSelected()) : "";
+        String value = redisTemplate.execute(cartUpdateScript,
+                Arrays.asList(redisKey, aggKey),
+                String.valueOf(productId),
+                quantity,
+                selected,
+                String.valueOf(priceCentOf(product)),
+                cartCodec.name());
+        if (value == null){
+            //没有该商品，报错
+            return ResponseVo.error(ResponseEnum.CART_PRODUCT_NOT_EXIST);
+        }
+        Cart cart = cartCodec.decode(productId, value);
+        cartNearCache.invalidate(uid);
 
-        return list(uid);
+        return delta(uid, productId, cart, product);
     }
 
     /**
@@ -193,19 +401,56 @@ public class CartServiceImpl implements ICartService {
      */
     @Override
     public ResponseVo<CartVo> delete(Integer uid, Integer productId) {
-        HashOperations<String, String, String> opsForHash = redisTemplate.opsForHash();
-        String redisKey = String.format(CART_REDIS_KEY_TEMPLATE, uid);
+        ResponseVo<CartDeltaVo> responseVo = deleteForDelta(uid, productId);
+        return isSuccess(responseVo) ? list(uid) : errorOf(responseVo);
+    }
 
-        String value = opsForHash.get(redisKey, String.valueOf(productId));
-        if (StringUtils.isNullOrEmpty(value)){
+    /**
+     * 删除购物车商品，只返回被删除的商品id和合计值
+     */
+    @Override
+    public ResponseVo<CartDeltaVo> deleteForDelta(Integer uid, Integer productId) {
+        cartArchiveService.touch(uid);
+        String redisKey = String.format(MallConst.CART_REDIS_KEY_TEMPLATE, uid);
+        String aggKey = String.format(MallConst.CART_AGG_REDIS_KEY_TEMPLATE, uid);
+
+        //删除redis中的某个hash键中的键，即某个购物车中的某个商品，合计值在同一个脚本中按加入总价时的单价扣减
+        String value = redisTemplate.execute(cartDeleteScript,
+                Arrays.asList(redisKey, aggKey),
+                String.valueOf(productId));
+        if (value == null){
             //没有该商品，报错
             return ResponseVo.error(ResponseEnum.CART_PRODUCT_NOT_EXIST);
         }
+        cartNearCache.invalidate(uid);
 
-        //删除redis中的某个hash键中的键，即某个购物车中的某个商品
-        opsForHash.delete(redisKey,String.valueOf(productId));
+        return delta(uid, productId, null, null);
+    }
 
-        return list(uid);
+    /**
+     * 一次删除购物车中的多件商品，一条HDEL删除全部条目，合计值在同一个脚本中扣减
+     * 不会重新渲染购物车，下单时不再为每件商品查一遍数据库
+     * @param uid 购物车编号
+     * @param productList 要删除的商品
+     * @return 实际删除的条目数
+     */
+    @Override
+    public long deleteBatch(Integer uid, Collection<Product> productList) {
+        if (productList.isEmpty()) {
+            return 0;
+        }
+        List<String> args = new ArrayList<>();
+        for (Product product : productList) {
+            args.add(String.valueOf(product.getId()));
+        }
+        String redisKey = String.format(MallConst.CART_REDIS_KEY_TEMPLATE, uid);
+        String aggKey = String.format(MallConst.CART_AGG_REDIS_KEY_TEMPLATE, uid);
+        Long removed = redisTemplate.execute(cartDeleteBatchScript, Arrays.asList(redisKey, aggKey), args.toArray());
+        if (removed == null || removed == 0) {
+            return 0;
+        }
+        cartNearCache.invalidate(uid);
+        return removed;
     }
 
     /**
@@ -215,17 +460,20 @@ public class CartServiceImpl implements ICartService {
      */
     @Override
     public ResponseVo<CartVo> selectAll(Integer uid) {
-        HashOperations<String, String, String> opsForHash = redisTemplate.opsForHash();
-        String redisKey = String.format(CART_REDIS_KEY_TEMPLATE, uid);
-
-        for (Cart cart : listForCart(uid)) {
-            cart.setProductSelected(true);
-            opsForHash.put(redisKey,String.valueOf(cart.getProductId()),gson.toJson(cart));
-        }
-
+        selectAllForDelta(uid);
         return list(uid);
     }
 
+    /**
+     * 全选中，只返回合计值
+     */
+    @Override
+    public ResponseVo<CartDeltaVo> selectAllForDelta(Integer uid) {
+        cartArchiveService.touch(uid);
+        //在lua脚本中一次改写所有条目的选中状态，并按新的状态重算合计值
+        return ResponseVo.success(totalsOf(rebuildAggregate(uid, true)));
+    }
+
     /**
      * 全不选中
      * @param uid 购物车编号
@@ -233,17 +481,19 @@ public class CartServiceImpl implements ICartService {
      */
     @Override
     public ResponseVo<CartVo> unSelectAll(Integer uid) {
-        HashOperations<String, String, String> opsForHash = redisTemplate.opsForHash();
-        String redisKey = String.format(CART_REDIS_KEY_TEMPLATE, uid);
-
-        for (Cart cart : listForCart(uid)) {
-            cart.setProductSelected(false);
-            opsForHash.put(redisKey,String.valueOf(cart.getProductId()),gson.toJson(cart));
-        }
-
+        unSelectAllForDelta(uid);
         return list(uid);
     }
 
+    /**
+     * 全不选中，只返回合计值
+     */
+    @Override
+    public ResponseVo<CartDeltaVo> unSelectAllForDelta(Integer uid) {
+        cartArchiveService.touch(uid);
+        return ResponseVo.success(totalsOf(rebuildAggregate(uid, false)));
+    }
+
     /**
      * 返回购物车全部商品数量总和 (小接口，只在页面返回Integer的data)
      * @param uid 购物车编号
@@ -251,29 +501,245 @@ public class CartServiceImpl implements ICartService {
      */
     @Override
     public ResponseVo<Integer> sum(Integer uid) {
-        //利用lambda+stream将商品列表转换成流，从中读取每个商品的数量并累加起来返回
-        Integer sum = listForCart(uid).stream()
-                .map(Cart::getQuantity)
-                .reduce(0, Integer::sum);//reduce从0开始累加每个cart的quantity
-        return ResponseVo.success(sum);
+        cartArchiveService.touch(uid);
+        //直接读取维护好的合计值，不需要把购物车每个条目都解码一遍
+        long[] aggregate = readAggregate(uid);
+        return ResponseVo.success((int) aggregate[0]);
     }
 
     /**
-     * 供全选和全不选方法使用的方法，用于查询出包含购物车全部商品的列表
-     * 也供订单模块create方法使用
+     * 按购物车hash重新计算合计值，合计值出现偏差时用来修复
+     * @param uid 购物车编号
+     */
+    @Override
+    public void repairAggregate(Integer uid) {
+        rebuildAggregate(uid, null);
+    }
+
+    /**
+     * 用于查询出包含购物车全部商品的列表，供订单模块create方法使用
+     * 下单必须按redis中最新的购物车计算，不读近端缓存
      * @param uid
      * @return
      */
     @Override
     public List<Cart> listForCart(Integer uid){
+        cartArchiveService.touch(uid);
         HashOperations<String, String, String> opsForHash = redisTemplate.opsForHash();
-        String redisKey = String.format(CART_REDIS_KEY_TEMPLATE, uid);
-        Map<String, String> entries = opsForHash.entries(redisKey);
+        return decodeEntries(uid, opsForHash.entries(String.format(MallConst.CART_REDIS_KEY_TEMPLATE, uid)));
+    }
 
+    /**
+     * 读取购物车hash的全部条目，开启近端缓存时优先读本机缓存
+     * @param uid 购物车编号
+     * @return 购物车hash的全部键值对
+     */
+    private Map<String, String> entriesOf(Integer uid) {
+        String redisKey = String.format(MallConst.CART_REDIS_KEY_TEMPLATE, uid);
+        HashOperations<String, String, String> opsForHash = redisTemplate.opsForHash();
+        return cartNearCache.get(uid, () -> opsForHash.entries(redisKey));
+    }
+
+    /**
+     * 解码购物车hash中的所有条目，不是当前编码格式的老条目顺便迁移成当前格式
+     * @param uid 购物车编号
+     * @param entries 购物车hash的全部键值对
+     * @return 购物车条目列表
+     */
+    private List<Cart> decodeEntries(Integer uid, Map<String, String> entries) {
         List<Cart> cartList = new ArrayList<>();
+        List<String> migrateArgs = new ArrayList<>();//每三个一组：商品id、旧值、新值
         for (Map.Entry<String, String> entry : entries.entrySet()) {
-            cartList.add(gson.fromJson(entry.getValue(),Cart.class));
+            Cart cart = cartCodec.decode(Integer.valueOf(entry.getKey()), entry.getValue());
+            cartList.add(cart);
+            if (cartCodec.needMigrate(entry.getValue())) {
+                migrateArgs.add(entry.getKey());
+                migrateArgs.add(entry.getValue());
+                migrateArgs.add(cartCodec.encode(cart));
+            }
+        }
+        if (!migrateArgs.isEmpty()) {
+            redisTemplate.execute(cartMigrateScript,
+                    Collections.singletonList(String.format(MallConst.CART_REDIS_KEY_TEMPLATE, uid)),
+                    migrateArgs.toArray());
+            cartNearCache.invalidate(uid);
         }
         return cartList;
     }
+
+    /**
+     * 构造购物车内一样商品的vo对象
+     * @param cart 购物车商品
+     * @param product 商品
+     * @return
+     */
+    private CartProductVo buildCartProductVo(Cart cart, Product product) {
+        return new CartProductVo(
+                product.getId(),
+                cart.getQuantity(),
+                product.getName(),
+                product.getSubtitle(),
+                product.getMainImage(),
+                product.getPrice(),
+                product.getStatus(),
+                product.getPrice().multiply(BigDecimal.valueOf(cart.getQuantity())),
+                product.getStock(),
+                cart.getProductSelected()
+        );
+    }
+
+    /**
+     * 构造增量返回结果：变化的商品 + 合计值
+     */
+    private ResponseVo<CartDeltaVo> delta(Integer uid, Integer productId, Cart cart, Product product) {
+        CartDeltaVo cartDeltaVo = totalsOf(readAggregate(uid));
+        cartDeltaVo.setProductId(productId);
+        if (cart != null && product != null) {
+            cartDeltaVo.setCartProductVo(buildCartProductVo(cart, product));
+        }
+        return ResponseVo.success(cartDeltaVo);
+    }
+
+    /**
+     * 读取购物车合计值，一次管道同时读出条目数和合计值
+     * 合计值缺失、各项对不上(老数据、合计值出现偏差)或者选中商品的单价已经变化时，按购物车hash和当前单价重算，
+     * 保证返回的合计值和完整计算购物车(list)的结果一致
+     * @param uid 购物车编号
+     * @return {商品总数量, 选中条目数, 条目数, 选中商品总价(分)}
+     */
+    @SuppressWarnings("unchecked")
+    private long[] readAggregate(Integer uid) {
+        String redisKey = String.format(MallConst.CART_REDIS_KEY_TEMPLATE, uid);
+        String aggKey = String.format(MallConst.CART_AGG_REDIS_KEY_TEMPLATE, uid);
+        List<Object> results = pipelined(operations -> {
+            operations.opsForHash().size(redisKey);
+            operations.opsForHash().entries(aggKey);
+        });
+        Long lines = (Long) results.get(0);
+        Map<String, String> aggregate = (Map<String, String>) results.get(1);
+
+        if (lines == null || lines == 0) {
+            return new long[4];
+        }
+        if (!String.valueOf(lines).equals(aggregate.get(AGG_LINES))) {
+            return rebuildAggregate(uid, null);
+        }
+        long[] result = new long[]{
+                Long.parseLong(aggregate.getOrDefault(AGG_QUANTITY, "0")),
+                Long.parseLong(aggregate.getOrDefault(AGG_SELECTED, "0")),
+                lines,
+                Long.parseLong(aggregate.getOrDefault(AGG_SELECTED_PRICE, "0"))
+        };
+        Map<Integer, Long> priceMap = new HashMap<>();
+        for (Map.Entry<String, String> entry : aggregate.entrySet()) {
+            if (entry.getKey().startsWith(AGG_PRICE_PREFIX)) {
+                priceMap.put(Integer.valueOf(entry.getKey().substring(AGG_PRICE_PREFIX.length())),
+                        Long.parseLong(entry.getValue()));
+            }
+        }
+        if (result[0] < 0 || result[1] < 0 || result[1] > lines || result[3] < 0
+                || priceMap.size() != result[1] || !isCurrentPrice(priceMap)) {
+            return rebuildAggregate(uid, null);
+        }
+        return result;
+    }
+
+    /**
+     * 选中商品记下的单价是否都等于商品当前的单价，商品缓存是本机内存，比较的开销很小
+     * @param priceMap 商品id -> 计入总价时的单价(分)
+     */
+    private boolean isCurrentPrice(Map<Integer, Long> priceMap) {
+        if (priceMap.isEmpty()) {
+            return true;
+        }
+        Map<Integer, Long> currentMap = new HashMap<>();
+        for (Product product : productCache.getAll(priceMap.keySet())) {
+            currentMap.put(product.getId(), priceCentOf(product));
+        }
+        for (Map.Entry<Integer, Long> entry : priceMap.entrySet()) {
+            //商品已不存在时按0计，和重算时一致
+            if (!entry.getValue().equals(currentMap.getOrDefault(entry.getKey(), 0L))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 在lua脚本中按购物车hash重新计算合计值，可以顺便把所有条目设为全选/全不选
+     * 选中商品总价需要单价，先用一次 in 查询查出购物车中所有商品的单价传给脚本
+     * @param uid 购物车编号
+     * @param selected 要设置的选中状态，null表示不修改
+     * @return {商品总数量, 选中条目数, 条目数, 选中商品总价(分)}
+     */
+    @SuppressWarnings("unchecked")
+    private long[] rebuildAggregate(Integer uid, Boolean selected) {
+        String redisKey = String.format(MallConst.CART_REDIS_KEY_TEMPLATE, uid);
+        String aggKey = String.format(MallConst.CART_AGG_REDIS_KEY_TEMPLATE, uid);
+        HashOperations<String, String, String> opsForHash = redisTemplate.opsForHash();
+        Set<Integer> productIdSet = opsForHash.keys(redisKey).stream()
+                .map(Integer::valueOf)
+                .collect(Collectors.toSet());
+
+        List<String> args = new ArrayList<>();
+        args.add(selected == null ? "" : String.valueOf(selected));
+        args.add(cartCodec.name());
+        if (!productIdSet.isEmpty()) {
+            for (Product product : productCache.getAll(productIdSet)) {
+                args.add(String.valueOf(product.getId()));
+                args.add(String.valueOf(priceCentOf(product)));
+            }
+        }
+        List<Long> result = redisTemplate.execute(cartRebuildScript, Arrays.asList(redisKey, aggKey), args.toArray());
+        if (selected != null) {
+            cartNearCache.invalidate(uid);
+        }
+        return new long[]{result.get(0), result.get(1), result.get(2), result.get(3)};
+    }
+
+    /**
+     * 把合计值转换成只包含合计值的增量vo
+     * @param aggregate {商品总数量, 选中条目数, 条目数, 选中商品总价(分)}
+     */
+    private CartDeltaVo totalsOf(long[] aggregate) {
+        CartDeltaVo cartDeltaVo = new CartDeltaVo();
+        cartDeltaVo.setSelectedAll(aggregate[1] == aggregate[2]);
+        cartDeltaVo.setCartTotalQuantity((int) aggregate[0]);
+        cartDeltaVo.setCartTotalPrice(BigDecimal.valueOf(aggregate[3], 2));
+        return cartDeltaVo;
+    }
+
+    /**
+     * 用管道执行多条redis命令，只产生一次网络往返
+     * @param commands 要执行的命令，在管道中执行时命令的返回值都是null，结果统一从返回的列表中取
+     * @return 每条命令的执行结果
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object> pipelined(Consumer<RedisOperations<String, String>> commands) {
+        return redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                commands.accept((RedisOperations<String, String>) operations);
+                return null;
+            }
+        });
+    }
+
+    //商品单价(分)，商品不存在时按0计
+    private long priceCentOf(Product product) {
+        return product == null ? 0 : toCent(product.getPrice());
+    }
+
+    private long toCent(BigDecimal amount) {
+        return amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    private boolean isSuccess(ResponseVo<?> responseVo) {
+        return ResponseEnum.SUCCESS.getCode().equals(responseVo.getStatus());
+    }
+
+    //把增量模式的错误结果原样转换成完整模式的返回值
+    private <T> ResponseVo<T> errorOf(ResponseVo<?> responseVo) {
+        return new ResponseVo<>(responseVo.getStatus(), responseVo.getMsg());
+    }
 }
@@ -1,20 +1,19 @@
 package com.mars.mall.service.impl;
 
-import com.mars.mall.consts.MallConst;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mars.mall.cache.CategorySnapshot;
 import com.mars.mall.dao.CategoryMapper;
 import com.mars.mall.pojo.Category;
 import com.mars.mall.service.ICategoryService;
 import com.mars.mall.vo.CategoryVo;
 import com.mars.mall.vo.ResponseVo;
-import org.springframework.beans.BeanUtils;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @description: 类目模块Service层功能实现
@@ -24,100 +23,89 @@ import java.util.stream.Collectors;
  * 耗时： http(请求微信api) > 磁盘 > 内存
  * mysql(内网+磁盘)
  **/
+@Slf4j
 @Service
 public class CategoryServiceImpl implements ICategoryService {
 
     @Autowired
     private CategoryMapper categoryMapper;
 
+    @Autowired
+    private ObjectMapper objectMapper;//使用spring mvc同一个ObjectMapper，预先序列化的json和接口直接返回时一致
+
+    private volatile CategorySnapshot snapshot;//当前类目树快照
+
+    private final AtomicLong version = new AtomicLong();
+
     /**
      * 查询除所有的类目，包括子类目，封装成ResponseVo形式
+     * 直接返回内存中的类目树快照，不再每次请求都查数据库、建树
      * @return
      */
     @Override
     public ResponseVo<List<CategoryVo>> selectAll() {
-//        List<CategoryVo> categoryVoList = new ArrayList<>();
-        List<Category> categories = categoryMapper.selectAll();//获取所有的类目数据
-
-        //查出parent_id=0的数据
-//        for (Category category : categories){
-//            //先提出根类目
-//            if (category.getParentId().equals(MallConst.ROOT_PARENT_ID)){
-//                CategoryVo categoryVo = new CategoryVo();
-//                //Spring提供的BeanUtils类中copyProperties方法可以帮我们把一个对象中的字段复制到另一个对象的同名字段中
-//                BeanUtils.copyProperties(category,categoryVo);//第一个参数是源对象，第二个是目标对象
-//                categoryVoList.add(categoryVo);//先把根类目存进categoryVo列表
-//            }
-//        }
-
-        //下面代码是使用"Lambda表达式+stream"完成上面的功能 (不建议，可读性差)
-        //在所有类目数据中筛选出parent_id=0的类目(根类目)，并按优先级sortOrder从大到小排序
-        List<CategoryVo> categoryVoList = categories.stream()
-                .filter(e -> e.getParentId().equals(MallConst.ROOT_PARENT_ID))
-                .map(this::category2CategoryVo)
-                .sorted(Comparator.comparing(CategoryVo::getSortOrder).reversed())
-                .collect(Collectors.toList());
-
-        //查询根类目下的所有子类目及子类目的子类目
-        findSubCategory(categoryVoList,categories);
-
-        return ResponseVo.success(categoryVoList);
+        return ResponseVo.success(snapshot().getCategoryVoList());
     }
 
     /**
-     * 查询子类目，这个方法可以逐层查询出所有类目和他们的子类目并将他们的父子关系相关联
-     * @param categoryVoList 父类目列表
-     * @param categories 数据源(包含所有的类目)
+     * 获取当前类目树快照，第一次使用时构建
      */
-    private void findSubCategory(List<CategoryVo> categoryVoList,List<Category> categories){
-
-        for (CategoryVo categoryVo : categoryVoList){   //这层循环是父类目
-
-            List<CategoryVo> subCategoryVoList = new ArrayList<>();//一个类目的子类目列表
-
-            for (Category category : categories){   //这层循环是遍历所有类目，找出父类目的子类目
-                //如果查到内容，设置subCategory。继续往下查
-                if (categoryVo.getId().equals(category.getParentId())){
-                    CategoryVo subCategoryVo = category2CategoryVo(category);
-                    subCategoryVoList.add(subCategoryVo);
+    @Override
+    public CategorySnapshot snapshot() {
+        CategorySnapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = rebuild(categoryMapper.selectFingerprint());
                 }
-                //将子类目进行排序，优先级sortOrder从大到小
-                subCategoryVoList.sort(Comparator.comparing(CategoryVo::getSortOrder).reversed());
-                categoryVo.setSubCategories(subCategoryVoList);//将子类目列表关联到父类目的子类目属性
-
-                findSubCategory(subCategoryVoList,categories);//递归调用，把每层子类目都查出来
             }
         }
+        return current;
     }
 
     /**
-     * 将类目Category类对象转化为CategoryVo类对象，即将类目属性值迁移到categoryVo
-     * @param category
-     * @return
+     * 重新构建类目树快照，类目被修改后调用
      */
-    private CategoryVo category2CategoryVo(Category category){
-        CategoryVo categoryVo = new CategoryVo();
-        BeanUtils.copyProperties(category,categoryVo);//第一个参数是源对象，第二个是目标对象
-        return categoryVo;
+    @Override
+    public synchronized void refresh() {
+        rebuild(categoryMapper.selectFingerprint());
+    }
+
+    /**
+     * 类目表指纹发生变化时才重新构建，供定时任务调用
+     * @return 是否重新构建
+     */
+    @Override
+    public boolean refreshIfChanged() {
+        String fingerprint = categoryMapper.selectFingerprint();
+        CategorySnapshot current = snapshot;
+        if (current != null && current.getFingerprint().equals(fingerprint)) {
+            return false;
+        }
+        synchronized (this) {
+            rebuild(fingerprint);
+        }
+        return true;
+    }
+
+    //先查指纹再查类目，期间类目被修改时下次检查指纹会发现变化并再次构建
+    private CategorySnapshot rebuild(String fingerprint) {
+        List<Category> categories = categoryMapper.selectAll();//获取所有的类目数据
+        CategorySnapshot current = CategorySnapshot.build(categories, version.incrementAndGet(), fingerprint, objectMapper);
+        snapshot = current;
+        log.info("类目树快照已重建, version={}, size={}", current.getVersion(), categories.size());
+        return current;
     }
 
     /**
      * 查找指定id类目的所有子类目(包括子类目的子类目)的id
+     * 使用类目树快照中预先计算好的子孙类目索引，不查数据库，也不需要逐层递归扫描
      * @param id 指定类目的id
      * @param resultSet 包含所有子类目id的集合
      */
     @Override
     public void findSubCategoryId(Integer id, Set<Integer> resultSet) {
-        List<Category> categories = categoryMapper.selectAll();//递归不要包含这条，因为重复查数据库没意义
-        findSubCategoryId(id,resultSet,categories);
-    }
-    //重载上面的方法，专门做递归使用
-    private void findSubCategoryId(Integer id, Set<Integer> resultSet,List<Category> categories) {
-        for (Category category : categories){
-            if (category.getParentId().equals(id)){
-                resultSet.add(category.getId());
-                findSubCategoryId(category.getId(),resultSet,categories);//递归，把所查询id的类目中的所有子类目存入set
-            }
-        }
+        snapshot().collectDescendants(id, resultSet);
     }
 }
@@ -0,0 +1,250 @@
+package com.mars.mall.service.impl;
+
+import com.mars.mall.consts.MallConst;
+import com.mars.mall.dao.FlashFlushMapper;
+import com.mars.mall.dao.ProductMapper;
+import com.mars.mall.dao.ProductStockBucketMapper;
+import com.mars.mall.enums.ResponseEnum;
+import com.mars.mall.pojo.FlashReservation;
+import com.mars.mall.pojo.Product;
+import com.mars.mall.service.IFlashSaleService;
+import com.mars.mall.vo.FlashSaleStockVo;
+import com.mars.mall.vo.ResponseVo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @description: 秒杀商品库存service层
+ * 少数秒杀商品承担了大部分下单流量时，每个订单都要等同一行mysql行锁；
+ * 秒杀商品的库存放在redis hash flash_stock中，下单时用lua脚本原子预扣，扣减量累加到flash_pending，
+ * 定时任务把flash_pending整体取出，用一条update同步到mysql，mysql的行锁从每单一次变成每批一次
+ * 下单失败和订单取消时释放预扣的库存：flash_stock加回，flash_pending减去(可为负，同步时给mysql加回)
+ * 每批扣减量有一个批次号，和扣减量在同一个事务中写入mall_flash_flush，进程在删除redis中的这批之前退出、
+ * 或者两个节点同时同步同一批时，mysql只会扣减一次
+ * @author: Mars
+ * @create: 2022-03-28 10:40
+ **/
+@Slf4j
+@Service
+public class FlashSaleServiceImpl implements IFlashSaleService {
+
+    private final static String FLUSH_LOCK_KEY = "flash_flush_lock";
+
+    private final static long FLUSH_LOCK_SECONDS = 30;
+
+    private final static long DISABLE_WAIT_MILLIS = FLUSH_LOCK_SECONDS * 1000;
+
+    private final static long DISABLE_RETRY_MILLIS = 100;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Autowired
+    private ProductStockBucketMapper productStockBucketMapper;
+
+    @Autowired
+    private FlashFlushMapper flashFlushMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    @SuppressWarnings("rawtypes")
+    private RedisScript<List> flashReserveScript;
+
+    @Autowired
+    private RedisScript<Long> flashReleaseScript;
+
+    @Autowired
+    @SuppressWarnings("rawtypes")
+    private RedisScript<List> flashDrainScript;
+
+    @Autowired
+    private RedisScript<Long> flashFlushedScript;
+
+    /**
+     * 设为秒杀商品。加载库存和正在进行的下单之间没有加锁，所以要在活动开始前设置
+     */
+    @Override
+    public ResponseVo<Integer> enable(Integer productId) {
+        Product product = productMapper.selectByPrimaryKey(productId);
+        if (product == null) {
+            return ResponseVo.error(ResponseEnum.PRODUCT_NOT_EXIST);
+        }
+        if (!productStockBucketMapper.selectBucketedProductIds(Collections.singleton(productId)).isEmpty()) {
+            return ResponseVo.error(ResponseEnum.PARAM_ERROR, "商品库存已分桶，先合并再设为秒杀商品");
+        }
+        HashOperations<String, String, String> opsForHash = redisTemplate.opsForHash();
+        //已经是秒杀商品时不覆盖，redis中的库存比mysql新
+        opsForHash.putIfAbsent(MallConst.FLASH_STOCK_REDIS_KEY, String.valueOf(productId), String.valueOf(product.getStock()));
+        return ResponseVo.success(Integer.valueOf(opsForHash.get(MallConst.FLASH_STOCK_REDIS_KEY, String.valueOf(productId))));
+    }
+
+    /**
+     * 其他节点正在同步时等它完成后自己再同步一次，等待超时时不取消秒杀
+     */
+    @Override
+    public ResponseVo<Boolean> disable(Integer productId) {
+        long deadline = System.currentTimeMillis() + DISABLE_WAIT_MILLIS;
+        while (tryFlush() == null) {
+            if (System.currentTimeMillis() >= deadline) {
+                return ResponseVo.error(ResponseEnum.ERROR, "秒杀库存正在同步，请稍后重试");
+            }
+            try {
+                Thread.sleep(DISABLE_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return ResponseVo.error(ResponseEnum.ERROR, "秒杀库存正在同步，请稍后重试");
+            }
+        }
+        //flush之后、删除之前预扣的数量留在flash_pending中，下次定时同步
+        redisTemplate.opsForHash().delete(MallConst.FLASH_STOCK_REDIS_KEY, String.valueOf(productId));
+        return ResponseVo.success(true);
+    }
+
+    @Override
+    public boolean isFlash(Integer productId) {
+        return redisTemplate.opsForHash().hasKey(MallConst.FLASH_STOCK_REDIS_KEY, String.valueOf(productId));
+    }
+
+    @Override
+    public ResponseVo<List<FlashSaleStockVo>> list() {
+        HashOperations<String, String, String> opsForHash = redisTemplate.opsForHash();
+        Map<String, String> stockMap = new TreeMap<>(opsForHash.entries(MallConst.FLASH_STOCK_REDIS_KEY));
+        List<String> productIds = new ArrayList<>(stockMap.keySet());
+        List<FlashSaleStockVo> flashSaleStockVoList = new ArrayList<>();
+        if (productIds.isEmpty()) {
+            return ResponseVo.success(flashSaleStockVoList);
+        }
+        List<String> pendingList = opsForHash.multiGet(MallConst.FLASH_PENDING_REDIS_KEY, productIds);
+        for (int i = 0; i < productIds.size(); i++) {
+            flashSaleStockVoList.add(new FlashSaleStockVo(Integer.valueOf(productIds.get(i)),
+                    Integer.valueOf(stockMap.get(productIds.get(i))),
+                    pendingList.get(i) == null ? 0 : Integer.valueOf(pendingList.get(i))));
+        }
+        return ResponseVo.success(flashSaleStockVoList);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public FlashReservation reserve(Map<Integer, Integer> stockMap) {
+        FlashReservation reservation = new FlashReservation();
+        if (stockMap.isEmpty()) {
+            return reservation;
+        }
+        List<Long> result = redisTemplate.execute(flashReserveScript,
+                Arrays.asList(MallConst.FLASH_STOCK_REDIS_KEY, MallConst.FLASH_PENDING_REDIS_KEY),
+                argsOf(stockMap, null));
+        if (result.get(0) == 0) {
+            reservation.setShortProductId(result.get(1).intValue());
+            return reservation;
+        }
+        for (Long productId : result.subList(1, result.size())) {
+            reservation.getReservedMap().put(productId.intValue(), stockMap.get(productId.intValue()));
+        }
+        return reservation;
+    }
+
+    @Override
+    public void release(Map<Integer, Integer> stockMap, boolean onlyFlash) {
+        if (stockMap.isEmpty()) {
+            return;
+        }
+        Long released = redisTemplate.execute(flashReleaseScript,
+                Arrays.asList(MallConst.FLASH_STOCK_REDIS_KEY, MallConst.FLASH_PENDING_REDIS_KEY),
+                argsOf(stockMap, onlyFlash ? "1" : "0"));
+        if (released != null && released > 0) {
+            log.info("释放秒杀库存, onlyFlash={}, stockMap={}, released={}", onlyFlash, stockMap, released);
+        }
+    }
+
+    @Override
+    public int flush() {
+        Integer flushed = tryFlush();
+        return flushed == null ? 0 : flushed;
+    }
+
+    /**
+     * 取出待同步的扣减量同步到mysql，多个节点同时执行时只有拿到锁的节点同步
+     * mysql同步失败时扣减量留在flash_flushing中，下次先同步它；锁过期后其他节点同步同一批时由批次号去重
+     * @return 同步的商品数，其他节点持有锁时返回null
+     */
+    @SuppressWarnings("unchecked")
+    private Integer tryFlush() {
+        String token = UUID.randomUUID().toString();
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(FLUSH_LOCK_KEY, token, FLUSH_LOCK_SECONDS, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return null;
+        }
+        try {
+            List<String> drained = redisTemplate.execute(flashDrainScript,
+                    Arrays.asList(MallConst.FLASH_PENDING_REDIS_KEY, MallConst.FLASH_FLUSHING_REDIS_KEY,
+                            MallConst.FLASH_FLUSHING_ID_REDIS_KEY),
+                    UUID.randomUUID().toString());
+            if (drained.isEmpty()) {
+                return 0;
+            }
+            String flushId = drained.get(0);
+            Map<Integer, Integer> deltaMap = new TreeMap<>();//按商品id排序，和下单扣库存的加锁顺序一致
+            for (int i = 1; i < drained.size(); i += 2) {
+                int delta = Integer.parseInt(drained.get(i + 1));
+                if (delta != 0) {
+                    deltaMap.put(Integer.valueOf(drained.get(i)), delta);
+                }
+            }
+            //批次号和扣减量在同一个事务中写入，批次号已存在说明这批已经同步过
+            Boolean applied = transactionTemplate.execute(status -> {
+                if (flashFlushMapper.insertIgnore(flushId) == 0) {
+                    return false;
+                }
+                if (!deltaMap.isEmpty()) {
+                    productMapper.applyStockDelta(deltaMap);
+                }
+                return true;
+            });
+            redisTemplate.execute(flashFlushedScript,
+                    Arrays.asList(MallConst.FLASH_FLUSHING_REDIS_KEY, MallConst.FLASH_FLUSHING_ID_REDIS_KEY),
+                    flushId);
+            if (!Boolean.TRUE.equals(applied)) {
+                log.warn("秒杀库存批次已同步过, 跳过, flushId={}, deltaMap={}", flushId, deltaMap);
+                return 0;
+            }
+            log.info("秒杀库存同步到mysql, flushId={}, deltaMap={}", flushId, deltaMap);
+            return deltaMap.size();
+        } finally {
+            if (token.equals(redisTemplate.opsForValue().get(FLUSH_LOCK_KEY))) {
+                redisTemplate.delete(FLUSH_LOCK_KEY);
+            }
+        }
+    }
+
+    //脚本参数：[模式,] 商品id、数量交替
+    private Object[] argsOf(Map<Integer, Integer> stockMap, String mode) {
+        List<String> args = new ArrayList<>(stockMap.size() * 2 + 1);
+        if (mode != null) {
+            args.add(mode);
+        }
+        for (Map.Entry<Integer, Integer> entry : new TreeMap<>(stockMap).entrySet()) {
+            args.add(String.valueOf(entry.getKey()));
+            args.add(String.valueOf(entry.getValue()));
+        }
+        return args.toArray();
+    }
+}
@@ -0,0 +1,85 @@
+package com.mars.mall.service.impl;
+
+import com.mars.mall.dao.OrderMapper;
+import com.mars.mall.enums.OrderStatusEnum;
+import com.mars.mall.service.IOrderExpireService;
+import com.mars.mall.service.IOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * @description: 未付款订单超时关闭service层
+ * 延迟消息到期后先放进本机缓冲，由定时任务每批最多batchSize个订单在一个事务中关闭，
+ * 加回库存也合并成一条update，不再每个订单一个事务
+ * 缓冲中的订单在进程退出时会丢失(消息已确认)，由定时扫描数据库关闭
+ * @author: Mars
+ * @create: 2022-04-01 10:10
+ **/
+@Slf4j
+@Service
+public class OrderExpireServiceImpl implements IOrderExpireService {
+
+    @Value("${mall.order.expire.timeout-minutes:30}")
+    private long timeoutMinutes;
+
+    @Value("${mall.order.expire.batch-size:200}")
+    private int batchSize;
+
+    @Autowired
+    private IOrderService orderService;
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    private final Queue<Long> buffer = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void enqueue(Long orderNo) {
+        buffer.offer(orderNo);
+    }
+
+    @Override
+    public int flush() {
+        int closed = 0;
+        while (!buffer.isEmpty()) {
+            List<Long> orderNoList = new ArrayList<>(batchSize);
+            Long orderNo;
+            while (orderNoList.size() < batchSize && (orderNo = buffer.poll()) != null) {
+                orderNoList.add(orderNo);
+            }
+            //已付款、已取消的订单和还没到时间的订单(超时时间调长之前发出的消息)不会被关闭
+            closed += orderService.closeExpired(orderNoList, deadline());
+        }
+        return closed;
+    }
+
+    @Override
+    public int sweep() {
+        int closed = 0;
+        while (true) {
+            Date deadline = deadline();
+            List<Long> orderNoList = orderMapper.selectExpiredOrderNos(OrderStatusEnum.NO_PAY.getCode(), deadline, batchSize);
+            if (orderNoList.isEmpty()) {
+                break;
+            }
+            int row = orderService.closeExpired(orderNoList, deadline);
+            closed += row;
+            if (row == 0 || orderNoList.size() < batchSize) {
+                break;
+            }
+        }
+        return closed;
+    }
+
+    private Date deadline() {
+        return new Date(System.currentTimeMillis() - timeoutMinutes * 60 * 1000);
+    }
+}
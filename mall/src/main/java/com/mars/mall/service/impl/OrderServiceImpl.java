@@ -2,20 +2,34 @@ package com.mars.mall.service.impl;
 
 import com.github.pagehelper.PageHelper;
 import com.github.pagehelper.PageInfo;
+import com.mars.mall.cache.CategorySnapshot;
+import com.mars.mall.cache.ProductCache;
+import com.mars.mall.consts.MallConst;
 import com.mars.mall.dao.*;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mars.mall.enums.*;
+import com.mars.mall.idgen.OrderNoGenerator;
 import com.mars.mall.pojo.*;
 import com.mars.mall.service.ICartService;
+import com.mars.mall.service.ICategoryService;
+import com.mars.mall.service.IFlashSaleService;
 import com.mars.mall.service.IOrderService;
+import com.mars.mall.service.IStockBucketService;
 import com.mars.mall.vo.OrderItemVo;
 import com.mars.mall.vo.OrderVo;
 import com.mars.mall.vo.ResponseVo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpTemplate;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.CollectionUtils;
 
 import java.math.BigDecimal;
@@ -29,9 +43,13 @@ import java.util.stream.Collectors;
  * @author: Mars
  * @create: 2021-10-05 12:01
  **/
+@Slf4j
 @Service
 public class OrderServiceImpl implements IOrderService {
 
+    @Value("${mall.order.expire.timeout-minutes:30}")
+    private long expireTimeoutMinutes;
+
     @Autowired
     private ShippingMapper shippingMapper;//提供收货地址模块持久层服务
 
@@ -39,7 +57,19 @@ public class OrderServiceImpl implements IOrderService {
     private ICartService cartService;//提供购物车模块相关的服务
 
     @Autowired
-    private ProductMapper productMapper;//提供商品模块持久层服务
+    private ProductMapper productMapper;//提供商品模块持久层服务，校验库存和扣库存直接读写数据库
+
+    @Autowired
+    private IFlashSaleService flashSaleService;//秒杀商品在redis中预扣库存
+
+    @Autowired
+    private IStockBucketService stockBucketService;//库存分桶的热门商品扣减其中一个桶
+
+    @Autowired
+    private ProductCache productCache;//只用于赠品名称、商品类目这类不涉及库存的读取
+
+    @Autowired
+    private OrderNoGenerator orderNoGenerator;//分布式唯一订单号
 
     @Autowired
     private OrderMapper orderMapper;
@@ -51,10 +81,15 @@ public class OrderServiceImpl implements IOrderService {
     private ActivityMapper activityMapper;
 
     @Autowired
-    private CategoryMapper categoryMapper;
+    private AmqpTemplate amqpTemplate;//未付款订单的超时关闭消息
+
+    @Autowired
+    private ICategoryService categoryService;//类目树快照，用于判断商品类目是否在活动范围内
 
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    private final static String GIFT_NAME_PREFIX = "赠品:";//赠品订单条目的商品名称前缀，赠品不占用库存
+
     /**
      * 创建订单
      * @param uid 用户id
@@ -64,6 +99,15 @@ public class OrderServiceImpl implements IOrderService {
     @Override
     @Transactional //添加事务，方法内任何一个数据库操作失败或运行时异常都会造成整体回滚
     public ResponseVo<OrderVo> create(Integer uid, Integer shippingId) {
+        return create(uid, shippingId, orderNoGenerator.nextId());//生成唯一订单号
+    }
+
+    /**
+     * 使用给定的订单号创建订单，异步下单时订单号在入队前生成，作为客户端查询结果的凭证
+     */
+    @Override
+    @Transactional
+    public ResponseVo<OrderVo> create(Integer uid, Integer shippingId, Long orderNo) {
         //校验收货地址是否存在
         Shipping shipping = shippingMapper.selectByUidAndShippingId(uid, shippingId);
         if (shipping == null){
@@ -90,7 +134,7 @@ public class OrderServiceImpl implements IOrderService {
                 .collect(Collectors.toMap(Product::getId, product -> product));//用一个map来存放商品id和商品关联的键值对
 
         List<OrderItem> orderItemList = new ArrayList<>();//存放多个订单条目的list
-        Long orderNo = generateOrderNo();//生成唯一订单号
+        Map<Integer, Integer> stockMap = new TreeMap<>();//商品id -> 扣减数量，按商品id排序
         for (Cart cart : cartList) {
             //根据productId查数据库,这步放在循环外(上面),减少查询数据库次数
             Product product = map.get(cart.getProductId());
@@ -114,13 +158,50 @@ public class OrderServiceImpl implements IOrderService {
             OrderItem orderItem = buildOrderItem(uid, orderNo, cart.getQuantity(), product);
             orderItemList.add(orderItem);
 
-            //减库存
-            product.setStock(product.getStock() - cart.getQuantity());
-            int row = productMapper.updateByPrimaryKeySelective(product);
-            if (row <= 0){
-                return ResponseVo.error(ResponseEnum.ERROR);
-            }
+            stockMap.merge(product.getId(), cart.getQuantity(), Integer::sum);
+        }
+
+        //秒杀商品在redis中原子预扣库存，不争抢mysql行锁，扣减量由定时任务批量同步到mysql
+        FlashReservation reservation = flashSaleService.reserve(stockMap);
+        if (!reservation.isSuccess()){
+            return ResponseVo.error(ResponseEnum.PRODUCT_STOCK_ERROR,
+                    "库存不正确. " + map.get(reservation.getShortProductId()).getName());
+        }
+        Map<Integer, Integer> reservedMap = reservation.getReservedMap();
+        if (!reservedMap.isEmpty()){
+            //订单没有提交(库存不足、写入失败或异常回滚)时释放预扣的秒杀库存
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        flashSaleService.release(reservedMap, false);
+                    }
+                }
+            });
+        }
 
+        //其余商品减mysql库存：上面的库存判断用的是之前读到的数据，并发下单时可能已经过期，
+        //所以用一条条件update扣减所有商品，库存不足的商品不会被扣减，只要有一件没扣成功就回滚整个订单
+        Map<Integer, Integer> mysqlStockMap = new TreeMap<>(stockMap);
+        mysqlStockMap.keySet().removeAll(reservedMap.keySet());
+        //库存分桶的商品扣减桶中的库存，先于mall_product按商品id顺序加锁，和其他订单的加锁顺序一致
+        if (!mysqlStockMap.isEmpty()){
+            Set<Integer> bucketedIdSet = stockBucketService.bucketedProductIds(mysqlStockMap.keySet());
+            for (Integer productId : new TreeSet<>(bucketedIdSet)) {
+                if (!stockBucketService.decrease(productId, mysqlStockMap.get(productId))){
+                    TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                    return ResponseVo.error(ResponseEnum.PRODUCT_STOCK_ERROR,
+                            "库存不正确. " + map.get(productId).getName());
+                }
+            }
+            mysqlStockMap.keySet().removeAll(bucketedIdSet);
+        }
+        if (!mysqlStockMap.isEmpty()){
+            int row = productMapper.decreaseStock(mysqlStockMap);
+            if (row < mysqlStockMap.size()){
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                return ResponseVo.error(ResponseEnum.PRODUCT_STOCK_ERROR, stockErrorMessage(mysqlStockMap, map));
+            }
         }
 
         // 活动相关的计算：获取当前有效且作用域匹配的活动
@@ -143,19 +224,26 @@ public class OrderServiceImpl implements IOrderService {
 
         int rowForOrder = orderMapper.insertSelective(order);//将订单插入数据库订单表
         if (rowForOrder <= 0){
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();//库存已经扣减，需要回滚
             return ResponseVo.error(ResponseEnum.ERROR);
         }
 
         int rowForOrderItem = orderItemMapper.batchInsert(orderItemList);//将订单条目插入数据库订单条目表
         if (rowForOrderItem <= 0){
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             return ResponseVo.error(ResponseEnum.ERROR);
         }
 
         //更新购物车(选中的商品)
         //操作Redis，Redis的事务是多条命令的打包，每个命令操作都是原子性的，不存在回滚(不要在上面的for循环内进行)
-        for (Cart cart : cartList) {
-            cartService.delete(uid,cart.getProductId());
-        }
+        //一条命令删除全部已购买的条目，不重新渲染购物车；放到事务提交之后执行，订单回滚时购物车保持不变
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                cartService.deleteBatch(uid, productList);
+                scheduleExpire(orderNo);
+            }
+        });
 
         //构造orderVo
         OrderVo orderVo = buildOrderVo(order, orderItemList, shipping);
@@ -163,6 +251,18 @@ public class OrderServiceImpl implements IOrderService {
         return ResponseVo.success(orderVo);
     }
 
+    /**
+     * 扣库存失败时找出库存不足或已下架的商品，生成错误信息
+     */
+    private String stockErrorMessage(Map<Integer, Integer> stockMap, Map<Integer, Product> productMap) {
+        for (Product product : productMapper.selectStockByProductIdSet(stockMap.keySet())) {
+            if (product.getStock() < stockMap.get(product.getId())) {
+                return "库存不正确. " + productMap.get(product.getId()).getName();
+            }
+        }
+        return "商品库存不足或已下架，请重新下单";
+    }
+
     /**
      * 将指定用户的所有订单罗列成订单列表
      * @param uid 用户id
@@ -244,6 +344,7 @@ public class OrderServiceImpl implements IOrderService {
      * @return
      */
     @Override
+    @Transactional
     public ResponseVo cancel(Integer uid, Long orderNo) {
         Order order = orderMapper.selectByOrderNo(orderNo);//用订单号在数据库中查询该订单
         if (order == null || !order.getUserId().equals(uid)){
@@ -253,20 +354,107 @@ public class OrderServiceImpl implements IOrderService {
         if (!order.getStatus().equals(OrderStatusEnum.NO_PAY.getCode())){
             return ResponseVo.error(ResponseEnum.ORDER_STATUS_ERROR);
         }
-        //设定取消后订单的某些属性:订单状态，关闭时间
-        order.setStatus(OrderStatusEnum.CANCELED.getCode());
-        order.setCloseTime(new Date());
-        //更新数据库中订单状态
-        int row = orderMapper.updateByPrimaryKeySelective(order);
+        //更新数据库中订单状态和关闭时间，订单同时被支付或超时关闭时不会更新
+        int row = orderMapper.updateStatusByOrderNoList(Collections.singletonList(orderNo),
+                OrderStatusEnum.NO_PAY.getCode(), OrderStatusEnum.CANCELED.getCode(), false, true);
         if (row <= 0){
-            return ResponseVo.error(ResponseEnum.ERROR);
+            return ResponseVo.error(ResponseEnum.ORDER_STATUS_ERROR);
         }
 
+        //加回订单占用的库存
+        Set<Long> orderNoSet = new HashSet<>();
+        orderNoSet.add(orderNo);
+        restoreStock(stockMapOf(orderItemMapper.selectByOrderNoSet(orderNoSet)));
+
         return ResponseVo.success();
     }
 
+    /**
+     * 批量关闭超时未付款的订单并加回库存
+     * 先给仍未付款的订单加行锁，再用带状态条件的update关闭，和同时到达的支付、取消互不覆盖
+     */
+    @Override
+    @Transactional
+    public int closeExpired(Collection<Long> orderNoList, Date deadline) {
+        if (orderNoList.isEmpty()) {
+            return 0;
+        }
+        List<Long> expiredList = orderMapper.selectExpiredForUpdate(orderNoList, OrderStatusEnum.NO_PAY.getCode(), deadline);
+        if (expiredList.isEmpty()) {
+            return 0;
+        }
+        int row = orderMapper.updateStatusByOrderNoList(expiredList,
+                OrderStatusEnum.NO_PAY.getCode(), OrderStatusEnum.TRADE_CLOSE.getCode(), false, true);
+        restoreStock(stockMapOf(orderItemMapper.selectByOrderNoSet(new HashSet<>(expiredList))));
+        return row;
+    }
+
+    /**
+     * 加回订单占用的库存，和下单扣库存的方式对应：
+     * 当前是秒杀商品的加回redis(提交后执行，由定时同步给mysql)，分桶商品加回一个桶，其余商品一条update加回mall_product
+     */
+    private void restoreStock(Map<Integer, Integer> stockMap) {
+        Map<Integer, Integer> flashStockMap = new TreeMap<>();
+        Map<Integer, Integer> mysqlStockMap = new TreeMap<>();
+        for (Map.Entry<Integer, Integer> entry : stockMap.entrySet()) {
+            (flashSaleService.isFlash(entry.getKey()) ? flashStockMap : mysqlStockMap).put(entry.getKey(), entry.getValue());
+        }
+        if (!flashStockMap.isEmpty()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    //提交前已经按秒杀商品分好，期间取消秒杀也要全部加回，否则这部分库存两边都不加回
+                    flashSaleService.release(flashStockMap, false);
+                }
+            });
+        }
+
+        if (!mysqlStockMap.isEmpty()) {
+            for (Integer productId : new TreeSet<>(stockBucketService.bucketedProductIds(mysqlStockMap.keySet()))) {
+                if (stockBucketService.increase(productId, mysqlStockMap.get(productId))) {
+                    mysqlStockMap.remove(productId);
+                }
+            }
+        }
+        if (!mysqlStockMap.isEmpty()) {
+            Map<Integer, Integer> deltaMap = new TreeMap<>();
+            mysqlStockMap.forEach((productId, quantity) -> deltaMap.put(productId, -quantity));
+            productMapper.applyStockDelta(deltaMap);
+        }
+    }
+
+    /**
+     * 订单提交后发送延迟消息，超时未付款时关闭；发送失败的订单由定时扫描关闭
+     */
+    private void scheduleExpire(Long orderNo) {
+        try {
+            amqpTemplate.convertAndSend(MallConst.ORDER_DELAY_QUEUE, String.valueOf(orderNo), message -> {
+                message.getMessageProperties().setExpiration(String.valueOf(expireTimeoutMinutes * 60 * 1000));
+                return message;
+            });
+        } catch (AmqpException e) {
+            log.error("发送订单超时关闭消息失败, orderNo={}", orderNo, e);
+        }
+    }
+
+    /**
+     * 订单条目中每个商品购买的数量(不含赠品)，按商品id排序
+     */
+    private Map<Integer, Integer> stockMapOf(List<OrderItem> orderItemList) {
+        Map<Integer, Integer> stockMap = new TreeMap<>();
+        for (OrderItem orderItem : orderItemList) {
+            if (orderItem.getProductId() == null || orderItem.getProductName().startsWith(GIFT_NAME_PREFIX)) {
+                continue;
+            }
+            stockMap.merge(orderItem.getProductId(), orderItem.getQuantity(), Integer::sum);
+        }
+        return stockMap;
+    }
+
     /**
      * 从MQ种接收到支付成功的消息后，根据消息中的订单号，修改订单状态为已付款
+     * 未付款订单会超时关闭，关闭后才到达的付款是正常情况：库存已经加回，不再改成已付款，记录日志由人工退款，
+     * 不抛异常，否则消息会被反复重新投递
      * @param orderNo
      */
     @Override
@@ -276,16 +464,28 @@ public class OrderServiceImpl implements IOrderService {
             throw new RuntimeException(ResponseEnum.ORDER_NOT_EXIST.getDesc() + "订单id:" + orderNo);
         }
         //只有[未付款]订单可以变成[已付款]
-        if (!order.getStatus().equals(OrderStatusEnum.NO_PAY.getCode())) {
-            throw new RuntimeException(ResponseEnum.ORDER_STATUS_ERROR.getDesc() + "订单id:" + orderNo);
+        if (order.getStatus().equals(OrderStatusEnum.NO_PAY.getCode())) {
+            //订单同时被取消或超时关闭时不会更新
+            int row = orderMapper.updateStatusByOrderNoList(Collections.singletonList(orderNo),
+                    OrderStatusEnum.NO_PAY.getCode(), OrderStatusEnum.PAID.getCode(), true, false);
+            if (row > 0) {
+                return;
+            }
+            order = orderMapper.selectByOrderNo(orderNo);
         }
+        paidInStatus(order);
+    }
 
-        order.setStatus(OrderStatusEnum.PAID.getCode());
-        order.setPaymentTime(new Date());
-        int row = orderMapper.updateByPrimaryKeySelective(order);
-        if (row <= 0) {
-            throw new RuntimeException("将订单更新为已支付状态失败，订单id:" + orderNo);
+    //收到付款时订单已经不是[未付款]
+    private void paidInStatus(Order order) {
+        if (order.getStatus().equals(OrderStatusEnum.TRADE_CLOSE.getCode())
+                || order.getStatus().equals(OrderStatusEnum.CANCELED.getCode())) {
+            log.error("订单关闭后收到付款, 需要退款, orderNo={}, status={}, payment={}",
+                    order.getOrderNo(), order.getStatus(), order.getPayment());
+            return;
         }
+        //已付款及之后的状态：支付通知重复投递
+        log.info("订单已付款, 忽略重复的支付通知, orderNo={}, status={}", order.getOrderNo(), order.getStatus());
     }
 
     /**
@@ -314,15 +514,6 @@ public class OrderServiceImpl implements IOrderService {
         return orderVo;
     }
 
-    /**
-     * 生成唯一的订单号:时间戳+随机值
-     * 企业级：分布式唯一id/主键
-     * @return
-     */
-    private Long generateOrderNo() {
-        return System.currentTimeMillis() + new Random().nextInt(999);
-    }
-
     /**
      * 构造订单条目对象，一个订单条目对象中只有一种商品
      * @param uid 用户id
@@ -369,10 +560,10 @@ public class OrderServiceImpl implements IOrderService {
                 giftItem.setTotalPrice(BigDecimal.ZERO);
 
                 if (giftProductId != null) {
-                    Product giftProduct = productMapper.selectByPrimaryKey(giftProductId);
+                    Product giftProduct = productCache.get(giftProductId);
                     if (giftProduct != null) {
                         giftItem.setProductId(giftProduct.getId());
-                        giftItem.setProductName("赠品:" + giftProduct.getName());
+                        giftItem.setProductName(GIFT_NAME_PREFIX + giftProduct.getName());
                         giftItem.setProductImage(giftProduct.getMainImage());
                     } else {
                         giftItem.setProductName("赠品");
@@ -436,17 +627,16 @@ public class OrderServiceImpl implements IOrderService {
     private BigDecimal applyPromotions(BigDecimal originalPayment, List<Activity> activities, List<OrderItem> orderItemList) {
         if (originalPayment == null || activities == null || activities.isEmpty()) return originalPayment;
 
-        // 构建商品与类目父ID的缓存，用于快速计算命中 parent_id 的商品总价
+        // 用类目树快照中的父类目索引快速计算命中 parent_id 的商品总价
         // 只有parent_id是json里面的parent_id的商品才可以进行计算
         Set<Integer> productIdSet = orderItemList.stream()
                 .map(OrderItem::getProductId)
                 .filter(Objects::nonNull)
                 .collect(Collectors.toSet());
-        Map<Integer, Product> productMap = productMapper.selectByProductIdSet(productIdSet)
+        Map<Integer, Product> productMap = productCache.getAll(productIdSet)
                 .stream().collect(Collectors.toMap(Product::getId, p -> p));
 
-        Map<Integer, Integer> categoryParentMap = categoryMapper.selectAll().stream()
-                .collect(Collectors.toMap(Category::getId, Category::getParentId));
+        CategorySnapshot categorySnapshot = categoryService.snapshot();
 
         BigDecimal best = originalPayment;
         for (Activity a : activities) {
@@ -464,8 +654,7 @@ public class OrderServiceImpl implements IOrderService {
                     if (pid == null) continue; // 跳过赠品等无商品ID条目
                     Product p = productMap.get(pid);
                     if (p == null) continue;
-                    Integer parentId = categoryParentMap.get(p.getCategoryId());
-                    if (parentId != null && parentId.equals(scopeParentId)) {
+                    if (scopeParentId.equals(categorySnapshot.parentIdOf(p.getCategoryId()))) {
                         if (item.getTotalPrice() != null) {
                             eligibleSubtotal = eligibleSubtotal.add(item.getTotalPrice());
                         } else if (item.getCurrentUnitPrice() != null && item.getQuantity() != null) {
@@ -530,6 +719,9 @@ public class OrderServiceImpl implements IOrderService {
         order.setPaymentType(PaymentTypeEnum.PAY_ONLINE.getCode());//支付方式:在线支付
         order.setPostage(0);//运费，默认0
         order.setStatus(OrderStatusEnum.NO_PAY.getCode());//订单状态:未支付
+        Date now = new Date();
+        order.setCreateTime(now);//超时关闭按创建时间判断
+        order.setUpdateTime(now);
         return order;
     }
 }
@@ -0,0 +1,196 @@
+package com.mars.mall.service.impl;
+
+import com.google.gson.Gson;
+import com.mars.mall.consts.MallConst;
+import com.mars.mall.dao.OrderMapper;
+import com.mars.mall.enums.OrderTicketStatusEnum;
+import com.mars.mall.enums.ResponseEnum;
+import com.mars.mall.idgen.OrderNoGenerator;
+import com.mars.mall.pojo.OrderSubmitMessage;
+import com.mars.mall.service.IOrderService;
+import com.mars.mall.service.IOrderSubmitService;
+import com.mars.mall.vo.OrderTicketVo;
+import com.mars.mall.vo.OrderVo;
+import com.mars.mall.vo.ResponseVo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @description: 异步下单service层
+ * 同步下单时请求线程要等整个下单事务完成，高峰期大量请求同时争抢数据库连接和行锁，响应时间抖动很大；
+ * 异步下单只生成订单号、写入凭证并把请求放进orderSubmit队列就返回，固定数量的消费者按顺序创建订单，
+ * 同时进行的下单事务数量由消费者数量限制，客户端用订单号轮询结果
+ * 队列中排队的请求超过 mall.order.async.max-queue-depth 时直接拒绝，不让排队时间无限增长
+ * @author: Mars
+ * @create: 2022-03-31 10:20
+ **/
+@Slf4j
+@Service
+public class OrderSubmitServiceImpl implements IOrderSubmitService {
+
+    private final static String FIELD_UID = "uid";
+
+    private final static String FIELD_STATUS = "status";
+
+    private final static String FIELD_MSG = "msg";
+
+    @Value("${mall.order.async.max-queue-depth:2000}")
+    private int maxQueueDepth;
+
+    @Value("${mall.order.async.depth-check-interval-ms:200}")
+    private long depthCheckIntervalMs;
+
+    @Value("${mall.order.async.ticket-ttl-seconds:600}")
+    private long ticketTtlSeconds;
+
+    @Autowired
+    private IOrderService orderService;
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    @Autowired
+    private OrderNoGenerator orderNoGenerator;
+
+    @Autowired
+    private AmqpTemplate amqpTemplate;
+
+    @Autowired
+    private RabbitAdmin rabbitAdmin;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    private final Gson gson = new Gson();
+
+    //最近一次读到的队列深度，两次读取之间本节点入队的请求直接加在上面
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    private final AtomicLong depthCheckedAt = new AtomicLong();
+
+    @Override
+    public ResponseVo<OrderTicketVo> submit(Integer uid, Integer shippingId) {
+        if (queueDepth() >= maxQueueDepth) {
+            return ResponseVo.error(ResponseEnum.ORDER_BUSY);
+        }
+        Long orderNo = orderNoGenerator.nextId();
+        String key = ticketKey(orderNo);
+        Map<String, String> ticket = new HashMap<>();
+        ticket.put(FIELD_UID, String.valueOf(uid));
+        ticket.put(FIELD_STATUS, String.valueOf(OrderTicketStatusEnum.QUEUED.getCode()));
+        redisTemplate.opsForHash().putAll(key, ticket);
+        redisTemplate.expire(key, ticketTtlSeconds, TimeUnit.SECONDS);
+        try {
+            amqpTemplate.convertAndSend(MallConst.ORDER_SUBMIT_QUEUE,
+                    gson.toJson(new OrderSubmitMessage(orderNo, uid, shippingId)));
+        } catch (AmqpException e) {
+            log.error("异步下单入队失败, uid={}, orderNo={}", uid, orderNo, e);
+            redisTemplate.delete(key);
+            return ResponseVo.error(ResponseEnum.ERROR);
+        }
+        queueDepth.incrementAndGet();
+
+        OrderTicketVo orderTicketVo = new OrderTicketVo();
+        orderTicketVo.setOrderNo(orderNo);
+        orderTicketVo.setStatus(OrderTicketStatusEnum.QUEUED.getCode());
+        return ResponseVo.success(orderTicketVo);
+    }
+
+    @Override
+    public ResponseVo<OrderTicketVo> ticket(Integer uid, Long orderNo) {
+        HashOperations<String, String, String> opsForHash = redisTemplate.opsForHash();
+        Map<String, String> ticket = opsForHash.entries(ticketKey(orderNo));
+        if (ticket.isEmpty() || !String.valueOf(uid).equals(ticket.get(FIELD_UID))) {
+            return ResponseVo.error(ResponseEnum.ORDER_NOT_EXIST);
+        }
+        OrderTicketVo orderTicketVo = new OrderTicketVo();
+        orderTicketVo.setOrderNo(orderNo);
+        orderTicketVo.setStatus(Integer.valueOf(ticket.get(FIELD_STATUS)));
+        orderTicketVo.setMsg(ticket.get(FIELD_MSG));
+        if (OrderTicketStatusEnum.SUCCESS.getCode().equals(orderTicketVo.getStatus())) {
+            orderTicketVo.setOrderVo(orderService.detail(uid, orderNo).getData());
+        }
+        return ResponseVo.success(orderTicketVo);
+    }
+
+    /**
+     * 消息可能重复投递(消费者在确认前宕机)：订单号已经存在说明上次已经下单成功，不再重复创建
+     * 凭证已过期说明排队时间超过了凭证有效期，用户已经查不到结果，不再下单，避免生成用户不知道的订单；
+     * 凭证还在时重新设置过期时间，保证下单过程中不会过期
+     * 下单失败不重新入队，失败原因写进凭证，由用户决定是否重新下单
+     */
+    @Override
+    public void process(OrderSubmitMessage message) {
+        Long orderNo = message.getOrderNo();
+        if (orderMapper.selectByOrderNo(orderNo) != null) {
+            finish(orderNo, OrderTicketStatusEnum.SUCCESS, null);
+            return;
+        }
+        if (!Boolean.TRUE.equals(redisTemplate.expire(ticketKey(orderNo), ticketTtlSeconds, TimeUnit.SECONDS))) {
+            log.warn("异步下单凭证已过期, 丢弃下单请求, message={}", message);
+            return;
+        }
+        try {
+            ResponseVo<OrderVo> responseVo = orderService.create(message.getUid(), message.getShippingId(), orderNo);
+            if (ResponseEnum.SUCCESS.getCode().equals(responseVo.getStatus())) {
+                finish(orderNo, OrderTicketStatusEnum.SUCCESS, null);
+            } else {
+                finish(orderNo, OrderTicketStatusEnum.FAILED, responseVo.getMsg());
+            }
+        } catch (DuplicateKeyException e) {
+            finish(orderNo, OrderTicketStatusEnum.SUCCESS, null);
+        } catch (RuntimeException e) {
+            log.error("异步下单失败, message={}", message, e);
+            finish(orderNo, OrderTicketStatusEnum.FAILED, ResponseEnum.ERROR.getDesc());
+        }
+    }
+
+    //凭证已过期时不再写入，避免留下没有过期时间的键
+    private void finish(Long orderNo, OrderTicketStatusEnum status, String msg) {
+        String key = ticketKey(orderNo);
+        if (!Boolean.TRUE.equals(redisTemplate.hasKey(key))) {
+            return;
+        }
+        Map<String, String> result = new HashMap<>();
+        result.put(FIELD_STATUS, String.valueOf(status.getCode()));
+        if (msg != null) {
+            result.put(FIELD_MSG, msg);
+        }
+        redisTemplate.opsForHash().putAll(key, result);
+        redisTemplate.expire(key, ticketTtlSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 队列中等待消费的消息数，每隔depthCheckIntervalMs向rabbitmq查询一次，只有一个线程去查
+     */
+    private int queueDepth() {
+        long checkedAt = depthCheckedAt.get();
+        long now = System.currentTimeMillis();
+        if (now - checkedAt >= depthCheckIntervalMs && depthCheckedAt.compareAndSet(checkedAt, now)) {
+            Properties properties = rabbitAdmin.getQueueProperties(MallConst.ORDER_SUBMIT_QUEUE);
+            if (properties != null) {
+                queueDepth.set((Integer) properties.get(RabbitAdmin.QUEUE_MESSAGE_COUNT));
+            }
+        }
+        return queueDepth.get();
+    }
+
+    private String ticketKey(Long orderNo) {
+        return String.format(MallConst.ORDER_TICKET_REDIS_KEY_TEMPLATE, orderNo);
+    }
+}
@@ -0,0 +1,321 @@
+package com.mars.mall.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mars.mall.cache.CategorySnapshot;
+import com.mars.mall.dao.ProductMapper;
+import com.mars.mall.enums.ProductStatusEnum;
+import com.mars.mall.enums.ResponseEnum;
+import com.mars.mall.importer.CsvProductRowReader;
+import com.mars.mall.importer.JsonProductRowReader;
+import com.mars.mall.importer.ProductRowReader;
+import com.mars.mall.pojo.Product;
+import com.mars.mall.service.ICategoryService;
+import com.mars.mall.service.IFlashSaleService;
+import com.mars.mall.service.IProductImportService;
+import com.mars.mall.service.IStockBucketService;
+import com.mars.mall.vo.ProductImportErrorVo;
+import com.mars.mall.vo.ProductImportVo;
+import com.mars.mall.vo.ResponseVo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @description: 商品批量导入
+ * 逐行读取文件并校验，校验通过的行攒够batch-size条后写入：带id的行用一条多行insert ... on duplicate key update，
+ * 不带id的行用一条多行insert并回填生成的id，每批一个事务，大文件不会产生长事务；某一批写入失败时逐行重试，找出出错的行，其余行照常写入
+ * 商品缓存和搜索索引由CacheEvictInterceptor在每批写入后失效，只失效被更新的商品，新增的商品只加入搜索索引
+ * @author: Mars
+ * @create: 2022-03-26 10:30
+ **/
+@Slf4j
+@Service
+public class ProductImportServiceImpl implements IProductImportService {
+
+    public final static String FORMAT_CSV = "csv";
+
+    public final static String FORMAT_JSON = "json";
+
+    private final static int NAME_MAX_LENGTH = 100;
+
+    private final static int SUBTITLE_MAX_LENGTH = 200;
+
+    private final static int MAIN_IMAGE_MAX_LENGTH = 500;
+
+    @Value("${mall.product.import.batch-size:500}")
+    private int batchSize;
+
+    @Value("${mall.product.import.max-errors:1000}")
+    private int maxErrors;
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Autowired
+    private ICategoryService categoryService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private IStockBucketService stockBucketService;
+
+    @Autowired
+    private IFlashSaleService flashSaleService;
+
+    @Override
+    public ResponseVo<ProductImportVo> importProducts(InputStream inputStream, String format) {
+        ProductRowReader reader;
+        try {
+            if (FORMAT_CSV.equalsIgnoreCase(format)) {
+                reader = new CsvProductRowReader(inputStream);
+            } else if (FORMAT_JSON.equalsIgnoreCase(format)) {
+                reader = new JsonProductRowReader(objectMapper, inputStream);
+            } else {
+                return ResponseVo.error(ResponseEnum.PARAM_ERROR, "只支持csv和json格式");
+            }
+        } catch (IOException e) {
+            return ResponseVo.error(ResponseEnum.PARAM_ERROR, "文件读取失败");
+        }
+
+        long start = System.currentTimeMillis();
+        CategorySnapshot snapshot = categoryService.snapshot();
+        ImportContext context = new ImportContext();
+        List<Product> batch = new ArrayList<>(batchSize);
+        List<Integer> batchRows = new ArrayList<>(batchSize);
+        boolean completed = false;
+        try (ProductRowReader rowReader = reader) {
+            Map<String, String> row;
+            while ((row = rowReader.next()) != null) {
+                context.total++;
+                try {
+                    batch.add(toProduct(row, snapshot));
+                    batchRows.add(context.total);
+                } catch (IllegalArgumentException e) {
+                    context.error(context.total, e.getMessage());
+                }
+                if (batch.size() >= batchSize) {
+                    flush(batch, batchRows, context);
+                }
+            }
+            completed = true;
+        } catch (IOException e) {
+            log.warn("商品导入文件解析失败, 已读取{}行", context.total, e);
+            context.error(context.total + 1, "文件解析失败，后续内容未导入：" + e.getMessage());
+        }
+        flush(batch, batchRows, context);//文件解析失败时，出错前校验通过的行照常写入
+
+        long elapsedMillis = Math.max(1, System.currentTimeMillis() - start);
+        ProductImportVo productImportVo = new ProductImportVo();
+        productImportVo.setTotal(context.total);
+        productImportVo.setSucceeded(context.succeeded);
+        productImportVo.setFailed(context.failed);
+        productImportVo.setCompleted(completed);
+        productImportVo.setElapsedMillis(elapsedMillis);
+        productImportVo.setRowsPerSecond(context.total * 1000L / elapsedMillis);
+        productImportVo.setErrors(context.errors);
+        log.info("商品导入完成, 总行数={}, 成功={}, 失败={}, 耗时={}ms",
+                context.total, context.succeeded, context.failed, elapsedMillis);
+        return ResponseVo.success(productImportVo);
+    }
+
+    /**
+     * 写入一批商品，一批一个事务
+     */
+    private void flush(List<Product> batch, List<Integer> batchRows, ImportContext context) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.execute(status -> write(batch));
+            context.succeeded += batch.size();
+        } catch (DataAccessException e) {
+            log.warn("商品导入批量写入失败, 逐行重试, 行号={}~{}", batchRows.get(0), batchRows.get(batchRows.size() - 1), e);
+            for (int i = 0; i < batch.size(); i++) {
+                Product product = batch.get(i);
+                try {
+                    transactionTemplate.execute(status -> write(Collections.singletonList(product)));
+                    context.succeeded++;
+                } catch (DataAccessException rowException) {
+                    context.error(batchRows.get(i), "写入失败：" + rowException.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+        batch.clear();
+        batchRows.clear();
+    }
+
+    /**
+     * 带id的商品更新或按id新增，不带id的商品新增，返回影响的行数
+     * 分桶、秒杀商品的库存不在mall_product.stock上扣减，导入的库存会覆盖掉实际的库存，所以这些商品不更新库存
+     */
+    private int write(List<Product> productList) {
+        List<Product> upsertList = new ArrayList<>();
+        List<Product> insertList = new ArrayList<>();
+        for (Product product : productList) {
+            if (product.getId() == null) {
+                insertList.add(product);
+            } else {
+                upsertList.add(product);
+            }
+        }
+        int rows = 0;
+        if (!upsertList.isEmpty()) {
+            Set<Integer> keepStockIdSet = keepStockIdSetOf(upsertList);
+            List<Product> keepStockList = new ArrayList<>();
+            List<Product> stockList = new ArrayList<>();
+            for (Product product : upsertList) {
+                (keepStockIdSet.contains(product.getId()) ? keepStockList : stockList).add(product);
+            }
+            if (!stockList.isEmpty()) {
+                rows += productMapper.batchUpsert(stockList, false);
+            }
+            if (!keepStockList.isEmpty()) {
+                rows += productMapper.batchUpsert(keepStockList, true);
+            }
+        }
+        if (!insertList.isEmpty()) {
+            rows += productMapper.batchInsert(insertList);
+        }
+        return rows;
+    }
+
+    /**
+     * 找出分桶、秒杀商品
+     */
+    private Set<Integer> keepStockIdSetOf(List<Product> upsertList) {
+        Set<Integer> idSet = new HashSet<>();
+        for (Product product : upsertList) {
+            idSet.add(product.getId());
+        }
+        Set<Integer> keepStockIdSet = new HashSet<>(stockBucketService.bucketedProductIds(idSet));
+        for (Integer id : idSet) {
+            if (flashSaleService.isFlash(id)) {
+                keepStockIdSet.add(id);
+            }
+        }
+        if (!keepStockIdSet.isEmpty()) {
+            log.info("商品导入不更新分桶、秒杀商品的库存, productIdSet={}", keepStockIdSet);
+        }
+        return keepStockIdSet;
+    }
+
+    /**
+     * 校验一行数据并转换成商品
+     * @throws IllegalArgumentException 校验失败，message是错误原因
+     */
+    private Product toProduct(Map<String, String> row, CategorySnapshot snapshot) {
+        Product product = new Product();
+        product.setId(intOf(row, "id", false));
+
+        Integer categoryId = intOf(row, "categoryId", true);
+        if (!snapshot.contains(categoryId)) {
+            throw new IllegalArgumentException("类目不存在：" + categoryId);
+        }
+        product.setCategoryId(categoryId);
+
+        product.setName(textOf(row, "name", NAME_MAX_LENGTH, true));
+        product.setSubtitle(textOf(row, "subtitle", SUBTITLE_MAX_LENGTH, false));
+        product.setMainImage(textOf(row, "mainImage", MAIN_IMAGE_MAX_LENGTH, false));
+        product.setSubImages(textOf(row, "subImages", Integer.MAX_VALUE, false));
+        product.setDetail(textOf(row, "detail", Integer.MAX_VALUE, false));
+
+        String price = row.get("price");
+        if (price == null) {
+            throw new IllegalArgumentException("price不能为空");
+        }
+        try {
+            product.setPrice(new BigDecimal(price).setScale(2, RoundingMode.HALF_UP));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("price格式错误：" + price);
+        }
+        if (product.getPrice().signum() < 0) {
+            throw new IllegalArgumentException("price不能小于0");
+        }
+
+        Integer stock = intOf(row, "stock", true);
+        if (stock < 0) {
+            throw new IllegalArgumentException("stock不能小于0");
+        }
+        product.setStock(stock);
+
+        Integer status = intOf(row, "status", false);
+        if (status == null) {
+            status = ProductStatusEnum.ON_SALE.getCode();
+        }
+        Integer code = status;
+        if (Arrays.stream(ProductStatusEnum.values()).noneMatch(e -> e.getCode().equals(code))) {
+            throw new IllegalArgumentException("status不正确：" + status);
+        }
+        product.setStatus(status);
+
+        Date now = new Date();
+        product.setCreateTime(now);
+        product.setUpdateTime(now);
+        return product;
+    }
+
+    private Integer intOf(Map<String, String> row, String key, boolean required) {
+        String value = row.get(ProductRowReader.normalizeKey(key));
+        if (value == null) {
+            if (required) {
+                throw new IllegalArgumentException(key + "不能为空");
+            }
+            return null;
+        }
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + "格式错误：" + value);
+        }
+    }
+
+    private String textOf(Map<String, String> row, String key, int maxLength, boolean required) {
+        String value = row.get(ProductRowReader.normalizeKey(key));
+        if (value == null && required) {
+            throw new IllegalArgumentException(key + "不能为空");
+        }
+        if (value != null && value.length() > maxLength) {
+            throw new IllegalArgumentException(key + "长度不能超过" + maxLength);
+        }
+        return value;
+    }
+
+    //一次导入过程中的计数和错误
+    private class ImportContext {
+
+        private int total;
+
+        private int succeeded;
+
+        private int failed;
+
+        private final List<ProductImportErrorVo> errors = new ArrayList<>();
+
+        private void error(int row, String message) {
+            failed++;
+            if (errors.size() < maxErrors) {
+                errors.add(new ProductImportErrorVo(row, message));
+            }
+        }
+    }
+}
@@ -2,20 +2,28 @@ package com.mars.mall.service.impl;
 
 import com.github.pagehelper.PageHelper;
 import com.github.pagehelper.PageInfo;
+import com.mars.mall.cache.CategorySnapshot;
+import com.mars.mall.cache.ProductStockCache;
 import com.mars.mall.dao.ProductMapper;
 import com.mars.mall.enums.ProductStatusEnum;
 import com.mars.mall.enums.ResponseEnum;
 import com.mars.mall.pojo.Product;
+import com.mars.mall.search.ProductSearchIndex;
 import com.mars.mall.service.ICategoryService;
 import com.mars.mall.service.IProductService;
+import com.mars.mall.vo.ProductCursorPageVo;
 import com.mars.mall.vo.ProductDetailVo;
+import com.mars.mall.vo.ProductSearchPageVo;
 import com.mars.mall.vo.ProductVo;
 import com.mars.mall.vo.ResponseVo;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -30,12 +38,22 @@ import java.util.stream.Collectors;
 @Service
 public class ProductServiceImpl implements IProductService {
 
+    private final static int MAX_CURSOR_PAGE_SIZE = 100;//游标分页每页最多条数
+
+    private final static int MAX_SEARCH_PAGE_SIZE = 100;//搜索每页最多条数
+
     @Autowired
     private ICategoryService categoryService; //需要使用到类目service提供的功能
 
     @Autowired
     private ProductMapper productMapper;
 
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private ProductStockCache productStockCache;
+
     /**
      * 商品页面展示
      * @param categoryId 商品所属类目的id
@@ -45,22 +63,13 @@ public class ProductServiceImpl implements IProductService {
      */
     @Override
     public ResponseVo<PageInfo> list(Integer categoryId, Integer pageNum, Integer pageSize) {
-        Set<Integer> categoryIdSet = new HashSet<>();
-        if (categoryId != null) {
-            categoryService.findSubCategoryId(categoryId,categoryIdSet);
-            categoryIdSet.add(categoryId);//上面方法调用只是把该类目的子类目加入集合，这里要把它自己本身也加入
-        }
+        Set<Integer> categoryIdSet = categoryIdSetOf(categoryId);
 
         PageHelper.startPage(pageNum,pageSize);//先设置好页面的分页
 
         //使用stream+lambda把类目id集合中的产品都查询出来，并封装到productVoList
         List<Product> productsList = productMapper.selectByCategoryIdSet(categoryIdSet);
-        List<ProductVo> productVoList = productsList.stream()
-                .map(e -> {
-                    ProductVo productVo = new ProductVo();
-                    BeanUtils.copyProperties(e, productVo);
-                    return productVo;
-                }).collect(Collectors.toList());
+        List<ProductVo> productVoList = toProductVoList(productsList);
 
         PageInfo pageInfo = new PageInfo(productsList); //设置分页页面信息
         pageInfo.setList(productVoList); //将商品信息展示在分好的页面上
@@ -68,6 +77,69 @@ public class ProductServiceImpl implements IProductService {
         return ResponseVo.success(pageInfo);
     }
 
+    /**
+     * 游标分页的商品页面展示
+     * 按主键id升序排序，用 id > 上一页最后一个id 作为查询条件代替offset，并且不执行count查询，
+     * 不管翻到多深，每页都只扫描pageSize条记录
+     * @param categoryId 商品所属类目的id
+     * @param cursor 上一页返回的游标，第一页为null或空串
+     * @param pageSize 页面条目数量
+     * @return
+     */
+    @Override
+    public ResponseVo<ProductCursorPageVo> listByCursor(Integer categoryId, String cursor, Integer pageSize) {
+        Integer lastId = null;
+        if (!StringUtils.isEmpty(cursor)) {
+            lastId = decodeCursor(cursor);
+            if (lastId == null) {
+                return ResponseVo.error(ResponseEnum.PARAM_ERROR, "游标不正确");
+            }
+        }
+        int limit = Math.max(1, Math.min(pageSize, MAX_CURSOR_PAGE_SIZE));
+
+        //多查一条，用来判断是否还有下一页
+        List<Product> productList = productMapper.selectByCategoryIdSetAfter(categoryIdSetOf(categoryId), lastId, limit + 1);
+        boolean hasNextPage = productList.size() > limit;
+        if (hasNextPage) {
+            productList = productList.subList(0, limit);
+        }
+
+        ProductCursorPageVo pageVo = new ProductCursorPageVo();
+        pageVo.setList(toProductVoList(productList));
+        pageVo.setHasNextPage(hasNextPage);
+        pageVo.setNextCursor(hasNextPage ? encodeCursor(productList.get(productList.size() - 1).getId()) : null);
+        return ResponseVo.success(pageVo);
+    }
+
+    /**
+     * 商品搜索，查询进程内的倒排索引，不访问数据库
+     * @param keyword 关键词，中文按二元组、英文和数字按单词匹配
+     * @param categoryId 商品所属类目的id，包含其所有子类目
+     * @param pageNum 页码
+     * @param pageSize 页面条目数量
+     * @return
+     */
+    @Override
+    public ResponseVo<ProductSearchPageVo> search(String keyword, Integer categoryId, Integer pageNum, Integer pageSize) {
+        if (StringUtils.isEmpty(keyword) || StringUtils.isEmpty(keyword.trim())) {
+            return ResponseVo.error(ResponseEnum.PARAM_ERROR, "搜索关键词不能为空");
+        }
+        int num = Math.max(1, pageNum);
+        int size = Math.max(1, Math.min(pageSize, MAX_SEARCH_PAGE_SIZE));
+
+        CategorySnapshot snapshot = categoryService.snapshot();
+        ProductSearchIndex.SearchResult result = productSearchIndex.search(keyword,
+                categoryId == null ? null : id -> snapshot.isDescendantOrSelf(categoryId, id),
+                (num - 1) * size, size);
+
+        ProductSearchPageVo pageVo = new ProductSearchPageVo();
+        pageVo.setList(result.getProductVoList());
+        pageVo.setTotal(result.getTotal());
+        pageVo.setPageNum(num);
+        pageVo.setPageSize(size);
+        return ResponseVo.success(pageVo);
+    }
+
     /**
      * 商品详情页面展示
      * @param productId 商品id
@@ -75,7 +147,11 @@ public class ProductServiceImpl implements IProductService {
      */
     @Override
     public ResponseVo<ProductDetailVo> detail(Integer productId) {
+        //只有商品详情需要detail、subImages两个大文本列，直接查数据库，不经过商品缓存(缓存的是精简商品)
         Product product = productMapper.selectByPrimaryKey(productId);
+        if (product == null) {
+            return ResponseVo.error(ResponseEnum.PRODUCT_NOT_EXIST);
+        }
         //商品下架或者被删除，则抛出错误
         if (product.getStatus().equals(ProductStatusEnum.OFF_SALE.getCode())
                 || product.getStatus().equals(ProductStatusEnum.DELETE.getCode())){
@@ -85,7 +161,48 @@ public class ProductServiceImpl implements IProductService {
         ProductDetailVo productDetailVo = new ProductDetailVo();
         BeanUtils.copyProperties(product,productDetailVo);
         //敏感数据处理
-        productDetailVo.setStock(product.getStock() > 100 ? 100 :product.getStock());//隐瞒真实库存
+        //展示的库存读redis中的库存读模型，和加购校验看到的一致
+        Integer stock = productStockCache.get(productId);
+        if (stock == null) {
+            stock = product.getStock();
+        }
+        productDetailVo.setStock(stock > 100 ? 100 : stock);//隐瞒真实库存
         return ResponseVo.success(productDetailVo);
     }
+
+    /**
+     * 查询类目id集合：该类目本身及其所有子类目，categoryId为null时返回空集合(不限类目)
+     */
+    private Set<Integer> categoryIdSetOf(Integer categoryId) {
+        Set<Integer> categoryIdSet = new HashSet<>();
+        if (categoryId != null) {
+            categoryService.findSubCategoryId(categoryId,categoryIdSet);
+            categoryIdSet.add(categoryId);//上面方法调用只是把该类目的子类目加入集合，这里要把它自己本身也加入
+        }
+        return categoryIdSet;
+    }
+
+    //使用stream+lambda把商品封装到productVoList
+    private List<ProductVo> toProductVoList(List<Product> productList) {
+        return productList.stream()
+                .map(e -> {
+                    ProductVo productVo = new ProductVo();
+                    BeanUtils.copyProperties(e, productVo);
+                    return productVo;
+                }).collect(Collectors.toList());
+    }
+
+    //游标对客户端不透明，内容是本页最后一个商品id
+    private String encodeCursor(Integer lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(String.valueOf(lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Integer decodeCursor(String cursor) {
+        try {
+            return Integer.valueOf(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
 }
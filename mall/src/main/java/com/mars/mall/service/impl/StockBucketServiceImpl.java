@@ -0,0 +1,216 @@
+package com.mars.mall.service.impl;
+
+import com.mars.mall.dao.ProductMapper;
+import com.mars.mall.dao.ProductStockBucketMapper;
+import com.mars.mall.enums.ProductStatusEnum;
+import com.mars.mall.enums.ResponseEnum;
+import com.mars.mall.pojo.ProductStockBucket;
+import com.mars.mall.service.IFlashSaleService;
+import com.mars.mall.service.IStockBucketService;
+import com.mars.mall.vo.ResponseVo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @description: 商品库存分桶service层
+ * 分桶商品的库存在mall_product_stock_bucket中拆成多行，下单时随机选一个库存足够的桶扣减，
+ * 并发的订单大多落在不同的行上；没有单个桶够扣时按桶编号顺序从多个桶凑齐
+ * mall_product.stock只是各桶之和的副本，由定时任务同步，用于展示和下单前的预校验
+ * 拆分、合并之前已经读到"未分桶"的订单仍会直接扣mall_product.stock并被同步覆盖，所以应在流量高峰前拆分
+ * 加锁顺序：商品行(扣减、加回为共享锁，拆分、合并、同步为排他锁)在前，桶按编号递增在后
+ * @author: Mars
+ * @create: 2022-03-29 10:30
+ **/
+@Slf4j
+@Service
+public class StockBucketServiceImpl implements IStockBucketService {
+
+    @Value("${mall.product.stock-bucket.max-count:64}")
+    private int maxBucketCount;
+
+    @Autowired
+    private ProductStockBucketMapper productStockBucketMapper;
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Autowired
+    private IFlashSaleService flashSaleService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Override
+    @Transactional
+    public ResponseVo<List<ProductStockBucket>> split(Integer productId, Integer bucketCount) {
+        if (bucketCount == null || bucketCount < 1 || bucketCount > maxBucketCount) {
+            return ResponseVo.error(ResponseEnum.PARAM_ERROR, "桶数量应在1到" + maxBucketCount + "之间");
+        }
+        if (flashSaleService.isFlash(productId)) {
+            return ResponseVo.error(ResponseEnum.PARAM_ERROR, "秒杀商品的库存在redis中扣减，不能分桶");
+        }
+        Integer stock = productMapper.selectStockForUpdate(productId);
+        if (stock == null) {
+            return ResponseVo.error(ResponseEnum.PRODUCT_NOT_EXIST);
+        }
+        List<ProductStockBucket> oldBucketList = productStockBucketMapper.selectByProductIdForUpdate(productId);
+        int total = oldBucketList.isEmpty() ? stock : sumOf(oldBucketList);
+
+        //平均拆分，除不尽的部分前面的桶各多分1个
+        List<ProductStockBucket> bucketList = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            ProductStockBucket bucket = new ProductStockBucket();
+            bucket.setProductId(productId);
+            bucket.setBucketNo(i);
+            bucket.setStock(total / bucketCount + (i < total % bucketCount ? 1 : 0));
+            bucketList.add(bucket);
+        }
+        productStockBucketMapper.deleteByProductId(productId);
+        productStockBucketMapper.batchInsert(bucketList);
+        updateStock(productId, total);
+        log.info("商品库存分桶, productId={}, stock={}, bucketCount={}", productId, total, bucketCount);
+        return ResponseVo.success(bucketList);
+    }
+
+    @Override
+    @Transactional
+    public ResponseVo<Integer> merge(Integer productId) {
+        if (productMapper.selectStockForUpdate(productId) == null) {
+            return ResponseVo.error(ResponseEnum.PRODUCT_NOT_EXIST);
+        }
+        List<ProductStockBucket> bucketList = productStockBucketMapper.selectByProductIdForUpdate(productId);
+        if (bucketList.isEmpty()) {
+            return ResponseVo.error(ResponseEnum.PARAM_ERROR, "商品库存没有分桶");
+        }
+        int total = sumOf(bucketList);
+        productStockBucketMapper.deleteByProductId(productId);
+        updateStock(productId, total);
+        log.info("商品库存合并, productId={}, stock={}", productId, total);
+        return ResponseVo.success(total);
+    }
+
+    @Override
+    public Set<Integer> bucketedProductIds(Collection<Integer> productIds) {
+        if (productIds.isEmpty()) {
+            return new HashSet<>();
+        }
+        return new HashSet<>(productStockBucketMapper.selectBucketedProductIds(productIds));
+    }
+
+    /**
+     * 先给商品行加共享锁：并发的订单互不阻塞，只和拆分、合并、同步(排他锁)互斥，扣减期间商品也不会被下架
+     * 再从随机一个库存足够的桶开始，按桶编号递增扣减：先用条件update整单扣这个桶，
+     * 被并发订单抢空时锁定读取后面的桶凑齐。同一商品的桶总是按编号递增加锁(条件update失败也会持有行锁)，订单之间不会死锁，
+     * 代价是不回头扣编号更小的桶：起始桶被抢空且后面的桶不够时返回库存不足
+     */
+    @Override
+    public boolean decrease(Integer productId, Integer quantity) {
+        Integer status = productMapper.selectStatusForShare(productId);
+        if (!ProductStatusEnum.ON_SALE.getCode().equals(status)) {
+            return false;
+        }
+        List<ProductStockBucket> bucketList = productStockBucketMapper.selectByProductId(productId);
+        if (bucketList.isEmpty()) {
+            return false;
+        }
+        int start = startOf(bucketList, quantity);
+        ProductStockBucket first = bucketList.get(start);
+        if (first.getStock() >= quantity
+                && productStockBucketMapper.decrease(productId, first.getBucketNo(), quantity) > 0) {
+            return true;
+        }
+
+        int remaining = quantity;
+        for (int i = start; i < bucketList.size(); i++) {
+            Integer bucketNo = bucketList.get(i).getBucketNo();
+            Integer stock = productStockBucketMapper.selectStockForUpdate(productId, bucketNo);
+            int take = stock == null ? 0 : Math.min(remaining, stock);
+            if (take > 0 && productStockBucketMapper.decrease(productId, bucketNo, take) > 0) {
+                remaining -= take;
+                if (remaining == 0) {
+                    return true;
+                }
+            }
+        }
+        return false;//已扣减的部分由调用方回滚事务恢复
+    }
+
+    /**
+     * 随机选一个(不加锁读到的)库存足够的桶作为起点，没有单个桶够扣时从编号最小的桶开始凑
+     */
+    private int startOf(List<ProductStockBucket> bucketList, int quantity) {
+        List<Integer> candidateList = new ArrayList<>();
+        for (int i = 0; i < bucketList.size(); i++) {
+            if (bucketList.get(i).getStock() >= quantity) {
+                candidateList.add(i);
+            }
+        }
+        return candidateList.isEmpty() ? 0 : candidateList.get(ThreadLocalRandom.current().nextInt(candidateList.size()));
+    }
+
+    /**
+     * 和扣减一样先给商品行加共享锁，避免和同步、合并交错
+     */
+    @Override
+    public boolean increase(Integer productId, Integer quantity) {
+        productMapper.selectStatusForShare(productId);
+        ProductStockBucket emptiest = null;
+        for (ProductStockBucket bucket : productStockBucketMapper.selectByProductId(productId)) {
+            if (emptiest == null || bucket.getStock() < emptiest.getStock()) {
+                emptiest = bucket;
+            }
+        }
+        return emptiest != null && productStockBucketMapper.increase(productId, emptiest.getBucketNo(), quantity) > 0;
+    }
+
+    /**
+     * 不加锁找出不一致的商品，再逐个在事务中和拆分、合并一样先锁商品行，锁定读取各桶后写回，
+     * 避免把读到之后才被合并(桶已删除、mall_product.stock已经是合并结果)的旧值写回
+     */
+    @Override
+    public int sync() {
+        int synced = 0;
+        for (ProductStockBucket drift : productStockBucketMapper.selectStockDrift()) {
+            Boolean updated = transactionTemplate.execute(status -> {
+                Integer stock = productMapper.selectStockForUpdate(drift.getProductId());
+                List<ProductStockBucket> bucketList = productStockBucketMapper.selectByProductIdForUpdate(drift.getProductId());
+                if (stock == null || bucketList.isEmpty() || stock == sumOf(bucketList)) {
+                    return false;
+                }
+                updateStock(drift.getProductId(), sumOf(bucketList));
+                return true;
+            });
+            if (Boolean.TRUE.equals(updated)) {
+                synced++;
+            }
+        }
+        return synced;
+    }
+
+    private void updateStock(Integer productId, int stock) {
+        Map<Integer, Integer> stockMap = new TreeMap<>();
+        stockMap.put(productId, stock);
+        productMapper.updateStock(stockMap);
+    }
+
+    private int sumOf(List<ProductStockBucket> bucketList) {
+        int total = 0;
+        for (ProductStockBucket bucket : bucketList) {
+            total += bucket.getStock();
+        }
+        return total;
+    }
+}
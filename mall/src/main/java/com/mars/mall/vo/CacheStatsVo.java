@@ -0,0 +1,45 @@
+package com.mars.mall.vo;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.Data;
+
+/**
+ * @description: 本地缓存统计Vo，用来判断缓存是否值得开启
+ * @author: Mars
+ * @create: 2022-03-09 16:45
+ **/
+@Data
+public class CacheStatsVo {
+
+    private String name;//缓存名称
+
+    private Boolean enabled;//是否开启
+
+    private Long size;//当前条目数(估算值)
+
+    private Long hitCount;//命中次数
+
+    private Long missCount;//未命中次数
+
+    private Double hitRate;//命中率
+
+    private Long evictionCount;//因容量或过期被淘汰的次数
+
+    private Long loadCount;//从数据源加载的次数
+
+    private Double averageLoadMillis;//平均加载耗时(毫秒)
+
+    public static CacheStatsVo of(String name, boolean enabled, long size, CacheStats stats) {
+        CacheStatsVo cacheStatsVo = new CacheStatsVo();
+        cacheStatsVo.setName(name);
+        cacheStatsVo.setEnabled(enabled);
+        cacheStatsVo.setSize(size);
+        cacheStatsVo.setHitCount(stats.hitCount());
+        cacheStatsVo.setMissCount(stats.missCount());
+        cacheStatsVo.setHitRate(stats.hitRate());
+        cacheStatsVo.setEvictionCount(stats.evictionCount());
+        cacheStatsVo.setLoadCount(stats.loadCount());
+        cacheStatsVo.setAverageLoadMillis(stats.averageLoadPenalty() / 1_000_000);
+        return cacheStatsVo;
+    }
+}
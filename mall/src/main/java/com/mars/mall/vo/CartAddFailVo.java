@@ -0,0 +1,27 @@
+package com.mars.mall.vo;
+
+import com.mars.mall.enums.ResponseEnum;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @description: 批量添加购物车时单件商品的失败原因
+ * @author: Mars
+ * @create: 2022-03-14 09:52
+ **/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartAddFailVo {
+
+    private Integer productId;
+
+    private Integer status;//错误码，同ResponseEnum
+
+    private String msg;
+
+    public CartAddFailVo(Integer productId, ResponseEnum responseEnum) {
+        this(productId, responseEnum.getCode(), responseEnum.getDesc());
+    }
+}
@@ -0,0 +1,25 @@
+package com.mars.mall.vo;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * @description: 批量添加购物车的结果，成功的商品和失败的商品分开返回，外加合计值
+ * @author: Mars
+ * @create: 2022-03-14 09:50
+ **/
+@Data
+public class CartBatchAddVo {
+
+    private List<CartProductVo> cartProductVoList;//添加成功后的购物车商品
+
+    private List<CartAddFailVo> failList;//添加失败的商品及原因
+
+    private Boolean selectedAll; //全选
+
+    private BigDecimal cartTotalPrice; //购物车选中商品总价
+
+    private Integer cartTotalQuantity; //购物车商品数量
+}
@@ -0,0 +1,24 @@
+package com.mars.mall.vo;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * @description: 购物车增量Vo，修改购物车后只返回发生变化的商品和重新计算的合计，不再返回整个购物车
+ * @author: Mars
+ * @create: 2022-03-02 10:12
+ **/
+@Data
+public class CartDeltaVo {
+
+    private Integer productId;//发生变化的商品id，全选/全不选时为null
+
+    private CartProductVo cartProductVo;//变化后的购物车商品，商品被删除时为null
+
+    private Boolean selectedAll; //全选
+
+    private BigDecimal cartTotalPrice; //购物车选中商品总价
+
+    private Integer cartTotalQuantity; //购物车商品数量
+}
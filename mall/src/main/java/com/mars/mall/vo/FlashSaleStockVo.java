@@ -0,0 +1,20 @@
+package com.mars.mall.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * @description: 秒杀商品的redis库存
+ * @author: Mars
+ * @create: 2022-03-28 10:25
+ **/
+@Data
+@AllArgsConstructor
+public class FlashSaleStockVo {
+
+    private Integer productId;//商品id
+
+    private Integer stock;//redis中可预扣的库存
+
+    private Integer pending;//已预扣、还没同步到mysql的数量
+}
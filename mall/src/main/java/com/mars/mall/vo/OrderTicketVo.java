@@ -0,0 +1,20 @@
+package com.mars.mall.vo;
+
+import lombok.Data;
+
+/**
+ * @description: 异步下单凭证Vo，客户端用订单号轮询下单结果
+ * @author: Mars
+ * @create: 2022-03-31 10:10
+ **/
+@Data
+public class OrderTicketVo {
+
+    private Long orderNo;
+
+    private Integer status;//0-排队中，1-下单成功，2-下单失败
+
+    private String msg;//下单失败的原因
+
+    private OrderVo orderVo;//下单成功时的订单
+}
@@ -0,0 +1,20 @@
+package com.mars.mall.vo;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * @description: 游标分页的商品列表，不返回总数，客户端用nextCursor请求下一页
+ * @author: Mars
+ * @create: 2022-03-18 15:20
+ **/
+@Data
+public class ProductCursorPageVo {
+
+    private List<ProductVo> list;//本页商品
+
+    private String nextCursor;//下一页的游标，没有下一页时为null
+
+    private Boolean hasNextPage;//是否还有下一页
+}
@@ -0,0 +1,18 @@
+package com.mars.mall.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * @description: 商品导入中出错的一行
+ * @author: Mars
+ * @create: 2022-03-26 10:10
+ **/
+@Data
+@AllArgsConstructor
+public class ProductImportErrorVo {
+
+    private Integer row;//数据行号(从1开始，不含CSV表头)
+
+    private String message;//错误原因
+}
@@ -0,0 +1,28 @@
+package com.mars.mall.vo;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * @description: 商品导入报告
+ * @author: Mars
+ * @create: 2022-03-26 10:05
+ **/
+@Data
+public class ProductImportVo {
+
+    private Integer total;//读取的数据行数
+
+    private Integer succeeded;//写入成功的行数
+
+    private Integer failed;//校验或写入失败的行数
+
+    private Boolean completed;//是否读完了整个文件，文件格式错误时为false(出错前的行已经写入)
+
+    private Long elapsedMillis;//耗时(毫秒)
+
+    private Long rowsPerSecond;//吞吐量(行/秒)
+
+    private List<ProductImportErrorVo> errors;//出错的行，最多返回mall.product.import.max-errors条
+}
@@ -0,0 +1,22 @@
+package com.mars.mall.vo;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * @description: 商品搜索结果，按相关度排序的一页商品
+ * @author: Mars
+ * @create: 2022-03-24 11:05
+ **/
+@Data
+public class ProductSearchPageVo {
+
+    private List<ProductVo> list;//本页商品
+
+    private Integer total;//命中的商品总数
+
+    private Integer pageNum;//页码
+
+    private Integer pageSize;//每页条数
+}
@@ -0,0 +1,12 @@
+-- 给还没有访问时间的购物车补上访问时间，已有访问时间的不变(相当于ZADD NX)
+-- KEYS[1] 访问时间zset(cart_access)
+-- ARGV[1] 当前时间(毫秒)  ARGV[2..n] 用户id
+-- 返回值：补上访问时间的购物车数
+local added = 0
+for i = 2, #ARGV do
+    if not redis.call('ZSCORE', KEYS[1], ARGV[i]) then
+        redis.call('ZADD', KEYS[1], ARGV[1], ARGV[i])
+        added = added + 1
+    end
+end
+return added
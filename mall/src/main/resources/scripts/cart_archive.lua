@@ -0,0 +1,22 @@
+-- 把一批已写入mysql归档表的购物车从redis删除
+-- 读取购物车和执行本脚本之间用户可能又访问了购物车，访问时间晚于截止时间的跳过，不删除
+-- KEYS[1] 访问时间zset(cart_access)  KEYS[2] 已归档用户bitmap(cart_archived)
+-- KEYS[3..] 每两个一组：购物车hash(cart_uid)、合计值hash(cart_agg_uid)，和ARGV中的用户id一一对应
+-- ARGV[1] 截止时间(毫秒)  ARGV[2..] 用户id
+-- 返回值：被跳过的用户id
+local skipped = {}
+for i = 2, #ARGV do
+    local uid = ARGV[i]
+    local cartKey, aggKey = KEYS[(i - 1) * 2 + 1], KEYS[(i - 1) * 2 + 2]
+    local score = redis.call('ZSCORE', KEYS[1], uid)
+    if score and tonumber(score) > tonumber(ARGV[1]) then
+        skipped[#skipped + 1] = uid
+    else
+        if redis.call('EXISTS', cartKey) == 1 then
+            redis.call('SETBIT', KEYS[2], uid, 1)
+        end
+        redis.call('DEL', cartKey, aggKey)
+        redis.call('ZREM', KEYS[1], uid)
+    end
+end
+return skipped
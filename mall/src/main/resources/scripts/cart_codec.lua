@@ -0,0 +1,21 @@
+-- 购物车条目编解码，RedisScriptConfig 加载购物车脚本时拼接在脚本前面，各脚本共用一份
+-- 和 com.mars.mall.codec 中的 codec 一致：json 是整个条目的json，packed 是 quantity * 2 + 选中(1/0)
+
+-- 解码一个条目，按第一个字符区分格式，两种格式都兼容
+-- 返回值：数量, 是否选中
+local function decode(value)
+    if string.sub(value, 1, 1) == '{' then
+        local cart = cjson.decode(value)
+        return cart['quantity'], cart['productSelected']
+    end
+    local packed = tonumber(value)
+    return math.floor(packed / 2), (packed % 2 == 1)
+end
+
+-- 按写入格式(json/packed)编码一个条目
+local function encode(productId, quantity, selected, format)
+    if format == 'json' then
+        return cjson.encode({ productId = productId, quantity = quantity, productSelected = selected })
+    end
+    return tostring(quantity * 2 + (selected and 1 or 0))
+end
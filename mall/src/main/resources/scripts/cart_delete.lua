@@ -0,0 +1,28 @@
+-- 原子删除购物车条目，同时更新购物车合计值
+-- KEYS[1] 购物车hash(cart_uid)  KEYS[2] 合计值hash(cart_agg_uid)
+-- ARGV[1] 商品id，选中条目按合计值hash中记下的单价(price_{商品id})扣减总价
+-- 返回值：被删除的条目，条目不存在时返回nil
+-- decode/encode 来自 cart_codec.lua，加载时拼接在本脚本前面
+
+local value = redis.call('HGET', KEYS[1], ARGV[1])
+if not value then
+    return nil
+end
+redis.call('HDEL', KEYS[1], ARGV[1])
+
+if redis.call('HLEN', KEYS[1]) == 0 then
+    redis.call('DEL', KEYS[2])
+    return value
+end
+
+local quantity, selected = decode(value)
+redis.call('HINCRBY', KEYS[2], 'quantity', -quantity)
+redis.call('HINCRBY', KEYS[2], 'lines', -1)
+if selected then
+    local priceField = 'price_' .. ARGV[1]
+    local price = tonumber(redis.call('HGET', KEYS[2], priceField) or 0)
+    redis.call('HINCRBY', KEYS[2], 'selected', -1)
+    redis.call('HINCRBY', KEYS[2], 'selectedPrice', -price * quantity)
+    redis.call('HDEL', KEYS[2], priceField)
+end
+return value
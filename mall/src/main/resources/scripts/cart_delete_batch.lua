@@ -0,0 +1,45 @@
+-- 一次删除购物车中的多个条目(下单后清理已购买的商品)，同时更新购物车合计值
+-- KEYS[1] 购物车hash(cart_uid)  KEYS[2] 合计值hash(cart_agg_uid)
+-- ARGV 商品id，选中条目按合计值hash中记下的单价(price_{商品id})扣减总价
+-- 返回值：实际删除的条目数
+-- decode/encode 来自 cart_codec.lua，加载时拼接在本脚本前面
+
+local fields, priceFields = {}, {}
+for i = 1, #ARGV do
+    fields[i] = ARGV[i]
+    priceFields[i] = 'price_' .. ARGV[i]
+end
+if #fields == 0 then
+    return 0
+end
+
+local values = redis.call('HMGET', KEYS[1], unpack(fields))
+local removed = redis.call('HDEL', KEYS[1], unpack(fields))
+if removed == 0 then
+    return 0
+end
+if redis.call('HLEN', KEYS[1]) == 0 then
+    redis.call('DEL', KEYS[2])
+    return removed
+end
+
+local prices = redis.call('HMGET', KEYS[2], unpack(priceFields))
+local quantity, lines, selectedCount, selectedPrice = 0, 0, 0, 0
+for i = 1, #fields do
+    local value = values[i]
+    if value then
+        local q, selected = decode(value)
+        quantity = quantity + q
+        lines = lines + 1
+        if selected then
+            selectedCount = selectedCount + 1
+            selectedPrice = selectedPrice + tonumber(prices[i] or 0) * q
+        end
+    end
+end
+redis.call('HDEL', KEYS[2], unpack(priceFields))
+redis.call('HINCRBY', KEYS[2], 'quantity', -quantity)
+redis.call('HINCRBY', KEYS[2], 'lines', -lines)
+redis.call('HINCRBY', KEYS[2], 'selected', -selectedCount)
+redis.call('HINCRBY', KEYS[2], 'selectedPrice', -selectedPrice)
+return removed
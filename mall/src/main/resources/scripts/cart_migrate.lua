@@ -0,0 +1,12 @@
+-- 购物车条目懒迁移：值没有被别人改过时才按新格式写回，避免覆盖并发的修改
+-- KEYS[1] 购物车hash(cart_uid)
+-- ARGV 每三个一组：商品id、读到的旧值、新格式的值
+-- 返回值：迁移的条目数
+local migrated = 0
+for i = 1, #ARGV, 3 do
+    if redis.call('HGET', KEYS[1], ARGV[i]) == ARGV[i + 1] then
+        redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 2])
+        migrated = migrated + 1
+    end
+end
+return migrated
@@ -0,0 +1,40 @@
+-- 按购物车hash重新计算合计值(修复合计值偏差)，可以顺便把所有条目设为全选/全不选
+-- KEYS[1] 购物车hash(cart_uid)  KEYS[2] 合计值hash(cart_agg_uid)
+-- ARGV[1] 要设置的选中状态(true/false，空串表示不修改)  ARGV[2] 写入格式(json/packed)
+-- ARGV[3..] 每两个一组：商品id、商品单价(分)，用来计算选中商品总价，缺少的商品按0计
+-- 选中条目的单价重新记到合计值hash的 price_{商品id} 中
+-- 返回值：{商品总数量, 选中条目数, 条目数, 选中商品总价(分)}
+-- decode/encode 来自 cart_codec.lua，加载时拼接在本脚本前面
+
+local prices = {}
+for i = 3, #ARGV, 2 do
+    prices[ARGV[i]] = tonumber(ARGV[i + 1])
+end
+
+local totalQuantity, selectedCount, lines, selectedPrice = 0, 0, 0, 0
+local priceArgs = {}
+local entries = redis.call('HGETALL', KEYS[1])
+for i = 1, #entries, 2 do
+    local productId, value = entries[i], entries[i + 1]
+    local quantity, selected = decode(value)
+    if ARGV[1] ~= '' and selected ~= (ARGV[1] == 'true') then
+        selected = (ARGV[1] == 'true')
+        redis.call('HSET', KEYS[1], productId, encode(tonumber(productId), quantity, selected, ARGV[2]))
+    end
+    totalQuantity = totalQuantity + quantity
+    lines = lines + 1
+    if selected then
+        selectedCount = selectedCount + 1
+        selectedPrice = selectedPrice + (prices[productId] or 0) * quantity
+        priceArgs[#priceArgs + 1] = 'price_' .. productId
+        priceArgs[#priceArgs + 1] = prices[productId] or 0
+    end
+end
+
+--整个重写，去掉已经不在购物车中或不再选中的商品的单价
+redis.call('DEL', KEYS[2])
+if lines > 0 then
+    redis.call('HMSET', KEYS[2], 'quantity', totalQuantity, 'selected', selectedCount,
+            'lines', lines, 'selectedPrice', selectedPrice, unpack(priceArgs))
+end
+return { totalQuantity, selectedCount, lines, selectedPrice }
@@ -0,0 +1,13 @@
+-- 把归档的购物车条目写回redis，清除已归档标记
+-- 归档后用户可能已经加购了新的商品，已存在的条目保留，只补上缺少的条目
+-- KEYS[1] 购物车hash(cart_uid)  KEYS[2] 合计值hash(cart_agg_uid)  KEYS[3] 已归档用户bitmap(cart_archived)
+-- ARGV[1] 用户id  ARGV[2..] 每两个一组：商品id、编码后的购物车条目
+-- 返回值：补回的条目数
+local restored = 0
+for i = 2, #ARGV, 2 do
+    restored = restored + redis.call('HSETNX', KEYS[1], ARGV[i], ARGV[i + 1])
+end
+-- 删除合计值，下次读取时发现条目数对不上会按购物车hash重算
+redis.call('DEL', KEYS[2])
+redis.call('SETBIT', KEYS[3], ARGV[1], 0)
+return restored
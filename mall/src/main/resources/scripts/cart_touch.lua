@@ -0,0 +1,6 @@
+-- 记录购物车最近访问时间，同时返回该购物车是否已被归档
+-- KEYS[1] 访问时间zset(cart_access)  KEYS[2] 已归档用户bitmap(cart_archived)
+-- ARGV[1] 用户id  ARGV[2] 当前时间(毫秒)
+-- 返回值：1-已归档，需要恢复  0-未归档
+redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1])
+return redis.call('GETBIT', KEYS[2], ARGV[1])
@@ -0,0 +1,40 @@
+-- 原子修改购物车条目的数量/选中状态，同时更新购物车合计值
+-- KEYS[1] 购物车hash(cart_uid)  KEYS[2] 合计值hash(cart_agg_uid)
+-- ARGV[1] 商品id  ARGV[2] 新数量(空串表示不修改)  ARGV[3] 新选中状态(true/false，空串表示不修改)
+-- ARGV[4] 商品单价(分)  ARGV[5] 写入格式(json/packed)
+-- 选中条目的单价记在合计值hash的 price_{商品id} 中，取消选中时按记下的单价扣减
+-- 返回值：修改后的条目(按写入格式编码)，条目不存在时返回nil
+-- decode/encode 来自 cart_codec.lua，加载时拼接在本脚本前面
+
+local value = redis.call('HGET', KEYS[1], ARGV[1])
+if not value then
+    return nil
+end
+local price = tonumber(ARGV[4])
+
+local oldQuantity, oldSelected = decode(value)
+local quantity, selected = oldQuantity, oldSelected
+if ARGV[2] ~= '' then
+    quantity = tonumber(ARGV[2])
+end
+if ARGV[3] ~= '' then
+    selected = (ARGV[3] == 'true')
+end
+
+local encoded = encode(tonumber(ARGV[1]), quantity, selected, ARGV[5])
+redis.call('HSET', KEYS[1], ARGV[1], encoded)
+
+local priceField = 'price_' .. ARGV[1]
+redis.call('HINCRBY', KEYS[2], 'quantity', quantity - oldQuantity)
+if oldSelected then
+    local oldPrice = tonumber(redis.call('HGET', KEYS[2], priceField) or price)
+    redis.call('HINCRBY', KEYS[2], 'selected', -1)
+    redis.call('HINCRBY', KEYS[2], 'selectedPrice', -oldPrice * oldQuantity)
+    redis.call('HDEL', KEYS[2], priceField)
+end
+if selected then
+    redis.call('HINCRBY', KEYS[2], 'selected', 1)
+    redis.call('HINCRBY', KEYS[2], 'selectedPrice', price * quantity)
+    redis.call('HSET', KEYS[2], priceField, price)
+end
+return encoded
@@ -0,0 +1,48 @@
+-- 购物车条目原子新增/累加数量，同时更新购物车合计值，一次往返完成，可以一次处理多件商品
+-- KEYS[1] 购物车hash(cart_uid)  KEYS[2] 合计值hash(cart_agg_uid)
+-- ARGV[1] 写入格式(json/packed)，读取时两种格式都兼容，老数据顺便按新格式写回
+-- ARGV[2..] 每五个一组：商品id、增加的数量、新增条目时的选中状态(true/false)、商品单价(分)、条目允许的最大数量
+-- 选中条目计入总价时用的单价记在合计值hash的 price_{商品id} 中，之后扣减按记下的单价扣，单价变化不会让总价产生偏差
+-- 返回值：每件商品修改后的条目(按写入格式编码)，顺序和参数一致；累加后超过最大数量的商品不修改，返回空串
+-- decode/encode 来自 cart_codec.lua，加载时拼接在本脚本前面
+
+local result = {}
+for i = 2, #ARGV, 5 do
+    local productId = ARGV[i]
+    local value = redis.call('HGET', KEYS[1], productId)
+    local delta = tonumber(ARGV[i + 1])
+    local price = tonumber(ARGV[i + 3])
+    local maxQuantity = tonumber(ARGV[i + 4])
+
+    local quantity, selected
+    local oldQuantity = 0
+    if value then
+        oldQuantity, selected = decode(value)
+        quantity = oldQuantity + delta
+    else
+        quantity, selected = delta, (ARGV[i + 2] == 'true')
+    end
+
+    local encoded = ''
+    if quantity <= maxQuantity then
+        encoded = encode(tonumber(productId), quantity, selected, ARGV[1])
+        redis.call('HSET', KEYS[1], productId, encoded)
+
+        redis.call('HINCRBY', KEYS[2], 'quantity', delta)
+        if not value then
+            redis.call('HINCRBY', KEYS[2], 'lines', 1)
+        end
+        if selected then
+            if not value then
+                redis.call('HINCRBY', KEYS[2], 'selected', 1)
+            end
+            --按记下的单价扣掉原来的小计，再按当前单价加上新的小计
+            local priceField = 'price_' .. productId
+            local oldPrice = tonumber(redis.call('HGET', KEYS[2], priceField) or price)
+            redis.call('HINCRBY', KEYS[2], 'selectedPrice', price * quantity - oldPrice * oldQuantity)
+            redis.call('HSET', KEYS[2], priceField, price)
+        end
+    end
+    result[#result + 1] = encoded
+end
+return result
@@ -0,0 +1,25 @@
+-- 取出待同步到mysql的秒杀库存扣减量：flash_pending改名为flash_flushing后返回其内容，之后的预扣写入新的flash_pending
+-- 上一次的flash_flushing还在(同步mysql失败或进程中途退出)时直接返回它和它原来的同步批次号，先把它同步完
+-- 同步批次号和扣减量在同一个事务中写入mysql，同一批次重复同步时mysql据此跳过
+-- KEYS[1] 待同步hash(flash_pending)  KEYS[2] 同步中hash(flash_flushing)  KEYS[3] 同步中的批次号(flash_flushing_id)
+-- ARGV[1] 新批次号，flash_pending改名时使用
+-- 返回值：批次号，之后商品id、扣减量交替；没有待同步的扣减量时返回空列表
+if redis.call('EXISTS', KEYS[2]) == 0 then
+    if redis.call('EXISTS', KEYS[1]) == 0 then
+        return {}
+    end
+    redis.call('RENAME', KEYS[1], KEYS[2])
+    redis.call('SET', KEYS[3], ARGV[1])
+end
+local flushId = redis.call('GET', KEYS[3])
+if not flushId then
+    --升级前留下的flash_flushing没有批次号
+    flushId = ARGV[1]
+    redis.call('SET', KEYS[3], flushId)
+end
+local result = { flushId }
+local entries = redis.call('HGETALL', KEYS[2])
+for i = 1, #entries do
+    result[#result + 1] = entries[i]
+end
+return result
@@ -0,0 +1,9 @@
+-- 一批扣减量同步到mysql后删除flash_flushing；批次号不一致说明这批已被其他节点删除、flash_flushing已是新的一批，不删除
+-- KEYS[1] 同步中hash(flash_flushing)  KEYS[2] 同步中的批次号(flash_flushing_id)
+-- ARGV[1] 已同步的批次号
+-- 返回值：1-已删除 0-不是这一批
+if redis.call('GET', KEYS[2]) == ARGV[1] then
+    redis.call('DEL', KEYS[1], KEYS[2])
+    return 1
+end
+return 0
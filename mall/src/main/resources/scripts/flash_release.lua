@@ -0,0 +1,18 @@
+-- 释放秒杀库存(下单失败、订单取消)：秒杀库存加回，待同步扣减量减去
+-- 待同步扣减量可以是负数，同步时给mysql加回库存，所以不管预扣的数量是否已经同步过都能正确补偿
+-- KEYS[1] 秒杀库存hash(flash_stock)  KEYS[2] 待同步到mysql的扣减量hash(flash_pending)
+-- ARGV[1] 1-只处理当前仍是秒杀商品的商品(订单取消) 0-全部处理(下单失败，商品在预扣后可能被取消秒杀)
+-- ARGV[2..] 每两个一组：商品id、数量
+-- 返回值：处理的商品数
+local released = 0
+for i = 2, #ARGV, 2 do
+    local flash = redis.call('HEXISTS', KEYS[1], ARGV[i]) == 1
+    if flash or ARGV[1] == '0' then
+        if flash then
+            redis.call('HINCRBY', KEYS[1], ARGV[i], ARGV[i + 1])
+        end
+        redis.call('HINCRBY', KEYS[2], ARGV[i], -tonumber(ARGV[i + 1]))
+        released = released + 1
+    end
+end
+return released
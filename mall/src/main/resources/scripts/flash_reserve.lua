@@ -0,0 +1,30 @@
+-- 秒杀商品预扣库存：订单中所有秒杀商品的库存都足够时一起扣减，有一件不足就都不扣
+-- 扣减的数量同时累加到待同步hash，由定时任务批量同步到mysql
+-- KEYS[1] 秒杀库存hash(flash_stock)  KEYS[2] 待同步到mysql的扣减量hash(flash_pending)
+-- ARGV 每两个一组：商品id、数量，不在秒杀库存hash中的商品(不是秒杀商品)忽略
+-- 返回值：{0, 库存不足的商品id} 或 {1, 预扣成功的商品id...}
+local ids, quantities = {}, {}
+for i = 1, #ARGV, 2 do
+    ids[#ids + 1] = ARGV[i]
+    quantities[#ids] = tonumber(ARGV[i + 1])
+end
+if #ids == 0 then
+    return {1}
+end
+
+local stocks = redis.call('HMGET', KEYS[1], unpack(ids))
+for i = 1, #ids do
+    if stocks[i] and tonumber(stocks[i]) < quantities[i] then
+        return {0, tonumber(ids[i])}
+    end
+end
+
+local reserved = {1}
+for i = 1, #ids do
+    if stocks[i] then
+        redis.call('HINCRBY', KEYS[1], ids[i], -quantities[i])
+        redis.call('HINCRBY', KEYS[2], ids[i], quantities[i])
+        reserved[#reserved + 1] = tonumber(ids[i])
+    end
+end
+return reserved
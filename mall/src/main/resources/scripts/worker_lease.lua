@@ -0,0 +1,8 @@
+-- 获取或续期订单号节点号租约：没有被占用或者本来就是自己的，设置过期时间后返回1；被其他节点占用返回0
+-- KEYS[1] 租约键(order_no_worker_{节点号})  ARGV[1] 本节点token  ARGV[2] 租约时长(毫秒)
+local owner = redis.call('GET', KEYS[1])
+if owner and owner ~= ARGV[1] then
+    return 0
+end
+redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])
+return 1
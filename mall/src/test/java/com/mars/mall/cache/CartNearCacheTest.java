@@ -0,0 +1,90 @@
+package com.mars.mall.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 近端缓存的命中与失效，不依赖redis
+ */
+public class CartNearCacheTest {
+
+    @Test
+    public void hitAndEvictByMessage() {
+        CartNearCache cartNearCache = new CartNearCache(true, 100, 30);
+        AtomicInteger loads = new AtomicInteger();
+
+        cartNearCache.get(1, () -> {
+            loads.incrementAndGet();
+            return Collections.singletonMap("26", "3");
+        });
+        cartNearCache.get(1, () -> {
+            loads.incrementAndGet();
+            return Collections.singletonMap("26", "3");
+        });
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(Long.valueOf(1), cartNearCache.stats().getHitCount());
+
+        //模拟收到其他节点发布的失效通知
+        cartNearCache.onMessage(new DefaultMessage(CartNearCache.INVALIDATE_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                "1".getBytes(StandardCharsets.UTF_8)), null);
+        cartNearCache.get(1, () -> {
+            loads.incrementAndGet();
+            return Collections.emptyMap();
+        });
+        Assert.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void disabledAlwaysLoads() {
+        CartNearCache cartNearCache = new CartNearCache(false, 100, 30);
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            cartNearCache.get(1, () -> {
+                loads.incrementAndGet();
+                return Collections.emptyMap();
+            });
+        }
+        Assert.assertEquals(3, loads.get());
+    }
+
+    /**
+     * 读取期间本用户的缓存失效，读到的结果不放进缓存；其他用户的失效不影响
+     */
+    @Test
+    public void evictDuringLoad() {
+        CartNearCache cartNearCache = new CartNearCache(true, 100, 30);
+        AtomicInteger loads = new AtomicInteger();
+
+        cartNearCache.get(1, () -> {
+            loads.incrementAndGet();
+            cartNearCache.onMessage(message("1"), null);
+            return Collections.singletonMap("26", "3");
+        });
+        cartNearCache.get(1, () -> {
+            loads.incrementAndGet();
+            return Collections.singletonMap("26", "4");
+        });
+        Assert.assertEquals(2, loads.get());
+
+        cartNearCache.get(2, () -> {
+            loads.incrementAndGet();
+            cartNearCache.onMessage(message("3"), null);
+            return Collections.singletonMap("26", "3");
+        });
+        cartNearCache.get(2, () -> {
+            loads.incrementAndGet();
+            return Collections.emptyMap();
+        });
+        Assert.assertEquals(3, loads.get());
+    }
+
+    private DefaultMessage message(String uid) {
+        return new DefaultMessage(CartNearCache.INVALIDATE_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                uid.getBytes(StandardCharsets.UTF_8));
+    }
+}
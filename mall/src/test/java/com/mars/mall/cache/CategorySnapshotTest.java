@@ -0,0 +1,139 @@
+package com.mars.mall.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mars.mall.pojo.Category;
+import com.mars.mall.vo.CategoryVo;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 类目树快照构建，不依赖数据库
+ */
+@Slf4j
+public class CategorySnapshotTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * 构造 10 个根类目，每个类目 10 个子类目，共三层 10 + 100 + 1000 ... 直到 count 个类目
+     */
+    private List<Category> categories(int count) {
+        List<Category> categories = new ArrayList<>(count);
+        for (int id = 1; id <= count; id++) {
+            Category category = new Category();
+            category.setId(id);
+            category.setParentId(id <= 10 ? 0 : (id - 1) / 10);
+            category.setName("类目" + id);
+            category.setStatus(true);
+            category.setSortOrder(id % 7);
+            categories.add(category);
+        }
+        return categories;
+    }
+
+    private int countNodes(List<CategoryVo> categoryVoList) {
+        int count = 0;
+        for (CategoryVo categoryVo : categoryVoList) {
+            count += 1 + countNodes(categoryVo.getSubCategories());
+        }
+        return count;
+    }
+
+    @Test
+    public void buildTree() {
+        List<Category> categories = categories(1000);
+        CategorySnapshot snapshot = CategorySnapshot.build(categories, 1, "", objectMapper);
+
+        Assert.assertEquals(10, snapshot.getCategoryVoList().size());
+        Assert.assertEquals(1000, countNodes(snapshot.getCategoryVoList()));
+        //子类目按sortOrder从大到小
+        List<CategoryVo> subCategories = snapshot.getCategoryVoList().get(0).getSubCategories();
+        for (int i = 1; i < subCategories.size(); i++) {
+            Assert.assertTrue(subCategories.get(i - 1).getSortOrder() >= subCategories.get(i).getSortOrder());
+        }
+    }
+
+    /**
+     * 内容相同的快照ETag相同(与版本号无关)，内容变化后ETag改变
+     */
+    @Test
+    public void eTag() {
+        List<Category> categories = categories(100);
+        CategorySnapshot first = CategorySnapshot.build(categories, 1, "", objectMapper);
+        CategorySnapshot second = CategorySnapshot.build(categories, 2, "", objectMapper);
+        Assert.assertEquals(first.getETag(), second.getETag());
+
+        categories.get(0).setName("changed");
+        CategorySnapshot changed = CategorySnapshot.build(categories, 3, "", objectMapper);
+        Assert.assertNotEquals(first.getETag(), changed.getETag());
+    }
+
+    /**
+     * 子孙类目索引的结果和逐层递归扫描一致，父类目不存在的类目也能查到子孙类目
+     */
+    @Test
+    public void descendants() {
+        List<Category> categories = categories(1000);
+        //父类目不存在的一组类目
+        Category orphan = new Category();
+        orphan.setId(5000);
+        orphan.setParentId(4000);
+        orphan.setSortOrder(0);
+        categories.add(orphan);
+        CategorySnapshot snapshot = CategorySnapshot.build(categories, 1, "", objectMapper);
+
+        for (int id : new int[]{0, 1, 3, 15, 99, 150, 999, 4000}) {
+            Set<Integer> expected = new HashSet<>();
+            scan(id, expected, categories);
+            Set<Integer> actual = new HashSet<>();
+            snapshot.collectDescendants(id, actual);
+            Assert.assertEquals(expected, actual);
+            for (Integer descendant : actual) {
+                Assert.assertTrue(snapshot.isDescendantOrSelf(id, descendant));
+            }
+        }
+        Assert.assertTrue(snapshot.isDescendantOrSelf(15, 15));
+        Assert.assertFalse(snapshot.isDescendantOrSelf(15, 1));
+        Assert.assertEquals(Integer.valueOf(1), snapshot.parentIdOf(15));
+        Assert.assertEquals(Integer.valueOf(4000), snapshot.parentIdOf(5000));
+        Assert.assertNull(snapshot.parentIdOf(4000));
+    }
+
+    //逐层递归扫描，作为对照
+    private void scan(Integer id, Set<Integer> resultSet, List<Category> categories) {
+        for (Category category : categories) {
+            if (category.getParentId().equals(id)) {
+                resultSet.add(category.getId());
+                scan(category.getId(), resultSet, categories);
+            }
+        }
+    }
+
+    /**
+     * 1万个类目构建快照(包括序列化json)的耗时
+     */
+    @Test
+    public void buildBenchmark() {
+        List<Category> categories = categories(10000);
+        //预热
+        for (int i = 0; i < 20; i++) {
+            CategorySnapshot.build(categories, i, "", objectMapper);
+        }
+
+        int rounds = 50;
+        long start = System.nanoTime();
+        CategorySnapshot snapshot = null;
+        for (int i = 0; i < rounds; i++) {
+            snapshot = CategorySnapshot.build(categories, i, "", objectMapper);
+        }
+        long avgMicros = (System.nanoTime() - start) / rounds / 1000;
+        log.info("10000个类目构建快照平均耗时: {}us, json大小: {}字节", avgMicros, snapshot.getJson().length);
+        Assert.assertEquals(10000, countNodes(snapshot.getCategoryVoList()));
+    }
+}
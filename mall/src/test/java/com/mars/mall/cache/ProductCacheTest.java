@@ -0,0 +1,62 @@
+package com.mars.mall.cache;
+
+import com.mars.mall.MallApplicationTests;
+import com.mars.mall.dao.ProductMapper;
+import com.mars.mall.pojo.Product;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 商品缓存的命中和写操作后的自动失效
+ */
+@Slf4j
+public class ProductCacheTest extends MallApplicationTests {
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Test
+    public void getAll() {
+        productCache.invalidateAll();
+        productCache.getAll(Arrays.asList(26, 27, 28));
+        productCache.getAll(Arrays.asList(26, 27, 28));
+        log.info("stats={}", productCache.stats());
+        Assert.assertTrue(productCache.stats().getHitCount() >= 3);
+    }
+
+    @Test
+    @Transactional
+    public void evictOnUpdate() {
+        Product cached = productCache.get(26);
+        Product product = new Product();
+        product.setId(26);
+        product.setStock(cached.getStock() + 1);
+        productMapper.updateByPrimaryKeySelective(product);
+
+        Assert.assertEquals(Integer.valueOf(cached.getStock() + 1), productCache.get(26).getStock());
+    }
+
+    @Test
+    public void evictOnMessage() {
+        productCache.get(26);
+        productCache.get(27);
+        long loads = productCache.stats().getLoadCount();
+
+        //模拟收到其他节点发布的失效通知
+        productCache.onMessage(new DefaultMessage(ProductCache.INVALIDATE_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                "26,27".getBytes(StandardCharsets.UTF_8)), null);
+        productCache.get(26);
+        productCache.get(27);
+        Assert.assertEquals(loads + 2, productCache.stats().getLoadCount().longValue());
+    }
+}
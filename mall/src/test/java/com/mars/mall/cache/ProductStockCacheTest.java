@@ -0,0 +1,47 @@
+package com.mars.mall.cache;
+
+import com.mars.mall.MallApplicationTests;
+import com.mars.mall.consts.MallConst;
+import com.mars.mall.dao.ProductMapper;
+import com.mars.mall.pojo.Product;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+public class ProductStockCacheTest extends MallApplicationTests {
+
+    @Autowired
+    private ProductStockCache productStockCache;
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Test
+    @Transactional
+    public void evictOnUpdate() {
+        Integer stock = productStockCache.get(26);
+        Product product = new Product();
+        product.setId(26);
+        product.setStock(stock + 1);
+        productMapper.updateByPrimaryKeySelective(product);
+
+        Assert.assertEquals(Integer.valueOf(stock + 1), productStockCache.get(26));
+    }
+
+    /**
+     * 人为制造偏差后比对，读模型应被修正为mysql中的库存
+     */
+    @Test
+    public void reconcile() {
+        Integer stock = productMapper.selectByPrimaryKey(26).getStock();
+        redisTemplate.opsForHash().put(MallConst.PRODUCT_STOCK_REDIS_KEY, "26", String.valueOf(stock + 100));
+
+        Assert.assertTrue(productStockCache.reconcile() >= 1);
+        Assert.assertEquals(stock, productStockCache.get(26));
+    }
+}
@@ -0,0 +1,90 @@
+package com.mars.mall.codec;
+
+import com.mars.mall.MallApplicationTests;
+import com.mars.mall.pojo.Cart;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+@Slf4j
+public class CartCodecTest extends MallApplicationTests {
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    private CartCodec jsonCodec = new JsonCartCodec();
+
+    private CartCodec packedCodec = new PackedCartCodec();
+
+    @Test
+    public void encodeAndDecode() {
+        Cart cart = new Cart(26, 3, true);
+        for (CartCodec codec : new CartCodec[]{jsonCodec, packedCodec}) {
+            Cart decoded = codec.decode(26, codec.encode(cart));
+            Assert.assertEquals(cart, decoded);
+        }
+        //两种codec都能解码对方的格式
+        Assert.assertEquals(cart, packedCodec.decode(26, jsonCodec.encode(cart)));
+        Assert.assertEquals(cart, jsonCodec.decode(26, packedCodec.encode(cart)));
+        Assert.assertTrue(packedCodec.needMigrate(jsonCodec.encode(cart)));
+        Assert.assertFalse(packedCodec.needMigrate(packedCodec.encode(cart)));
+    }
+
+    /**
+     * 同一个50条目的购物车分别用json和packed编码写进redis，对比 MEMORY USAGE
+     */
+    @Test
+    public void memoryPerCart() {
+        for (CartCodec codec : new CartCodec[]{jsonCodec, packedCodec}) {
+            String key = "cart_codec_test_" + codec.name();
+            Map<String, String> fields = new HashMap<>();
+            for (int productId = 1; productId <= 50; productId++) {
+                fields.put(String.valueOf(productId), codec.encode(new Cart(productId, productId % 5 + 1, productId % 2 == 0)));
+            }
+            redisTemplate.delete(key);
+            redisTemplate.opsForHash().putAll(key, fields);
+            Long bytes = redisTemplate.execute((RedisCallback<Long>) connection -> memoryUsage(connection, key));
+            log.info("codec={} lines=50 memoryUsage={}B", codec.name(), bytes);
+            redisTemplate.delete(key);
+        }
+    }
+
+    /**
+     * 解码吞吐量：json(Gson) 与 packed 对比
+     */
+    @Test
+    public void decodeThroughput() {
+        int times = 1_000_000;
+        Cart cart = new Cart(26, 3, true);
+        for (CartCodec codec : new CartCodec[]{jsonCodec, packedCodec}) {
+            String value = codec.encode(cart);
+            long quantity = 0;
+            //预热
+            for (int i = 0; i < times; i++) {
+                quantity += codec.decode(26, value).getQuantity();
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < times; i++) {
+                quantity += codec.decode(26, value).getQuantity();
+            }
+            long elapsed = System.nanoTime() - start;
+            log.info("codec={} value={} decode={}ops/s checksum={}", codec.name(), value,
+                    times * 1_000_000_000L / elapsed, quantity);
+        }
+    }
+
+    private Long memoryUsage(RedisConnection connection, String key) {
+        return connection.scriptingCommands().eval(
+                "return redis.call('MEMORY', 'USAGE', KEYS[1])".getBytes(StandardCharsets.UTF_8),
+                ReturnType.INTEGER, 1, key.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,144 @@
+package com.mars.mall.dao;
+
+import com.mars.mall.MallApplicationTests;
+import com.mars.mall.pojo.Product;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Slf4j
+public class ProductMapperTest extends MallApplicationTests {
+
+    private final static int PAGE_SIZE = 10;
+
+    private final static int ROUNDS = 200;
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * 条件扣库存：库存足够的商品被扣减，扣减后会小于0的商品不变
+     */
+    @Test
+    @Transactional
+    public void decreaseStock() {
+        Product product = productMapper.selectByPrimaryKey(26);
+        Map<Integer, Integer> stockMap = new TreeMap<>();
+        stockMap.put(26, 1);
+        Assert.assertEquals(1, productMapper.decreaseStock(stockMap));
+        Assert.assertEquals(Integer.valueOf(product.getStock() - 1), productMapper.selectByPrimaryKey(26).getStock());
+
+        stockMap.put(26, product.getStock());
+        Assert.assertEquals(0, productMapper.decreaseStock(stockMap));
+        Assert.assertEquals(Integer.valueOf(product.getStock() - 1), productMapper.selectByPrimaryKey(26).getStock());
+    }
+
+    /**
+     * 批量新增：生成的id按顺序回填到每个商品
+     */
+    @Test
+    @Transactional
+    public void batchInsert() {
+        List<Product> productList = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Product product = new Product();
+            product.setCategoryId(100002);
+            product.setName("批量新增测试商品" + i);
+            product.setPrice(BigDecimal.ONE);
+            product.setStock(1);
+            product.setStatus(1);
+            product.setCreateTime(new Date());
+            product.setUpdateTime(new Date());
+            productList.add(product);
+        }
+        Assert.assertEquals(3, productMapper.batchInsert(productList));
+        for (Product product : productList) {
+            Assert.assertNotNull(product.getId());
+            Assert.assertEquals(product.getName(), productMapper.selectByPrimaryKey(product.getId()).getName());
+        }
+    }
+
+    /**
+     * 多个类目的游标分页按id顺序读取索引，执行计划中没有filesort
+     */
+    @Test
+    public void cursorPageWithoutFilesort() {
+        List<Map<String, Object>> plan = jdbcTemplate.queryForList("explain select id from mall_product"
+                + " where status = 1 and category_id in (100002, 100003, 100006) and id > 26 order by id limit 11");
+        log.info("plan={}", plan);
+        for (Map<String, Object> row : plan) {
+            Object extra = row.get("Extra");
+            Assert.assertFalse(extra != null && extra.toString().contains("Using filesort"));
+        }
+    }
+
+    /**
+     * 列表查询的精简结果和完整商品对比：每页传输的数据量(各字段的字节数之和)和查询过程中分配的堆内存
+     */
+    @Test
+    public void listProjectionBenchmark() {
+        List<Product> slimPage = productMapper.selectByCategoryIdSetAfter(new HashSet<>(), null, PAGE_SIZE);
+        List<Product> fullPage = new ArrayList<>();
+        for (Product product : slimPage) {
+            fullPage.add(productMapper.selectByPrimaryKey(product.getId()));
+        }
+        long slimBytes = payloadBytes(slimPage);
+        long fullBytes = payloadBytes(fullPage);
+
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long start = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ROUNDS; i++) {
+            productMapper.selectByCategoryIdSetAfter(new HashSet<>(), null, PAGE_SIZE);
+        }
+        long slimAllocated = (threadMXBean.getThreadAllocatedBytes(threadId) - start) / ROUNDS;
+
+        start = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ROUNDS; i++) {
+            for (Product product : slimPage) {
+                productMapper.selectByPrimaryKey(product.getId());
+            }
+        }
+        long fullAllocated = (threadMXBean.getThreadAllocatedBytes(threadId) - start) / ROUNDS;
+
+        log.info("每页{}个商品: 精简结果 {} 字节/页, 分配 {} 字节/页; 完整商品 {} 字节/页, 分配 {} 字节/页",
+                slimPage.size(), slimBytes, slimAllocated, fullBytes, fullAllocated);
+        Assert.assertTrue(slimBytes <= fullBytes);
+        for (Product product : slimPage) {
+            Assert.assertNull(product.getDetail());
+            Assert.assertNull(product.getSubImages());
+        }
+    }
+
+    //各字段的字节数之和，近似为数据库返回的数据量
+    private long payloadBytes(List<Product> productList) {
+        long bytes = 0;
+        for (Product product : productList) {
+            bytes += 4 * 4;//id, categoryId, stock, status
+            bytes += product.getPrice() == null ? 0 : product.getPrice().toPlainString().length();
+            bytes += product.getCreateTime() == null ? 0 : 8;
+            bytes += product.getUpdateTime() == null ? 0 : 8;
+            for (String text : new String[]{product.getName(), product.getSubtitle(), product.getMainImage(),
+                    product.getSubImages(), product.getDetail()}) {
+                bytes += text == null ? 0 : text.getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        return bytes;
+    }
+}
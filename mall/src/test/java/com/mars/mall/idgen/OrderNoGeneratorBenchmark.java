@@ -0,0 +1,57 @@
+package com.mars.mall.idgen;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单号生成吞吐量：雪花算法 vs 原来的 时间戳+随机数
+ * 不是单元测试，在IDE中运行main方法，或 mvn test-compile 后用 exec:java 运行
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderNoGeneratorBenchmark {
+
+    private final SnowflakeOrderNoGenerator snowflake = new SnowflakeOrderNoGenerator(1, 5000);
+
+    @Benchmark
+    @Threads(1)
+    public long snowflakeSingleThread() {
+        return snowflake.nextId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long snowflakeEightThreads() {
+        return snowflake.nextId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long legacyEightThreads() {
+        return System.currentTimeMillis() + new Random().nextInt(999);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(OrderNoGeneratorBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,111 @@
+package com.mars.mall.idgen;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SnowflakeOrderNoGeneratorTest {
+
+    private final static int THREADS = 16;
+
+    private final static int IDS_PER_THREAD = 100000;
+
+    /**
+     * 多线程同时生成，所有订单号不重复，每个线程拿到的订单号严格递增
+     */
+    @Test
+    public void uniqueUnderContention() throws InterruptedException {
+        SnowflakeOrderNoGenerator generator = new SnowflakeOrderNoGenerator(7, 5000);
+        Set<Long> idSet = ConcurrentHashMap.newKeySet(THREADS * IDS_PER_THREAD);
+        AtomicBoolean monotonic = new AtomicBoolean(true);
+        ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            executorService.execute(() -> {
+                try {
+                    start.await();
+                    long last = 0;
+                    for (int j = 0; j < IDS_PER_THREAD; j++) {
+                        long id = generator.nextId();
+                        if (id <= last) {
+                            monotonic.set(false);
+                        }
+                        last = id;
+                        idSet.add(id);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsedMs = Math.max(1, (System.nanoTime() - begin) / 1000000);
+        executorService.shutdown();
+
+        System.out.println(THREADS + "个线程生成" + THREADS * IDS_PER_THREAD + "个订单号, 耗时" + elapsedMs
+                + "ms, " + THREADS * IDS_PER_THREAD / elapsedMs * 1000 + "个/秒");
+        Assert.assertEquals(THREADS * IDS_PER_THREAD, idSet.size());
+        Assert.assertTrue(monotonic.get());
+    }
+
+    /**
+     * 订单号是正数，能拆出节点号和生成时间
+     */
+    @Test
+    public void layout() {
+        SnowflakeOrderNoGenerator generator = new SnowflakeOrderNoGenerator(SnowflakeOrderNoGenerator.MAX_WORKER_ID, 5000);
+        long before = System.currentTimeMillis();
+        long id = generator.nextId();
+        Assert.assertTrue(id > 0);
+        Assert.assertEquals(SnowflakeOrderNoGenerator.MAX_WORKER_ID, SnowflakeOrderNoGenerator.workerIdOf(id));
+        Assert.assertTrue(SnowflakeOrderNoGenerator.timestampOf(id) >= before);
+    }
+
+    /**
+     * 同一毫秒内序号用完时进位到下一毫秒；时钟小幅回拨时继续递增，回拨超过上限时报错
+     */
+    @Test
+    public void clockRegression() {
+        AtomicLong clock = new AtomicLong(SnowflakeOrderNoGenerator.EPOCH + 100000);
+        SnowflakeOrderNoGenerator generator = new SnowflakeOrderNoGenerator(1, 10, clock::get);
+        long last = 0;
+        for (int i = 0; i < (1 << SnowflakeOrderNoGenerator.SEQUENCE_BITS) + 1; i++) {
+            long id = generator.nextId();
+            Assert.assertTrue(id > last);
+            last = id;
+        }
+        Assert.assertEquals(clock.get() + 1, SnowflakeOrderNoGenerator.timestampOf(last));
+
+        clock.addAndGet(-5);
+        long afterSmallRegression = generator.nextId();
+        Assert.assertTrue(afterSmallRegression > last);
+
+        clock.addAndGet(-100);
+        try {
+            generator.nextId();
+            Assert.fail("时钟大幅回拨时应报错");
+        } catch (IllegalStateException e) {
+            //回拨超过上限
+        }
+
+        clock.addAndGet(200);
+        Assert.assertTrue(generator.nextId() > afterSmallRegression);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidWorkerId() {
+        new SnowflakeOrderNoGenerator(SnowflakeOrderNoGenerator.MAX_WORKER_ID + 1, 5000);
+    }
+}
@@ -0,0 +1,44 @@
+package com.mars.mall.idgen;
+
+import com.mars.mall.MallApplicationTests;
+import com.mars.mall.consts.MallConst;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * 节点号租约被其他节点占用后改租新的节点号，订单号生成器换用新的节点号
+ */
+public class WorkerIdLeaseTest extends MallApplicationTests {
+
+    @Autowired
+    private WorkerIdLease workerIdLease;
+
+    @Autowired
+    private OrderNoGenerator orderNoGenerator;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Test
+    public void lostLease() {
+        int workerId = workerIdLease.workerId();
+        String key = String.format(MallConst.ORDER_NO_WORKER_REDIS_KEY_TEMPLATE, workerId);
+        Assert.assertTrue(workerIdLease.isValid());
+        Assert.assertEquals(workerId, SnowflakeOrderNoGenerator.workerIdOf(orderNoGenerator.nextId()));
+
+        //模拟租约过期后被其他节点占用
+        redisTemplate.opsForValue().set(key, "other-node");
+        try {
+            workerIdLease.renew();
+            Assert.assertTrue(workerIdLease.isValid());
+            int newWorkerId = workerIdLease.workerId();
+            Assert.assertNotEquals(workerId, newWorkerId);
+            Assert.assertEquals(newWorkerId, SnowflakeOrderNoGenerator.workerIdOf(orderNoGenerator.nextId()));
+            Assert.assertEquals("other-node", redisTemplate.opsForValue().get(key));
+        } finally {
+            redisTemplate.delete(key);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.mars.mall.importer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * CSV导入文件解析，不依赖数据库
+ */
+public class CsvProductRowReaderTest {
+
+    private CsvProductRowReader reader(String content) {
+        return new CsvProductRowReader(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void next() throws IOException {
+        String content = "\uFEFFcategory_id,name,subtitle,price\r\n"
+                + "100002,\"手机, 128G\",\"第一行\n第二行\",6999\r\n"
+                + "\r\n"
+                + "100003,\"说\"\"明\"\"\",,1.5\n";
+        try (CsvProductRowReader reader = reader(content)) {
+            Map<String, String> first = reader.next();
+            Assert.assertEquals("100002", first.get("categoryid"));
+            Assert.assertEquals("手机, 128G", first.get("name"));
+            Assert.assertEquals("第一行\n第二行", first.get("subtitle"));
+
+            Map<String, String> second = reader.next();
+            Assert.assertEquals("说\"明\"", second.get("name"));
+            Assert.assertNull(second.get("subtitle"));
+            Assert.assertEquals("1.5", second.get("price"));
+
+            Assert.assertNull(reader.next());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void unclosedQuote() throws IOException {
+        try (CsvProductRowReader reader = reader("name,price\n\"abc,1\n")) {
+            reader.next();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.mars.mall.search;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * 商品搜索分词，不依赖数据库
+ */
+public class TokenizerTest {
+
+    @Test
+    public void tokenizeForIndex() {
+        Assert.assertEquals(Arrays.asList("iphone", "13", "手机", "手", "机"),
+                Tokenizer.tokenizeForIndex("iPhone 13手机"));
+    }
+
+    @Test
+    public void tokenizeForQuery() {
+        Assert.assertEquals(Arrays.asList("小米", "米手", "手机", "pro"),
+                Tokenizer.tokenizeForQuery("小米手机, Pro"));
+        Assert.assertEquals(Arrays.asList("机"), Tokenizer.tokenizeForQuery("机"));
+        Assert.assertTrue(Tokenizer.tokenizeForQuery(" ,.!").isEmpty());
+    }
+}
@@ -0,0 +1,84 @@
+package com.mars.mall.service;
+
+import com.mars.mall.MallApplication;
+import com.mars.mall.dao.ProductMapper;
+import com.mars.mall.pojo.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 购物车渲染商品查询的延迟曲线：逐条 selectByPrimaryKey 与一次 selectByProductIdSet 对比
+ * 商品id不必真实存在，衡量的是数据库往返次数带来的耗时
+ * 需要本地mysql，不是单元测试，在IDE中运行main方法，或 mvn test-compile 后用 exec:java 运行
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class CartListHydrationBenchmark {
+
+    @Param({"1", "10", "20", "40", "80"})
+    private int cartSize;
+
+    private ConfigurableApplicationContext context;
+
+    private ProductMapper productMapper;
+
+    private final Set<Integer> productIdSet = new HashSet<>();
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(MallApplication.class).web(WebApplicationType.NONE).run();
+        productMapper = context.getBean(ProductMapper.class);
+        for (int i = 0; i < cartSize; i++) {
+            productIdSet.add(26 + i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void perRow(Blackhole blackhole) {
+        for (Integer productId : productIdSet) {
+            blackhole.consume(productMapper.selectByPrimaryKey(productId));
+        }
+    }
+
+    @Benchmark
+    public List<Product> batched() {
+        return productMapper.selectByProductIdSet(productIdSet);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CartListHydrationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,64 @@
+package com.mars.mall.service;
+
+import com.mars.mall.MallApplicationTests;
+import com.mars.mall.consts.MallConst;
+import com.mars.mall.form.CartAddForm;
+import com.mars.mall.vo.CartVo;
+import com.mars.mall.vo.ResponseVo;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * 闲置天数设为0，刚访问过的购物车也会被归档，用来验证归档后再访问可以完整恢复
+ */
+@Slf4j
+@TestPropertySource(properties = {"mall.cart.archive.idle-days=0", "mall.cart.archive.touch-interval-seconds=0"})
+public class ICartArchiveServiceTest extends MallApplicationTests {
+
+    @Autowired
+    private ICartArchiveService cartArchiveService;
+
+    @Autowired
+    private ICartService cartService;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Test
+    public void archiveAndRestore() throws InterruptedException {
+        ResponseVo<CartVo> before = cartService.list(1);
+        Thread.sleep(5);
+
+        int count = cartArchiveService.archiveIdle();
+        log.info("archived={}", count);
+
+        ResponseVo<CartVo> after = cartService.list(1);
+        Assert.assertEquals(before.getData().getCartTotalQuantity(), after.getData().getCartTotalQuantity());
+        Assert.assertEquals(before.getData().getCartProductVoList().size(), after.getData().getCartProductVoList().size());
+    }
+
+    /**
+     * 没有访问时间的购物车(归档上线前创建的)也会被归档
+     */
+    @Test
+    public void archiveUnscored() throws InterruptedException {
+        Integer uid = 101;
+        CartAddForm form = new CartAddForm();
+        form.setProductId(26);
+        form.setSelected(true);
+        cartService.add(uid, form);
+        Integer quantity = cartService.list(uid).getData().getCartTotalQuantity();
+        redisTemplate.opsForZSet().remove("cart_access", String.valueOf(uid));
+        Thread.sleep(5);
+
+        cartArchiveService.archiveIdle();
+        Assert.assertFalse(redisTemplate.hasKey(String.format(MallConst.CART_REDIS_KEY_TEMPLATE, uid)));
+
+        Assert.assertEquals(quantity, cartService.list(uid).getData().getCartTotalQuantity());
+        cartService.delete(uid, 26);
+    }
+}
@@ -3,20 +3,36 @@ package com.mars.mall.service;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.mars.mall.MallApplicationTests;
+import com.mars.mall.consts.MallConst;
+import com.mars.mall.dao.ProductMapper;
+import com.mars.mall.enums.ResponseEnum;
 import com.mars.mall.form.CartAddForm;
+import com.mars.mall.form.CartBatchAddForm;
+import com.mars.mall.form.CartBatchAddItemForm;
 import com.mars.mall.form.CartUpdateForm;
+import com.mars.mall.pojo.Product;
+import com.mars.mall.vo.CartBatchAddVo;
+import com.mars.mall.vo.CartDeltaVo;
 import com.mars.mall.vo.CartVo;
 import com.mars.mall.vo.ResponseVo;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+
 @Slf4j
 public class ICartServiceTest extends MallApplicationTests {
 
     @Autowired
     private ICartService cartService;
 
+    @Autowired
+    private ProductMapper productMapper;
+
     private Gson gson = new GsonBuilder().setPrettyPrinting().create();//用于在控制台打印出格式化的json
 
     @Test
@@ -28,6 +44,34 @@ public class ICartServiceTest extends MallApplicationTests {
         log.info("list={}",gson.toJson(responseVo));
     }
 
+    @Test
+    public void addForDelta() {
+        CartAddForm form = new CartAddForm();
+        form.setProductId(29);
+        form.setSelected(true);
+        ResponseVo<CartDeltaVo> responseVo = cartService.addForDelta(1, form);
+        log.info("delta={}",gson.toJson(responseVo));
+    }
+
+    /**
+     * 批量添加：重复的商品合并数量，不存在的商品单独返回失败原因
+     */
+    @Test
+    public void addBatch(){
+        CartBatchAddForm form = new CartBatchAddForm();
+        form.setItems(Arrays.asList(item(26, 1), item(27, 2), item(26, 1), item(-1, 1)));
+        ResponseVo<CartBatchAddVo> responseVo = cartService.addBatch(1, form);
+        log.info("result={}",gson.toJson(responseVo));
+        Assert.assertEquals(1, responseVo.getData().getFailList().size());
+    }
+
+    private CartBatchAddItemForm item(Integer productId, Integer quantity){
+        CartBatchAddItemForm item = new CartBatchAddItemForm();
+        item.setProductId(productId);
+        item.setQuantity(quantity);
+        return item;
+    }
+
     @Test
     public void list(){
         ResponseVo<CartVo> list = cartService.list(1);
@@ -66,4 +110,80 @@ public class ICartServiceTest extends MallApplicationTests {
         ResponseVo<Integer> responseVo = cartService.sum(1);
         log.info("result={}",gson.toJson(responseVo));
     }
-}
\ No newline at end of file
+
+    /**
+     * 修复合计值后，sum读出的合计值应与完整计算的购物车一致
+     */
+    @Test
+    public void repairAggregate(){
+        cartService.repairAggregate(1);
+        ResponseVo<Integer> sum = cartService.sum(1);
+        ResponseVo<CartVo> list = cartService.list(1);
+        Assert.assertEquals(list.getData().getCartTotalQuantity(), sum.getData());
+    }
+
+    /**
+     * 加购之后商品改价，再修改、删除购物车条目：增量接口返回的合计值应与完整计算的购物车一致
+     */
+    @Test
+    public void deltaTotalsAfterPriceChange(){
+        Integer uid = 100;
+        Product product = productMapper.selectByPrimaryKey(27);
+        BigDecimal price = product.getPrice();
+        CartBatchAddForm form = new CartBatchAddForm();
+        form.setItems(Arrays.asList(item(26, 1), item(27, 2)));
+        cartService.addBatch(uid, form);
+        try {
+            product.setPrice(price.add(new BigDecimal("10.50")));
+            productMapper.updateByPrimaryKeySelective(product);
+
+            CartUpdateForm updateForm = new CartUpdateForm();
+            updateForm.setQuantity(3);
+            ResponseVo<CartDeltaVo> updated = cartService.updateForDelta(uid, 27, updateForm);
+            assertTotalsEqualList(uid, updated.getData());
+
+            ResponseVo<CartDeltaVo> deleted = cartService.deleteForDelta(uid, 26);
+            assertTotalsEqualList(uid, deleted.getData());
+        } finally {
+            product.setPrice(price);
+            productMapper.updateByPrimaryKeySelective(product);
+            cartService.deleteForDelta(uid, 26);
+            cartService.deleteForDelta(uid, 27);
+        }
+    }
+
+    /**
+     * 条目数量不能超过库存和单件商品的数量上限，合并数量时不会溢出
+     */
+    @Test
+    public void quantityCap(){
+        Integer uid = 102;
+        int maxQuantity = Math.min(productMapper.selectByPrimaryKey(26).getStock(), MallConst.CART_MAX_QUANTITY);
+        CartBatchAddForm form = new CartBatchAddForm();
+        form.setItems(Arrays.asList(item(26, Integer.MAX_VALUE), item(26, Integer.MAX_VALUE)));
+        Assert.assertEquals(ResponseEnum.PRODUCT_STOCK_ERROR.getCode(), cartService.addBatch(uid, form).getData().getFailList().get(0).getStatus());
+
+        form.setItems(Collections.singletonList(item(26, maxQuantity)));
+        Assert.assertTrue(cartService.addBatch(uid, form).getData().getFailList().isEmpty());
+        try {
+            CartAddForm addForm = new CartAddForm();
+            addForm.setProductId(26);
+            addForm.setSelected(true);
+            Assert.assertEquals(ResponseEnum.PRODUCT_STOCK_ERROR.getCode(), cartService.addForDelta(uid, addForm).getStatus());
+
+            CartUpdateForm updateForm = new CartUpdateForm();
+            updateForm.setQuantity(maxQuantity + 1);
+            Assert.assertEquals(ResponseEnum.PRODUCT_STOCK_ERROR.getCode(), cartService.updateForDelta(uid, 26, updateForm).getStatus());
+            Assert.assertEquals(Integer.valueOf(maxQuantity), cartService.list(uid).getData().getCartTotalQuantity());
+        } finally {
+            cartService.deleteForDelta(uid, 26);
+        }
+    }
+
+    private void assertTotalsEqualList(Integer uid, CartDeltaVo delta){
+        CartVo cartVo = cartService.list(uid).getData();
+        Assert.assertEquals(0, cartVo.getCartTotalPrice().compareTo(delta.getCartTotalPrice()));
+        Assert.assertEquals(cartVo.getCartTotalQuantity(), delta.getCartTotalQuantity());
+        Assert.assertEquals(cartVo.getSelectedAll(), delta.getSelectedAll());
+    }
+}
@@ -0,0 +1,108 @@
+package com.mars.mall.service;
+
+import com.mars.mall.MallApplicationTests;
+import com.mars.mall.consts.MallConst;
+import com.mars.mall.dao.ProductMapper;
+import com.mars.mall.enums.ResponseEnum;
+import com.mars.mall.pojo.FlashReservation;
+import com.mars.mall.vo.FlashSaleStockVo;
+import com.mars.mall.vo.ResponseVo;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class IFlashSaleServiceTest extends MallApplicationTests {
+
+    private final static Integer PRODUCT_ID = 26;
+
+    @Autowired
+    private IFlashSaleService flashSaleService;
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    private Integer stock;
+
+    @Before
+    public void enable() {
+        ResponseVo<Integer> responseVo = flashSaleService.enable(PRODUCT_ID);
+        Assert.assertEquals(ResponseEnum.SUCCESS.getCode(), responseVo.getStatus());
+        stock = responseVo.getData();
+    }
+
+    @After
+    public void disable() {
+        flashSaleService.disable(PRODUCT_ID);
+    }
+
+    /**
+     * 预扣后redis库存减少、待同步数量增加，释放后恢复；库存不足时不扣减
+     */
+    @Test
+    public void reserveAndRelease() {
+        Map<Integer, Integer> stockMap = new TreeMap<>();
+        stockMap.put(PRODUCT_ID, 1);
+        stockMap.put(27, 1);//不是秒杀商品，忽略
+        FlashReservation reservation = flashSaleService.reserve(stockMap);
+        Assert.assertTrue(reservation.isSuccess());
+        Assert.assertEquals(1, reservation.getReservedMap().size());
+        assertStock(stock - 1, 1);
+
+        flashSaleService.release(reservation.getReservedMap(), false);
+        assertStock(stock, 0);
+
+        stockMap.put(PRODUCT_ID, stock + 1);
+        FlashReservation shortReservation = flashSaleService.reserve(stockMap);
+        Assert.assertEquals(PRODUCT_ID, shortReservation.getShortProductId());
+        assertStock(stock, 0);
+    }
+
+    /**
+     * 同一批扣减量同步两次(第一次同步后、删除redis中的这批之前进程退出)，mysql只扣减一次
+     */
+    @Test
+    public void flushOnce() {
+        flashSaleService.flush();
+        Integer mysqlStock = productMapper.selectByPrimaryKey(PRODUCT_ID).getStock();
+        Map<Integer, Integer> stockMap = Collections.singletonMap(PRODUCT_ID, 1);
+        Assert.assertTrue(flashSaleService.reserve(stockMap).isSuccess());
+        try {
+            redisTemplate.rename(MallConst.FLASH_PENDING_REDIS_KEY, MallConst.FLASH_FLUSHING_REDIS_KEY);
+            redisTemplate.opsForValue().set(MallConst.FLASH_FLUSHING_ID_REDIS_KEY, "test-" + System.nanoTime());
+            Map<Object, Object> flushing = redisTemplate.opsForHash().entries(MallConst.FLASH_FLUSHING_REDIS_KEY);
+            String flushId = redisTemplate.opsForValue().get(MallConst.FLASH_FLUSHING_ID_REDIS_KEY);
+            Assert.assertEquals(1, flashSaleService.flush());
+            Assert.assertEquals(Integer.valueOf(mysqlStock - 1), productMapper.selectByPrimaryKey(PRODUCT_ID).getStock());
+
+            //模拟删除之前进程退出：同一批仍留在redis中
+            redisTemplate.opsForHash().putAll(MallConst.FLASH_FLUSHING_REDIS_KEY, flushing);
+            redisTemplate.opsForValue().set(MallConst.FLASH_FLUSHING_ID_REDIS_KEY, flushId);
+            Assert.assertEquals(0, flashSaleService.flush());
+            Assert.assertEquals(Integer.valueOf(mysqlStock - 1), productMapper.selectByPrimaryKey(PRODUCT_ID).getStock());
+        } finally {
+            flashSaleService.release(stockMap, false);
+            flashSaleService.flush();
+        }
+    }
+
+    private void assertStock(int expectedStock, int expectedPending) {
+        for (FlashSaleStockVo flashSaleStockVo : flashSaleService.list().getData()) {
+            if (flashSaleStockVo.getProductId().equals(PRODUCT_ID)) {
+                Assert.assertEquals(Integer.valueOf(expectedStock), flashSaleStockVo.getStock());
+                Assert.assertEquals(Integer.valueOf(expectedPending), flashSaleStockVo.getPending());
+                return;
+            }
+        }
+        Assert.fail("不是秒杀商品");
+    }
+}
@@ -4,6 +4,7 @@ import com.github.pagehelper.PageInfo;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.mars.mall.MallApplicationTests;
+import com.mars.mall.dao.ProductMapper;
 import com.mars.mall.enums.ResponseEnum;
 import com.mars.mall.form.CartAddForm;
 import com.mars.mall.vo.CartVo;
@@ -16,6 +17,9 @@ import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collections;
+import java.util.Date;
+
 @Slf4j
 @Transactional //测试类加事务，测试完就会回滚，以免数据库产生脏数据
 public class IOrderServiceTest extends MallApplicationTests {
@@ -26,6 +30,9 @@ public class IOrderServiceTest extends MallApplicationTests {
     @Autowired
     private ICartService cartService;
 
+    @Autowired
+    private ProductMapper productMapper;
+
     private Integer uid = 1;
 
     private Integer shippingId = 4;
@@ -77,4 +84,22 @@ public class IOrderServiceTest extends MallApplicationTests {
         log.info("result={}", gson.toJson(responseVo));
         Assert.assertEquals(ResponseEnum.SUCCESS.getCode(), responseVo.getStatus());
     }
-}
\ No newline at end of file
+
+    /**
+     * 超时关闭：到期的未付款订单被关闭并加回库存，再次关闭或取消都不会重复加回
+     */
+    @Test
+    public void closeExpired() {
+        Integer stock = productMapper.selectByPrimaryKey(productId).getStock();
+        Long orderNo = create().getData().getOrderNo();
+        Assert.assertEquals(0, orderService.closeExpired(Collections.singletonList(orderNo), new Date(0)));
+
+        Date deadline = new Date(System.currentTimeMillis() + 1000);
+        Assert.assertEquals(1, orderService.closeExpired(Collections.singletonList(orderNo), deadline));
+        Assert.assertEquals(stock, productMapper.selectByPrimaryKey(productId).getStock());
+
+        Assert.assertEquals(0, orderService.closeExpired(Collections.singletonList(orderNo), deadline));
+        Assert.assertEquals(ResponseEnum.ORDER_STATUS_ERROR.getCode(), orderService.cancel(uid, orderNo).getStatus());
+        Assert.assertEquals(stock, productMapper.selectByPrimaryKey(productId).getStock());
+    }
+}
@@ -0,0 +1,65 @@
+package com.mars.mall.service;
+
+import com.mars.mall.MallApplicationTests;
+import com.mars.mall.dao.OrderMapper;
+import com.mars.mall.enums.OrderTicketStatusEnum;
+import com.mars.mall.enums.ResponseEnum;
+import com.mars.mall.idgen.OrderNoGenerator;
+import com.mars.mall.pojo.OrderSubmitMessage;
+import com.mars.mall.vo.OrderTicketVo;
+import com.mars.mall.vo.ResponseVo;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class IOrderSubmitServiceTest extends MallApplicationTests {
+
+    private final static long WAIT_MS = 10000;
+
+    @Autowired
+    private IOrderSubmitService orderSubmitService;
+
+    @Autowired
+    private OrderNoGenerator orderNoGenerator;
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    private Integer uid = 1;
+
+    /**
+     * 收货地址不存在时消费者下单失败，失败原因写进凭证；其他用户查不到这个凭证
+     */
+    @Test
+    public void submitAndPoll() throws InterruptedException {
+        ResponseVo<OrderTicketVo> responseVo = orderSubmitService.submit(uid, 0);
+        Assert.assertEquals(ResponseEnum.SUCCESS.getCode(), responseVo.getStatus());
+        Long orderNo = responseVo.getData().getOrderNo();
+
+        OrderTicketVo orderTicketVo = responseVo.getData();
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (OrderTicketStatusEnum.QUEUED.getCode().equals(orderTicketVo.getStatus())
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            orderTicketVo = orderSubmitService.ticket(uid, orderNo).getData();
+        }
+        Assert.assertEquals(OrderTicketStatusEnum.FAILED.getCode(), orderTicketVo.getStatus());
+        Assert.assertEquals(ResponseEnum.SHIPPING_NOT_EXIST.getDesc(), orderTicketVo.getMsg());
+
+        Assert.assertEquals(ResponseEnum.ORDER_NOT_EXIST.getCode(),
+                orderSubmitService.ticket(uid + 1, orderNo).getStatus());
+    }
+
+    /**
+     * 凭证已过期(排队太久)的下单请求直接丢弃，不创建订单
+     */
+    @Test
+    public void dropExpiredTicket() {
+        Long orderNo = orderNoGenerator.nextId();
+        orderSubmitService.process(new OrderSubmitMessage(orderNo, uid, 4));
+
+        Assert.assertNull(orderMapper.selectByOrderNo(orderNo));
+        Assert.assertEquals(ResponseEnum.ORDER_NOT_EXIST.getCode(),
+                orderSubmitService.ticket(uid, orderNo).getStatus());
+    }
+}
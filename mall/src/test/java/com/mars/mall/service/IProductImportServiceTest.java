@@ -0,0 +1,50 @@
+package com.mars.mall.service;
+
+import com.mars.mall.MallApplicationTests;
+import com.mars.mall.enums.ResponseEnum;
+import com.mars.mall.vo.ProductImportVo;
+import com.mars.mall.vo.ResponseVo;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+@Transactional //测试完回滚，导入的商品不会真正写入数据库
+public class IProductImportServiceTest extends MallApplicationTests {
+
+    @Autowired
+    private IProductImportService productImportService;
+
+    @Test
+    public void importCsv() {
+        String content = "categoryId,name,subtitle,price,stock\n"
+                + "100002,导入测试商品1,副标题,99.9,10\n"
+                + "999999,类目不存在的商品,,1,1\n"
+                + "100002,导入测试商品2,,abc,1\n";
+        ResponseVo<ProductImportVo> responseVo = productImportService.importProducts(
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), "csv");
+        Assert.assertEquals(ResponseEnum.SUCCESS.getCode(), responseVo.getStatus());
+
+        ProductImportVo report = responseVo.getData();
+        Assert.assertEquals(Integer.valueOf(3), report.getTotal());
+        Assert.assertEquals(Integer.valueOf(1), report.getSucceeded());
+        Assert.assertEquals(Integer.valueOf(2), report.getFailed());
+        Assert.assertEquals(Integer.valueOf(2), report.getErrors().get(0).getRow());
+        Assert.assertTrue(report.getCompleted());
+    }
+
+    @Test
+    public void importJson() {
+        String content = "[{\"categoryId\":100002,\"name\":\"导入测试商品\",\"price\":1,\"stock\":1,"
+                + "\"subImages\":[\"a.jpg\",\"b.jpg\"]}, {\"categoryId\":100002";
+        ResponseVo<ProductImportVo> responseVo = productImportService.importProducts(
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), "json");
+
+        ProductImportVo report = responseVo.getData();
+        Assert.assertEquals(Integer.valueOf(1), report.getSucceeded());
+        Assert.assertFalse(report.getCompleted());
+    }
+}
@@ -3,7 +3,10 @@ package com.mars.mall.service;
 import com.github.pagehelper.PageInfo;
 import com.mars.mall.MallApplicationTests;
 import com.mars.mall.enums.ResponseEnum;
+import com.mars.mall.vo.ProductCursorPageVo;
 import com.mars.mall.vo.ProductDetailVo;
+import com.mars.mall.vo.ProductSearchPageVo;
+import com.mars.mall.vo.ProductVo;
 import com.mars.mall.vo.ResponseVo;
 import org.junit.Assert;
 import org.junit.Test;
@@ -20,6 +23,37 @@ public class IProductServiceTest extends MallApplicationTests {
         Assert.assertEquals(ResponseEnum.SUCCESS.getCode(),responseVo.getStatus());
     }
 
+    /**
+     * 沿着游标翻完所有页，商品id应严格递增且不重复
+     */
+    @Test
+    public void listByCursor() {
+        String cursor = null;
+        int lastId = 0;
+        do {
+            ResponseVo<ProductCursorPageVo> responseVo = productService.listByCursor(null, cursor, 2);
+            Assert.assertEquals(ResponseEnum.SUCCESS.getCode(),responseVo.getStatus());
+            for (ProductVo productVo : responseVo.getData().getList()) {
+                Assert.assertTrue(productVo.getId() > lastId);
+                lastId = productVo.getId();
+            }
+            cursor = responseVo.getData().getNextCursor();
+        } while (cursor != null);
+
+        ResponseVo<ProductCursorPageVo> badCursor = productService.listByCursor(null, "not-a-cursor", 2);
+        Assert.assertEquals(ResponseEnum.PARAM_ERROR.getCode(),badCursor.getStatus());
+    }
+
+    @Test
+    public void search() {
+        ResponseVo<ProductSearchPageVo> responseVo = productService.search("手机", null, 1, 5);
+        Assert.assertEquals(ResponseEnum.SUCCESS.getCode(),responseVo.getStatus());
+        Assert.assertTrue(responseVo.getData().getList().size() <= 5);
+
+        ResponseVo<ProductSearchPageVo> blank = productService.search(" ", null, 1, 5);
+        Assert.assertEquals(ResponseEnum.PARAM_ERROR.getCode(),blank.getStatus());
+    }
+
     @Test
     public void detail(){
         ResponseVo<ProductDetailVo> responseVo = productService.detail(26);
@@ -0,0 +1,82 @@
+package com.mars.mall.service;
+
+import com.mars.mall.MallApplicationTests;
+import com.mars.mall.dao.ProductMapper;
+import com.mars.mall.enums.ProductStatusEnum;
+import com.mars.mall.enums.ResponseEnum;
+import com.mars.mall.pojo.Product;
+import com.mars.mall.pojo.ProductStockBucket;
+import com.mars.mall.vo.ResponseVo;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.List;
+
+public class IStockBucketServiceTest extends MallApplicationTests {
+
+    private final static Integer PRODUCT_ID = 26;
+
+    @Autowired
+    private IStockBucketService stockBucketService;
+
+    @Autowired
+    private ProductMapper productMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @After
+    public void merge() {
+        stockBucketService.merge(PRODUCT_ID);
+    }
+
+    /**
+     * 拆分后各桶之和等于原库存；单桶不够时从多个桶凑齐；合并后库存写回商品
+     */
+    @Test
+    public void splitDecreaseMerge() {
+        Integer stock = productMapper.selectByPrimaryKey(PRODUCT_ID).getStock();
+        ResponseVo<List<ProductStockBucket>> responseVo = stockBucketService.split(PRODUCT_ID, 4);
+        Assert.assertEquals(ResponseEnum.SUCCESS.getCode(), responseVo.getStatus());
+        Assert.assertEquals(4, responseVo.getData().size());
+        Assert.assertEquals(Collections.singleton(PRODUCT_ID),
+                stockBucketService.bucketedProductIds(Collections.singleton(PRODUCT_ID)));
+
+        int largest = 0;
+        for (ProductStockBucket bucket : responseVo.getData()) {
+            largest = Math.max(largest, bucket.getStock());
+        }
+        int acrossBuckets = largest + 1;
+        if (stock >= acrossBuckets) {
+            transactionTemplate.execute(status -> {
+                Assert.assertTrue(stockBucketService.decrease(PRODUCT_ID, acrossBuckets));
+                status.setRollbackOnly();
+                return null;
+            });
+        }
+        transactionTemplate.execute(status -> {
+            Assert.assertFalse(stockBucketService.decrease(PRODUCT_ID, stock + 1));
+            status.setRollbackOnly();
+            return null;
+        });
+
+        //下架的商品不能扣减
+        transactionTemplate.execute(status -> {
+            Product product = new Product();
+            product.setId(PRODUCT_ID);
+            product.setStatus(ProductStatusEnum.OFF_SALE.getCode());
+            productMapper.updateByPrimaryKeySelective(product);
+            Assert.assertFalse(stockBucketService.decrease(PRODUCT_ID, 1));
+            status.setRollbackOnly();
+            return null;
+        });
+
+        Assert.assertEquals(stock, stockBucketService.merge(PRODUCT_ID).getData());
+        Assert.assertEquals(stock, productMapper.selectByPrimaryKey(PRODUCT_ID).getStock());
+        Assert.assertEquals(ResponseEnum.PARAM_ERROR.getCode(), stockBucketService.merge(PRODUCT_ID).getStatus());
+    }
+}
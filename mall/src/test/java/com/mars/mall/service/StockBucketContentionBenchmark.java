@@ -0,0 +1,88 @@
+package com.mars.mall.service;
+
+import com.mars.mall.MallApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分桶商品扣库存的吞吐量：多线程同时扣同一商品，每个事务扣减后持有行锁约1ms再回滚，对比不同桶数
+ * 需要本地mysql/redis，不是单元测试，在IDE中运行main方法，或 mvn test-compile 后用 exec:java 运行
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@Threads(16)
+public class StockBucketContentionBenchmark {
+
+    private final static Integer PRODUCT_ID = 26;
+
+    @Param({"1", "2", "4", "8"})
+    private int bucketCount;
+
+    private ConfigurableApplicationContext context;
+
+    private IStockBucketService stockBucketService;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(MallApplication.class).web(WebApplicationType.NONE).run();
+        stockBucketService = context.getBean(IStockBucketService.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        stockBucketService.split(PRODUCT_ID, bucketCount);
+    }
+
+    @TearDown
+    public void tearDown() {
+        stockBucketService.merge(PRODUCT_ID);
+        context.close();
+    }
+
+    @Benchmark
+    public Boolean decrease() {
+        return transactionTemplate.execute(status -> {
+            boolean decreased = stockBucketService.decrease(PRODUCT_ID, 1);
+            sleep();//模拟订单事务中扣库存之后的写入
+            status.setRollbackOnly();//回滚，不消耗真实库存
+            return decreased;
+        });
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StockBucketContentionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}